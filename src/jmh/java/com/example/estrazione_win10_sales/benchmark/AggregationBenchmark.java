@@ -0,0 +1,62 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.service.ConcurrentTerminalAggregator;
+import com.example.estrazione_win10_sales.service.InventoryColumnStore;
+import com.example.estrazione_win10_sales.service.TerminalColumnService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Aggregation stage: terminal_1..terminal_N per riceId from already decoded records or from the
+ * column store, sequential and fed from the common fork-join pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    @Param({"4641", "100000", "1000000"})
+    public int rows;
+
+    private List<CsvRecord> records;
+    private InventoryColumnStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CsvRowSchema schema = CsvRowSchema.compile(BenchmarkData.HEADER.split(";"));
+        records = new ArrayList<>(rows);
+        for (String[] row : BenchmarkData.csvRows(BenchmarkData.extractLines(rows, 42))) {
+            records.add(schema.decode(row));
+        }
+        store = new InventoryColumnStore();
+        for (int i = 0; i < records.size(); i++) store.accept(records.get(i), i);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> computeTerminalsByRiceId() {
+        return new TerminalColumnService().computeTerminalsByRiceId(records);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> fromColumnStore() {
+        return new TerminalColumnService().computeTerminalsByRiceId(store);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> concurrent() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ConcurrentTerminalAggregator aggregator = new ConcurrentTerminalAggregator(threads);
+        IntStream.range(0, records.size()).parallel().forEach(i -> aggregator.accept(records.get(i), i));
+        return aggregator.result();
+    }
+}
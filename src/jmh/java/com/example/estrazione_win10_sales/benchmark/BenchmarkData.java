@@ -0,0 +1,110 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic inputs shaped like the bundled extract and template, at any scale.
+ * Every riceId has 1-4 tids, each with an osType and an osVersion line sharing the timestamp;
+ * some terminals have NULL metadata, like the real extract. Data only depends on the seed.
+ */
+final class BenchmarkData {
+
+    static final String HEADER = "rice_id;rice_id;chiave;terminal_id;timestamp_TO_DELETE;valore;timestamp";
+    /** Rows of the bundled estrazione.csv, the smallest scale of every benchmark */
+    static final int BUNDLED_ROWS = 4641;
+
+    private static final String[] OS_VERSIONS = {"10.0.19045.6466", "10.0.26200.7840", "10.0.26100.4946", "10.0.22631.5624"};
+
+    private BenchmarkData() {
+    }
+
+    /** Data lines (without header) of a synthetic extract with about {@code rows} lines. */
+    static List<String> extractLines(int rows, long seed) {
+        Random rnd = new Random(seed);
+        List<String> lines = new ArrayList<>(rows + 8);
+        int riceId = 283829;
+        int tid = 80000;
+        while (lines.size() < rows) {
+            riceId += 1 + rnd.nextInt(5);
+            int tids = 1 + rnd.nextInt(4);
+            for (int t = 0; t < tids && lines.size() < rows; t++) {
+                tid += 1 + rnd.nextInt(50);
+                if (rnd.nextInt(10) == 0) {
+                    lines.add(riceId + ";" + riceId + ";NULL;" + tid + ";NULL;NULL;NULL");
+                    continue;
+                }
+                String ts = String.format("\"2026-%02d-%02d %02d:%02d:%02d\"", 1 + rnd.nextInt(2), 1 + rnd.nextInt(28),
+                        rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60));
+                boolean windows = rnd.nextInt(20) != 0;
+                lines.add(riceId + ";" + riceId + ";osType;" + tid + ";NULL;" + (windows ? "WINDOWS" : "LINUX") + ";" + ts);
+                lines.add(riceId + ";" + riceId + ";osVersion;" + tid + ";NULL;"
+                        + (windows ? OS_VERSIONS[rnd.nextInt(OS_VERSIONS.length)] : "5.15.0") + ";" + ts);
+            }
+        }
+        return lines;
+    }
+
+    /** Write a synthetic extract with header to the given file. */
+    static Path writeExtract(Path file, int rows, long seed) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(HEADER);
+            w.newLine();
+            for (String line : extractLines(rows, seed)) {
+                w.write(line);
+                w.newLine();
+            }
+        }
+        return file;
+    }
+
+    /** Split lines the way OpenCSV hands them over for this (unquoted apart from the timestamp) data. */
+    static List<String[]> csvRows(List<String> lines) {
+        List<String[]> rows = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String[] row = line.split(";", -1);
+            for (int i = 0; i < row.length; i++) {
+                if (row[i].length() >= 2 && row[i].startsWith("\"")) row[i] = row[i].substring(1, row[i].length() - 1);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Template workbook with the columns of the bundled template (Idrice, ZonaRice, Tipo Rete) and the
+     * riceIds of the extract lines, roughly one template row per extract riceId.
+     */
+    static XSSFWorkbook template(List<String> lines, int templateRows) {
+        XSSFWorkbook wb = new XSSFWorkbook();
+        Sheet sheet = wb.createSheet("Sheet1");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("Idrice");
+        header.createCell(1).setCellValue("ZonaRice");
+        header.createCell(2).setCellValue("Tipo Rete");
+        int r = 1;
+        String last = null;
+        for (String line : lines) {
+            if (r > templateRows) break;
+            String riceId = line.substring(0, line.indexOf(';'));
+            if (riceId.equals(last)) continue;
+            last = riceId;
+            Row row = sheet.createRow(r);
+            row.createCell(0).setCellValue(Double.parseDouble(riceId));
+            row.createCell(1).setCellValue("ZONA " + (r % 7));
+            row.createCell(2).setCellValue(r % 3 == 0 ? "FIBRA" : "RAME");
+            r++;
+        }
+        return wb;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.service.MappedExtractReader;
+import com.example.estrazione_win10_sales.service.TerminalAggregator;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV stage: reading the extract into the terminal aggregation, through OpenCSV (general reader)
+ * and through the memory-mapped fast path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvReadBenchmark {
+
+    @Param({"4641", "100000", "1000000"})
+    public int rows;
+
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = BenchmarkData.writeExtract(Files.createTempFile("bench-extract-", ".csv"), rows, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public TerminalAggregator openCsv() throws Exception {
+        TerminalAggregator aggregator = new TerminalAggregator();
+        try (CSVReader reader = new CSVReaderBuilder(new BufferedReader(new InputStreamReader(Files.newInputStream(csv))))
+                .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
+                .build()) {
+            CsvRowSchema schema = CsvRowSchema.compile(reader.readNext());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                aggregator.accept(schema.decode(row));
+            }
+        }
+        return aggregator;
+    }
+
+    @Benchmark
+    public TerminalAggregator mapped() throws IOException {
+        TerminalAggregator aggregator = new TerminalAggregator();
+        MappedExtractReader.read(csv, aggregator);
+        return aggregator;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row decoding: the per-row layout heuristics of CsvRecord.fromCsvRow against the header-compiled schema.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowDecodeBenchmark {
+
+    @Param({"4641", "100000", "1000000"})
+    public int rows;
+
+    private List<String[]> csvRows;
+    private CsvRowSchema schema;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        csvRows = BenchmarkData.csvRows(BenchmarkData.extractLines(rows, 42));
+        schema = CsvRowSchema.compile(BenchmarkData.HEADER.split(";"));
+    }
+
+    @Benchmark
+    public void fromCsvRow(Blackhole bh) {
+        for (String[] row : csvRows) {
+            bh.consume(CsvRecord.fromCsvRow(row));
+        }
+    }
+
+    @Benchmark
+    public void schemaDecode(Blackhole bh) {
+        for (String[] row : csvRows) {
+            bh.consume(schema.decode(row));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import com.example.estrazione_win10_sales.service.PreparsedTemplate;
+import com.example.estrazione_win10_sales.service.TemplateCache;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Template stage: loading the template and walking its rows, by parsing the xlsx (first run of a template)
+ * and from the memory-mapped preparsed copy (every later run).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateLoadBenchmark {
+
+    @Param({"2360", "50000", "500000"})
+    public int templateRows;
+
+    private Path dir;
+    private Path xlsx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bench-template-");
+        xlsx = dir.resolve("template.xlsx");
+        List<String> lines = BenchmarkData.extractLines(templateRows * 4, 42);
+        try (XSSFWorkbook workbook = BenchmarkData.template(lines, templateRows);
+             OutputStream out = Files.newOutputStream(xlsx)) {
+            workbook.write(out);
+        }
+        // fill the cache, the mapped benchmark only hits it
+        try (InputStream in = Files.newInputStream(xlsx)) {
+            new TemplateCache(dir.resolve("cache")).load(xlsx.toString(), in);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path f : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(f);
+        }
+    }
+
+    @Benchmark
+    public long parsed() throws IOException {
+        try (InputStream in = Files.newInputStream(xlsx)) {
+            return walk(new TemplateCache(null).load(xlsx.toString(), in).template());
+        }
+    }
+
+    @Benchmark
+    public long mapped() throws IOException {
+        try (InputStream in = Files.newInputStream(xlsx)) {
+            // a new instance, as in the next run: the same one would return the template it keeps in memory
+            return walk(new TemplateCache(dir.resolve("cache")).load(xlsx.toString(), in).template());
+        }
+    }
+
+    private static long walk(PreparsedTemplate template) {
+        long cells = 0;
+        PreparsedTemplate.RowCursor rows = template.rows();
+        while (rows.next()) cells += rows.size();
+        return cells;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.estrazione_win10_sales.benchmark;
+
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.model.OutputFormat;
+import com.example.estrazione_win10_sales.service.*;
+import com.example.estrazione_win10_sales.util.RiceIdJoinIndex;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stage: template row fill loop, column-removal copy through the compiled projection and
+ * the output sink (SXSSF workbook, CSV or JSON Lines), into a stream that only counts bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XlsxWriteBenchmark {
+
+    /** Template rows; the extract has about two lines per template riceId and terminal */
+    @Param({"2360", "50000", "500000"})
+    public int templateRows;
+
+    @Param({"XLSX", "CSV", "JSONL"})
+    public OutputFormat format;
+
+    private PreparsedTemplate template;
+    private ColumnProjection projection;
+    private RiceIdJoinIndex<List<String>> terminals;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> lines = BenchmarkData.extractLines(templateRows * 4, 42);
+        try (XSSFWorkbook workbook = BenchmarkData.template(lines, templateRows)) {
+            template = PreparsedTemplate.of(workbook.getSheetAt(0));
+        }
+
+        CsvRowSchema schema = CsvRowSchema.compile(BenchmarkData.HEADER.split(";"));
+        TerminalAggregator aggregator = new TerminalAggregator();
+        for (String[] row : BenchmarkData.csvRows(lines)) aggregator.accept(schema.decode(row));
+        Map<String, List<String>> byRiceId = aggregator.result();
+        int maxTerminals = new TerminalColumnService().maxTerminalCount(byRiceId);
+        projection = ColumnProjection.compile(List.of("Idrice", "ZonaRice", "Tipo Rete"), List.of("rice_id"), maxTerminals);
+        terminals = new RiceIdJoinIndex<>(byRiceId);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        try (OutputSink sink = switch (format) {
+            case XLSX -> new XlsxOutputSink(template.sheetName(), XlsxOutputSink.DEFAULT_WINDOW_SIZE, channel);
+            case CSV -> new CsvOutputSink(channel);
+            case JSONL -> new JsonLinesOutputSink(channel);
+        }) {
+            TemplateFill.fill(template, projection, terminals, List.of(sink));
+            sink.finish();
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
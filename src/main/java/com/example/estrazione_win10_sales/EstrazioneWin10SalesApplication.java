@@ -1,20 +1,30 @@
 package com.example.estrazione_win10_sales;
 
 import com.example.estrazione_win10_sales.config.ExcelProperties;
+import com.example.estrazione_win10_sales.service.BatchJobRunner;
+import com.example.estrazione_win10_sales.service.ConversionMetrics;
 import com.example.estrazione_win10_sales.service.CsvToExcelService;
+import com.example.estrazione_win10_sales.service.InboxWatcher;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.nio.file.Path;
+
 @SpringBootApplication
 public class EstrazioneWin10SalesApplication implements CommandLineRunner {
 
     private final CsvToExcelService service;
     private final ExcelProperties props;
+    private final BatchJobRunner batch;
+    private final InboxWatcher inbox;
 
-    public EstrazioneWin10SalesApplication(CsvToExcelService service, ExcelProperties props) {
+    public EstrazioneWin10SalesApplication(CsvToExcelService service, ExcelProperties props, BatchJobRunner batch,
+                                           InboxWatcher inbox) {
         this.service = service;
         this.props = props;
+        this.batch = batch;
+        this.inbox = inbox;
     }
 
     public static void main(String[] args) {
@@ -23,36 +33,28 @@ public class EstrazioneWin10SalesApplication implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        // con excel.inboxDir l'applicazione resta attiva e converte i CSV depositati, fino allo shutdown
+        if (props.getInboxDir() != null && !props.getInboxDir().isBlank()) {
+            inbox.run();
+            return;
+        }
+        // con excel.jobs configurati si esegue il batch al posto della conversione singola
+        if (!props.getJobs().isEmpty()) {
+            long failed = batch.runAll().stream().filter(r -> !r.ok()).count();
+            if (failed > 0) {
+                throw new IllegalStateException("Estrazione: " + failed + " batch job(s) failed");
+            }
+            return;
+        }
         // avviare il processo principale da qui
         try {
-            service.run(props.getCsvPath(), props.getTemplatePath(), props.getOutputPath());
+            ConversionMetrics.Run run = service.run(props.getCsvPath(), props.getTemplatePath(), props.getOutputPath());
             System.out.println("Estrazione: conversion completed, output=" + props.getOutputPath());
 
-            // Diagnostic: inspect the produced Excel and write a diagnostics file
+            // Diagnostic: header and first rows recorded while writing, the output is not read back
             try {
-                java.nio.file.Path out = java.nio.file.Path.of(props.getOutputPath());
-                if (java.nio.file.Files.exists(out)) {
-                    try (java.io.InputStream in = java.nio.file.Files.newInputStream(out)) {
-                        org.apache.poi.ss.usermodel.Workbook wb = new org.apache.poi.xssf.usermodel.XSSFWorkbook(in);
-                        org.apache.poi.ss.usermodel.Sheet s = wb.getSheetAt(0);
-                        java.util.Map<String, Integer> headers = com.example.estrazione_win10_sales.util.ExcelUtils.headerMap(s);
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("Headers: ").append(headers).append(System.lineSeparator());
-                        // print first 5 rows
-                        int last = Math.min(5, s.getLastRowNum());
-                        for (int r = 1; r <= last; r++) {
-                            org.apache.poi.ss.usermodel.Row row = s.getRow(r);
-                            if (row == null) continue;
-                            for (java.util.Map.Entry<String, Integer> e : headers.entrySet()) {
-                                String h = e.getKey();
-                                int ci = e.getValue();
-                                String val = com.example.estrazione_win10_sales.util.ExcelUtils.getStringCellValue(row.getCell(ci));
-                                sb.append(h).append(" -> '").append(val).append("'\n");
-                            }
-                            sb.append(System.lineSeparator());
-                        }
-                        java.nio.file.Files.writeString(java.nio.file.Path.of("diagnostics_output.txt"), sb.toString());
-                    }
+                if (run.outputSummary() != null) {
+                    run.outputSummary().writeDiagnostics(Path.of("diagnostics_output.txt"));
                 }
             } catch (Exception ex) {
                 System.err.println("Diagnostic write failed: " + ex.getMessage());
@@ -1,8 +1,14 @@
 package com.example.estrazione_win10_sales.config;
 
+import com.example.estrazione_win10_sales.model.OutputFormat;
+import com.example.estrazione_win10_sales.util.KeyNormalization;
+import com.example.estrazione_win10_sales.util.RiceIdJoinIndex;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @ConfigurationProperties(prefix = "excel")
 public class ExcelProperties {
@@ -16,6 +22,157 @@ public class ExcelProperties {
     /** CSV input path */
     private String csvPath = "classpath:inputfile/estrazione.csv";
 
+    /** Rows kept in memory by the streaming (SXSSF) writer before flushing to disk */
+    private int streamingWindowSize = 100;
+
+    /** Formats written by a run; xlsx goes to outputPath, the others to outputPath with their own extension */
+    private List<OutputFormat> outputFormats = new ArrayList<>(List.of(OutputFormat.XLSX));
+
+    /** How template riceIds are matched with CSV riceIds, strategies are tried in order */
+    private List<KeyNormalization> riceIdMatch = new ArrayList<>(RiceIdJoinIndex.DEFAULT_STRATEGIES);
+
+    /**
+     * Directory of the preparsed templates, keyed by the location and content hash of the template; empty
+     * (the default) to parse the template on every run. The startup package sets it next to its jar.
+     */
+    private String templateCacheDir = "";
+
+    /** Threads parsing and aggregating CSV rows, 1 keeps the whole aggregation on the reading thread */
+    private int aggregationThreads = 1;
+
+    /**
+     * Heap for the records being aggregated, in MB; above it records are sorted and spilled to disk, so any
+     * extract fits in a fixed heap. 0 keeps the whole aggregation state in memory.
+     */
+    private int aggregationMemoryMb;
+
+    /** Directory of the spilled aggregation runs, empty for the system temp directory */
+    private String aggregationSpillDir;
+
+    /**
+     * The extract is grouped by riceId (the extraction query orders by rice_id): riceIds are aggregated one at a
+     * time. Checked while reading; an extract that is not grouped is read again with the usual aggregation.
+     */
+    private boolean sortedInput;
+
+    /**
+     * Run the conversion as overlapping stages: the template loads while the extract is read, and the outputs are
+     * written on their own thread while the rows are filled. Needs spare cores to pay off.
+     */
+    private boolean pipelined;
+
+    /**
+     * Snapshot of the aggregated terminal state for the incremental mode, empty to always aggregate the whole CSV.
+     * When the file exists only CSV rows not older than its timestamp watermark are merged into it.
+     */
+    private String snapshotPath;
+
+    /** JDBC URL of the inventory database; when set the extract is queried directly and csvPath is not read */
+    private String jdbcUrl;
+
+    private String jdbcUsername;
+
+    private String jdbcPassword;
+
+    /** riceIds per extraction query (size of the IN list) */
+    private int jdbcChunkSize = 1000;
+
+    /** Extraction queries run at once, also the size of the connection pool */
+    private int jdbcThreads = 4;
+
+    /** Rows fetched per round trip while streaming a result set */
+    private int jdbcFetchSize = 1000;
+
+    /** Batch of conversions run in this JVM instead of the single csvPath/templatePath/outputPath one */
+    private List<Job> jobs = new ArrayList<>();
+
+    /** Jobs of the batch running at the same time */
+    private int maxConcurrentJobs = 2;
+
+    /** Summary of a batch run: result and timings of every job */
+    private String batchReportPath = "target/batch-report.json";
+
+    /**
+     * Inbox of the daemon mode: the application keeps running and converts every CSV dropped in this
+     * directory with templatePath; empty for a single conversion
+     */
+    private String inboxDir;
+
+    /** Outputs of the daemon mode, one per CSV, named after it */
+    private String inboxOutputDir = "target/inbox-output";
+
+    /** A dropped CSV is converted once its size and modification time have not changed for this long */
+    private long inboxSettleMs = 2000;
+
+    /** CSVs ready and waiting for a worker; further drops stay in the inbox until there is room */
+    private int inboxQueueCapacity = 16;
+
+    /** Conversions the daemon runs at the same time */
+    private int inboxWorkers = 1;
+
+    /** One conversion of a batch; paths support the classpath: prefix like the single ones */
+    public static class Job {
+
+        /** Name used in logs and reports, defaults to job-N */
+        private String name;
+        private String csvPath;
+        private String templatePath;
+        private String outputPath;
+        /** Snapshot for the incremental mode of this job, empty to aggregate the whole CSV */
+        private String snapshotPath;
+
+        public Job() {
+        }
+
+        public Job(String name, String csvPath, String templatePath, String outputPath, String snapshotPath) {
+            this.name = name;
+            this.csvPath = csvPath;
+            this.templatePath = templatePath;
+            this.outputPath = outputPath;
+            this.snapshotPath = snapshotPath;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCsvPath() {
+            return csvPath;
+        }
+
+        public void setCsvPath(String csvPath) {
+            this.csvPath = csvPath;
+        }
+
+        public String getTemplatePath() {
+            return templatePath;
+        }
+
+        public void setTemplatePath(String templatePath) {
+            this.templatePath = templatePath;
+        }
+
+        public String getOutputPath() {
+            return outputPath;
+        }
+
+        public void setOutputPath(String outputPath) {
+            this.outputPath = outputPath;
+        }
+
+        public String getSnapshotPath() {
+            return snapshotPath;
+        }
+
+        public void setSnapshotPath(String snapshotPath) {
+            this.snapshotPath = snapshotPath;
+        }
+    }
+
     public String getTemplatePath() {
         return templatePath;
     }
@@ -39,4 +196,196 @@ public class ExcelProperties {
     public void setCsvPath(String csvPath) {
         this.csvPath = csvPath;
     }
+
+    public int getStreamingWindowSize() {
+        return streamingWindowSize;
+    }
+
+    public void setStreamingWindowSize(int streamingWindowSize) {
+        this.streamingWindowSize = streamingWindowSize;
+    }
+
+    public List<OutputFormat> getOutputFormats() {
+        return outputFormats;
+    }
+
+    public void setOutputFormats(List<OutputFormat> outputFormats) {
+        this.outputFormats = outputFormats;
+    }
+
+    public List<KeyNormalization> getRiceIdMatch() {
+        return riceIdMatch;
+    }
+
+    public void setRiceIdMatch(List<KeyNormalization> riceIdMatch) {
+        this.riceIdMatch = riceIdMatch;
+    }
+
+    public String getTemplateCacheDir() {
+        return templateCacheDir;
+    }
+
+    public void setTemplateCacheDir(String templateCacheDir) {
+        this.templateCacheDir = templateCacheDir;
+    }
+
+    public int getAggregationThreads() {
+        return aggregationThreads;
+    }
+
+    public void setAggregationThreads(int aggregationThreads) {
+        this.aggregationThreads = aggregationThreads;
+    }
+
+    public int getAggregationMemoryMb() {
+        return aggregationMemoryMb;
+    }
+
+    public void setAggregationMemoryMb(int aggregationMemoryMb) {
+        this.aggregationMemoryMb = aggregationMemoryMb;
+    }
+
+    public String getAggregationSpillDir() {
+        return aggregationSpillDir;
+    }
+
+    public void setAggregationSpillDir(String aggregationSpillDir) {
+        this.aggregationSpillDir = aggregationSpillDir;
+    }
+
+    public boolean isSortedInput() {
+        return sortedInput;
+    }
+
+    public void setSortedInput(boolean sortedInput) {
+        this.sortedInput = sortedInput;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public String getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public void setJdbcUrl(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+    }
+
+    public String getJdbcUsername() {
+        return jdbcUsername;
+    }
+
+    public void setJdbcUsername(String jdbcUsername) {
+        this.jdbcUsername = jdbcUsername;
+    }
+
+    public String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    public void setJdbcPassword(String jdbcPassword) {
+        this.jdbcPassword = jdbcPassword;
+    }
+
+    public int getJdbcChunkSize() {
+        return jdbcChunkSize;
+    }
+
+    public void setJdbcChunkSize(int jdbcChunkSize) {
+        this.jdbcChunkSize = jdbcChunkSize;
+    }
+
+    public int getJdbcThreads() {
+        return jdbcThreads;
+    }
+
+    public void setJdbcThreads(int jdbcThreads) {
+        this.jdbcThreads = jdbcThreads;
+    }
+
+    public int getJdbcFetchSize() {
+        return jdbcFetchSize;
+    }
+
+    public void setJdbcFetchSize(int jdbcFetchSize) {
+        this.jdbcFetchSize = jdbcFetchSize;
+    }
+
+    public List<Job> getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(List<Job> jobs) {
+        this.jobs = jobs;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    public String getInboxDir() {
+        return inboxDir;
+    }
+
+    public void setInboxDir(String inboxDir) {
+        this.inboxDir = inboxDir;
+    }
+
+    public String getInboxOutputDir() {
+        return inboxOutputDir;
+    }
+
+    public void setInboxOutputDir(String inboxOutputDir) {
+        this.inboxOutputDir = inboxOutputDir;
+    }
+
+    public long getInboxSettleMs() {
+        return inboxSettleMs;
+    }
+
+    public void setInboxSettleMs(long inboxSettleMs) {
+        this.inboxSettleMs = inboxSettleMs;
+    }
+
+    public int getInboxQueueCapacity() {
+        return inboxQueueCapacity;
+    }
+
+    public void setInboxQueueCapacity(int inboxQueueCapacity) {
+        this.inboxQueueCapacity = inboxQueueCapacity;
+    }
+
+    public int getInboxWorkers() {
+        return inboxWorkers;
+    }
+
+    public void setInboxWorkers(int inboxWorkers) {
+        this.inboxWorkers = inboxWorkers;
+    }
+
+    public String getBatchReportPath() {
+        return batchReportPath;
+    }
+
+    public void setBatchReportPath(String batchReportPath) {
+        this.batchReportPath = batchReportPath;
+    }
 }
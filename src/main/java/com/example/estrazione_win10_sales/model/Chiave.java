@@ -0,0 +1,30 @@
+package com.example.estrazione_win10_sales.model;
+
+/**
+ * Compact code for the inventory "chiave" column. Only osType and osVersion affect the terminal
+ * columns, every other key is folded into {@link #OTHER}.
+ */
+public enum Chiave {
+    OS_TYPE("osType"),
+    OS_VERSION("osVersion"),
+    OTHER(null);
+
+    private final String key;
+
+    Chiave(String key) {
+        this.key = key;
+    }
+
+    /** Value of the chiave column, null for {@link #OTHER} */
+    public String getKey() {
+        return key;
+    }
+
+    /** Code for a chiave value (case sensitive, like the inventory data); null maps to null. */
+    public static Chiave of(String chiave) {
+        if (chiave == null) return null;
+        if (OS_TYPE.key.equals(chiave)) return OS_TYPE;
+        if (OS_VERSION.key.equals(chiave)) return OS_VERSION;
+        return OTHER;
+    }
+}
@@ -1,25 +1,35 @@
 package com.example.estrazione_win10_sales.model;
 
+import com.example.estrazione_win10_sales.util.TimestampParser;
+
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.Objects;
 
 public class CsvRecord {
+
+    /** Timestamp value for a record without (parsable) timestamp. */
+    public static final long NO_TIMESTAMP = TimestampParser.NO_TIMESTAMP;
+
+    // local timestamps are read in the zone of the JVM, resolved once
+    private static final TimestampParser TIMESTAMPS = new TimestampParser(ZoneId.systemDefault());
+
     private final String riceId;
     private final String chiave;
     private final String tid;
     private final String valore;
-    private final Instant timestamp; // nullable if not parsable or absent
+    private final long timestamp; // epoch millis, NO_TIMESTAMP if not parsable or absent
 
     public CsvRecord(String riceId, String chiave, String tid, String valore, Instant timestamp) {
+        this(riceId, chiave, tid, valore, timestamp != null ? timestamp.toEpochMilli() : NO_TIMESTAMP);
+    }
+
+    public CsvRecord(String riceId, String chiave, String tid, String valore, long timestampMillis) {
         this.riceId = riceId;
         this.chiave = chiave;
         this.tid = tid;
         this.valore = valore;
-        this.timestamp = timestamp;
+        this.timestamp = timestampMillis;
     }
 
     public String getRiceId() {
@@ -38,7 +48,13 @@ public class CsvRecord {
         return valore;
     }
 
+    /** Timestamp of the record, null if absent. */
     public Instant getTimestamp() {
+        return timestamp != NO_TIMESTAMP ? Instant.ofEpochMilli(timestamp) : null;
+    }
+
+    /** Epoch millis of the record, {@link #NO_TIMESTAMP} if absent. */
+    public long getTimestampMillis() {
         return timestamp;
     }
 
@@ -83,32 +99,15 @@ public class CsvRecord {
             }
         }
 
-        Instant ts = null;
-        if (tsRaw != null && !tsRaw.isBlank()) {
-            // try parsing common format: "yyyy-MM-dd HH:mm:ss" or ISO-like
-            String cleaned = tsRaw.trim();
-            // remove surrounding quotes if any
-            if (cleaned.startsWith("\"") && cleaned.endsWith("\"")) {
-                cleaned = cleaned.substring(1, cleaned.length() - 1);
-            }
-            // Try ISO first
-            try {
-                ts = Instant.parse(cleaned);
-            } catch (DateTimeParseException ex1) {
-                // Try 'yyyy-MM-dd HH:mm:ss'
-                try {
-                    DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                    LocalDateTime ldt = LocalDateTime.parse(cleaned, f);
-                    ts = ldt.atZone(ZoneId.systemDefault()).toInstant();
-                } catch (DateTimeParseException ex2) {
-                    // give up, leave null
-                }
-            }
-        }
-        return new CsvRecord(r, k, t, v, ts);
+        return new CsvRecord(r, k, t, v, TIMESTAMPS.parse(tsRaw));
+    }
+
+    /** Parser used for the timestamp column: "yyyy-MM-dd HH:mm:ss" (system time zone) or ISO-8601 instant. */
+    public static TimestampParser timestampParser() {
+        return TIMESTAMPS;
     }
 
-    private static String sanitize(String s) {
+    static String sanitize(String s) {
         if (s == null) return null;
         String t = s.trim();
         if (t.startsWith("\"") && t.endsWith("\"") && t.length() >= 2) {
@@ -124,7 +123,7 @@ public class CsvRecord {
         if (this == o) return true;
         if (!(o instanceof CsvRecord)) return false;
         CsvRecord that = (CsvRecord) o;
-        return Objects.equals(riceId, that.riceId) && Objects.equals(chiave, that.chiave) && Objects.equals(tid, that.tid) && Objects.equals(valore, that.valore) && Objects.equals(timestamp, that.timestamp);
+        return Objects.equals(riceId, that.riceId) && Objects.equals(chiave, that.chiave) && Objects.equals(tid, that.tid) && Objects.equals(valore, that.valore) && timestamp == that.timestamp;
     }
 
     @Override
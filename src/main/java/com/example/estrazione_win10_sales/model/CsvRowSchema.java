@@ -0,0 +1,98 @@
+package com.example.estrazione_win10_sales.model;
+
+import java.util.Locale;
+
+/**
+ * Column layout of an inventory CSV, compiled once from its header row.
+ * <p>
+ * The ordinals of riceId, chiave, tid, valore and timestamp are fixed for the whole file, so
+ * {@link #decode(String[])} only sanitizes the five fields it needs and does no layout detection.
+ * Rows whose column count differs from the header are handed to the per-row heuristics of
+ * {@link CsvRecord#fromCsvRow(String[])}, the only place where mixed layouts are still guessed.
+ */
+public final class CsvRowSchema {
+
+    /** Value for a column absent from the header. */
+    public static final int ABSENT = -1;
+
+    private final int columnCount;
+    private final int riceId;
+    private final int chiave;
+    private final int tid;
+    private final int valore;
+    private final int timestamp;
+
+    private CsvRowSchema(int columnCount, int riceId, int chiave, int tid, int valore, int timestamp) {
+        this.columnCount = columnCount;
+        this.riceId = riceId;
+        this.chiave = chiave;
+        this.tid = tid;
+        this.valore = valore;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Schema for a header row. Column names are matched ignoring case and quotes, the first column
+     * with a given name wins (the extract repeats rice_id).
+     *
+     * @return the schema, or null if riceId, chiave, tid or valore cannot be found in the header
+     */
+    public static CsvRowSchema compile(String[] header) {
+        if (header == null) return null;
+        int riceId = ABSENT, chiave = ABSENT, tid = ABSENT, valore = ABSENT, timestamp = ABSENT;
+        for (int i = header.length - 1; i >= 0; i--) {
+            String name = CsvRecord.sanitize(header[i]);
+            if (name == null) continue;
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "rice_id", "riceid" -> riceId = i;
+                case "chiave" -> chiave = i;
+                case "terminal_id", "tid" -> tid = i;
+                case "valore" -> valore = i;
+                case "timestamp" -> timestamp = i;
+                default -> {
+                    // column not used by the conversion
+                }
+            }
+        }
+        if (riceId == ABSENT || chiave == ABSENT || tid == ABSENT || valore == ABSENT) return null;
+        return new CsvRowSchema(header.length, riceId, chiave, tid, valore, timestamp);
+    }
+
+    /**
+     * Record for a data row. Rows with a different column count than the header go through
+     * {@link CsvRecord#fromCsvRow(String[])}.
+     *
+     * @throws IllegalArgumentException if the row cannot be decoded at all
+     */
+    public CsvRecord decode(String[] row) {
+        if (row == null || row.length != columnCount) return CsvRecord.fromCsvRow(row);
+        return new CsvRecord(CsvRecord.sanitize(row[riceId]), CsvRecord.sanitize(row[chiave]), CsvRecord.sanitize(row[tid]),
+                CsvRecord.sanitize(row[valore]),
+                timestamp != ABSENT ? CsvRecord.timestampParser().parse(CsvRecord.sanitize(row[timestamp])) : CsvRecord.NO_TIMESTAMP);
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public int getRiceIdColumn() {
+        return riceId;
+    }
+
+    public int getChiaveColumn() {
+        return chiave;
+    }
+
+    public int getTidColumn() {
+        return tid;
+    }
+
+    public int getValoreColumn() {
+        return valore;
+    }
+
+    /** Timestamp column, {@link #ABSENT} if the file has none */
+    public int getTimestampColumn() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.estrazione_win10_sales.model;
+
+import java.nio.file.Path;
+
+/**
+ * Formats the enriched rows can be written in. A run writes every format listed in {@code excel.outputFormats};
+ * the file names come from {@code excel.outputPath}.
+ */
+public enum OutputFormat {
+    /** Workbook with the template sheet and the terminal_N columns, the original output */
+    XLSX("xlsx"),
+    /** ';' separated text, one line per row, like the extract */
+    CSV("csv"),
+    /** One JSON object per data row, keyed by the output headers */
+    JSONL("jsonl");
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * Output file of this format: the xlsx output is {@code outputPath} itself, the other formats replace
+     * its extension, e.g. {@code estrazione_output.xlsx} gives {@code estrazione_output.csv}.
+     */
+    public Path target(Path outputPath) {
+        if (this == XLSX) return outputPath;
+        String name = outputPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return outputPath.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "." + extension);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.estrazione_win10_sales.model;
+
+import java.util.*;
+
+/**
+ * What is needed to plan a merge against a template sheet, without its cell data:
+ * the header layout, the last row index and the riceId (column A) -> row indices index.
+ * Cell values are the same text {@code ExcelUtils.getStringCellValue} returns for the cell.
+ */
+public class TemplateIndex {
+    private final String sheetName;
+    private final Map<String, Integer> headerMap;
+    private final int lastRowNum;
+    private final Map<String, List<Integer>> riceIdRows;
+    private final Map<Integer, Map<Integer, String>> rows;
+
+    public TemplateIndex(String sheetName, Map<String, Integer> headerMap, int lastRowNum,
+                         Map<String, List<Integer>> riceIdRows, Map<Integer, Map<Integer, String>> rows) {
+        this.sheetName = sheetName;
+        this.headerMap = headerMap;
+        this.lastRowNum = lastRowNum;
+        this.riceIdRows = riceIdRows;
+        this.rows = rows;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    /** header name -> column index, same content as {@code ExcelUtils.headerMap} */
+    public Map<String, Integer> getHeaderMap() {
+        return headerMap;
+    }
+
+    /** 0-based index of the last row, like {@code Sheet.getLastRowNum()}; -1 for an empty sheet */
+    public int getLastRowNum() {
+        return lastRowNum;
+    }
+
+    /** Number of data rows (header excluded) */
+    public int getDataRowCount() {
+        return Math.max(0, lastRowNum);
+    }
+
+    /** riceId (column A value) -> row indices where it appears, in sheet order */
+    public Map<String, List<Integer>> getRiceIdRows() {
+        return riceIdRows;
+    }
+
+    /**
+     * Column index -> value of every non-empty cell of a row that was explicitly requested to the scanner.
+     * Returns an empty map for rows that were not requested.
+     */
+    public Map<Integer, String> getRow(int rowIndex) {
+        return rows.getOrDefault(rowIndex, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.config.ExcelProperties;
+import com.example.estrazione_win10_sales.util.JsonWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the jobs of {@code excel.jobs} in one JVM, each on its own virtual thread.
+ * <p>
+ * At most {@code excel.maxConcurrentJobs} conversions run at once, the others wait for a permit. Jobs share
+ * the service and the meter registry but no conversion state, so a failing job does not stop the others:
+ * its error ends up in its {@link JobResult}. Results and timings are printed and written to
+ * {@code excel.batchReportPath}.
+ */
+@Component
+public class BatchJobRunner {
+
+    /**
+     * Outcome of a job.
+     *
+     * @param name       job name
+     * @param ok         whether the output was written
+     * @param waitMs     time spent waiting for a permit
+     * @param durationMs conversion time
+     * @param rowsRead   extract records folded into the aggregation
+     * @param cellsFilled terminal_N cells written
+     * @param output     output file
+     * @param error      failure message, null when ok
+     */
+    public record JobResult(String name, boolean ok, double waitMs, double durationMs,
+                            long rowsRead, long cellsFilled, String output, String error) {
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", name);
+            m.put("status", ok ? "OK" : "FAILED");
+            m.put("waitMs", waitMs);
+            m.put("durationMs", durationMs);
+            m.put("rowsRead", rowsRead);
+            m.put("terminalCellsFilled", cellsFilled);
+            m.put("output", output);
+            if (error != null) m.put("error", error);
+            return m;
+        }
+    }
+
+    private final CsvToExcelService service;
+    private final ExcelProperties props;
+
+    public BatchJobRunner(CsvToExcelService service, ExcelProperties props) {
+        this.service = service;
+        this.props = props;
+    }
+
+    /**
+     * Run all configured jobs and write the batch report.
+     *
+     * @return one result per job, in configuration order
+     */
+    public List<JobResult> runAll() throws IOException, InterruptedException {
+        List<ExcelProperties.Job> jobs = props.getJobs();
+        int limit = Math.max(1, props.getMaxConcurrentJobs());
+        checkDistinctOutputs(jobs);
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(limit);
+        List<JobResult> results = new ArrayList<>(jobs.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<JobResult>> futures = new ArrayList<>(jobs.size());
+            for (int i = 0; i < jobs.size(); i++) {
+                ExcelProperties.Job job = jobs.get(i);
+                String name = job.getName() == null || job.getName().isBlank() ? "job-" + (i + 1) : job.getName();
+                futures.add(executor.submit(() -> runJob(name, job, permits)));
+            }
+            for (Future<JobResult> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    // runJob catches everything a conversion throws
+                    throw new IllegalStateException("Batch job crashed", e.getCause());
+                }
+            }
+        }
+        double wallMs = (System.nanoTime() - start) / 1_000_000.0;
+        print(results, wallMs);
+        writeReport(startedAt, limit, wallMs, results);
+        return results;
+    }
+
+    private JobResult runJob(String name, ExcelProperties.Job job, Semaphore permits) throws InterruptedException {
+        long queued = System.nanoTime();
+        permits.acquire();
+        try {
+            double waitMs = (System.nanoTime() - queued) / 1_000_000.0;
+            long start = System.nanoTime();
+            ExcelProperties.Job named = new ExcelProperties.Job(name, job.getCsvPath(), job.getTemplatePath(),
+                    job.getOutputPath(), job.getSnapshotPath());
+            try {
+                ConversionMetrics.Run run = service.run(named);
+                return new JobResult(name, true, round(waitMs), run.durationMs(),
+                        run.get(ConversionMetrics.Count.ROWS_READ), run.get(ConversionMetrics.Count.TERMINAL_CELLS_FILLED),
+                        job.getOutputPath(), null);
+            } catch (Exception e) {
+                System.err.println("Batch: job " + name + " failed: " + e.getMessage());
+                e.printStackTrace();
+                return new JobResult(name, false, round(waitMs), round((System.nanoTime() - start) / 1_000_000.0),
+                        0, 0, job.getOutputPath(), String.valueOf(e.getMessage()));
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Two jobs writing the same output or snapshot would overwrite each other. */
+    private static void checkDistinctOutputs(List<ExcelProperties.Job> jobs) {
+        Set<Path> files = new HashSet<>();
+        for (ExcelProperties.Job job : jobs) {
+            if (job.getOutputPath() == null || job.getOutputPath().isBlank()) {
+                throw new IllegalArgumentException("Batch job without outputPath: " + job.getName());
+            }
+            if (!files.add(Path.of(job.getOutputPath()).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("Batch jobs share the output " + job.getOutputPath());
+            }
+            String snapshot = job.getSnapshotPath();
+            if (snapshot != null && !snapshot.isBlank() && !files.add(Path.of(snapshot).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("Batch jobs share the snapshot " + snapshot);
+            }
+        }
+    }
+
+    private static void print(List<JobResult> results, double wallMs) {
+        long failed = results.stream().filter(r -> !r.ok()).count();
+        System.out.printf(Locale.ROOT, "Batch: %d jobs, %d failed, %.0f ms%n", results.size(), failed, wallMs);
+        for (JobResult r : results) {
+            System.out.printf(Locale.ROOT, "  %-20s %-6s wait %8.0f ms  run %8.0f ms  %,d rows  %,d cells  %s%n",
+                    r.name(), r.ok() ? "OK" : "FAILED", r.waitMs(), r.durationMs(), r.rowsRead(), r.cellsFilled(),
+                    r.ok() ? r.output() : r.error());
+        }
+    }
+
+    private void writeReport(Instant startedAt, int limit, double wallMs, List<JobResult> results) throws IOException {
+        String reportPath = props.getBatchReportPath();
+        if (reportPath == null || reportPath.isBlank()) return;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt.toString());
+        report.put("maxConcurrentJobs", limit);
+        report.put("wallMs", round(wallMs));
+        report.put("failed", results.stream().filter(r -> !r.ok()).count());
+        report.put("jobs", results.stream().map(JobResult::toMap).toList());
+        Path file = Path.of(reportPath);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        JsonWriter.write(file, report);
+        System.out.println("Batch: report written to " + file);
+    }
+
+    private static double round(double ms) {
+        return Math.round(ms * 100) / 100.0;
+    }
+}
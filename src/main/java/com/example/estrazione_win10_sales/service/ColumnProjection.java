@@ -0,0 +1,81 @@
+package com.example.estrazione_win10_sales.service;
+
+import java.util.*;
+
+/**
+ * Compiled mapping from template columns to output columns.
+ * It is worked out once from the template header and the list of removed columns, then every cell is
+ * emitted through {@link #target(int)} exactly once: no intermediate sheet copies and no per-cell
+ * header lookups. The terminal_1..terminal_N columns reuse a template column with the same header
+ * when there is one, otherwise they are appended after the last kept column.
+ */
+public final class ColumnProjection {
+
+    private final int[] sourceToTarget;
+    private final int[] terminalTargets;
+    private final List<String> headers;
+
+    private ColumnProjection(int[] sourceToTarget, int[] terminalTargets, List<String> headers) {
+        this.sourceToTarget = sourceToTarget;
+        this.terminalTargets = terminalTargets;
+        this.headers = headers;
+    }
+
+    /**
+     * @param sourceHeaders  header text of each template column, by column index (null for blank headers)
+     * @param removedColumns headers whose columns must not reach the output; every column with that header is dropped
+     * @param terminalCount  number of terminal_N columns to produce
+     */
+    public static ColumnProjection compile(List<String> sourceHeaders, Collection<String> removedColumns, int terminalCount) {
+        Set<String> removed = new HashSet<>(removedColumns);
+        int[] sourceToTarget = new int[sourceHeaders.size()];
+        List<String> headers = new ArrayList<>();
+        Map<String, Integer> targetByHeader = new HashMap<>();
+        for (int c = 0; c < sourceToTarget.length; c++) {
+            String h = sourceHeaders.get(c);
+            if (h != null && removed.contains(h)) {
+                sourceToTarget[c] = -1;
+                continue;
+            }
+            sourceToTarget[c] = headers.size();
+            if (h != null) targetByHeader.put(h, headers.size());
+            headers.add(h);
+        }
+        int[] terminalTargets = new int[terminalCount];
+        for (int i = 0; i < terminalCount; i++) {
+            String h = terminalHeader(i);
+            Integer existing = targetByHeader.get(h);
+            if (existing != null) {
+                terminalTargets[i] = existing;
+            } else {
+                terminalTargets[i] = headers.size();
+                headers.add(h);
+            }
+        }
+        return new ColumnProjection(sourceToTarget, terminalTargets, Collections.unmodifiableList(headers));
+    }
+
+    /** Header of the i-th (0-based) terminal column: terminal_1, terminal_2, ... */
+    public static String terminalHeader(int i) {
+        return "terminal_" + (i + 1);
+    }
+
+    /** Output column of a template column, -1 if the column is dropped or out of the header range. */
+    public int target(int sourceColumn) {
+        return sourceColumn < sourceToTarget.length ? sourceToTarget[sourceColumn] : -1;
+    }
+
+    /** Output column of the i-th (0-based) terminal. */
+    public int terminalTarget(int i) {
+        return terminalTargets[i];
+    }
+
+    public int terminalCount() {
+        return terminalTargets.length;
+    }
+
+    /** Output headers by output column index (null for blank template headers). */
+    public List<String> headers() {
+        return headers;
+    }
+}
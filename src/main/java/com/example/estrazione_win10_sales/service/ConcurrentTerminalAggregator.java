@@ -0,0 +1,130 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.example.estrazione_win10_sales.util.LongIntHashMap;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Thread-safe {@link TerminalAccumulator}: records are spread by riceId over a set of stripes, each one
+ * a {@link TerminalAggregator} guarded by its own lock. A riceId always lands on the same stripe and its
+ * result depends only on its own records, so parser threads only contend when they hit the same stripe.
+ * <p>
+ * The terminal lists are built in parallel, one fork-join task per stripe, then merged back in order of
+ * first appearance of the riceIds. Thanks to the sequence numbers the result is identical to the
+ * sequential {@link TerminalColumnService#computeTerminalsByRiceId(List)}, whatever the thread interleaving.
+ */
+public class ConcurrentTerminalAggregator implements TerminalAccumulator {
+
+    private final IdCodec ids = new IdCodec();
+    private final TerminalAggregator[] stripes;
+    private final LongAdder recordCount = new LongAdder();
+    private final LongAdder malformedCount = new LongAdder();
+
+    /** Aggregator with enough stripes to keep contention low for the given number of feeding threads. */
+    public ConcurrentTerminalAggregator(int threads) {
+        int n = Integer.highestOneBit(Math.max(1, threads) * 8 - 1) << 1;
+        stripes = new TerminalAggregator[n];
+        for (int i = 0; i < n; i++) stripes[i] = new TerminalAggregator(ids);
+    }
+
+    @Override
+    public IdCodec ids() {
+        return ids;
+    }
+
+    @Override
+    public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        recordCount.increment();
+        if (riceKey == IdCodec.NO_ID) return;
+        TerminalAggregator stripe = stripes[stripe(riceKey)];
+        synchronized (stripe) {
+            stripe.accept(seq, riceKey, tidKey, chiave, valore, tsMillis);
+        }
+    }
+
+    private int stripe(long riceKey) {
+        long h = riceKey * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (stripes.length - 1);
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount.sum();
+    }
+
+    @Override
+    public void skipMalformed() {
+        malformedCount.increment();
+    }
+
+    @Override
+    public long malformedCount() {
+        return malformedCount.sum();
+    }
+
+    @Override
+    public int riceIdCount() {
+        int count = 0;
+        for (TerminalAggregator stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.groups();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Terminal lists for every riceId. Must not run while records are still being accepted.
+     */
+    @Override
+    public Map<String, List<String>> result() {
+        // build the lists of every stripe in parallel
+        List<List<List<String>>> byStripe = IntStream.range(0, stripes.length).parallel()
+                .mapToObj(i -> {
+                    TerminalAggregator stripe = stripes[i];
+                    synchronized (stripe) {
+                        List<List<String>> lists = new ArrayList<>(stripe.groups());
+                        for (int g = 0; g < stripe.groups(); g++) lists.add(stripe.terminals(g));
+                        return lists;
+                    }
+                })
+                .toList();
+
+        // merge: every riceId has a distinct first sequence number, sort those and map them back
+        int total = 0;
+        for (TerminalAggregator stripe : stripes) total += stripe.groups();
+        long[] firstSeqs = new long[total];
+        LongIntHashMap groupBySeq = new LongIntHashMap(total);
+        int[] offsets = new int[stripes.length];
+        int k = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            offsets[i] = k;
+            for (int g = 0; g < stripes[i].groups(); g++, k++) {
+                firstSeqs[k] = stripes[i].groupFirstSeq(g);
+                groupBySeq.put(firstSeqs[k], k);
+            }
+        }
+        Arrays.sort(firstSeqs);
+
+        Map<String, List<String>> result = new LinkedHashMap<>(Math.max(16, total * 2));
+        for (long seq : firstSeqs) {
+            int index = groupBySeq.get(seq);
+            int i = stripeOf(offsets, index);
+            int g = index - offsets[i];
+            result.put(ids.decode(stripes[i].groupRice(g)), byStripe.get(i).get(g));
+        }
+        return result;
+    }
+
+    private static int stripeOf(int[] offsets, int index) {
+        int i = Arrays.binarySearch(offsets, index);
+        if (i < 0) return -i - 2;
+        // empty stripes share their offset with the next one
+        while (i + 1 < offsets.length && offsets[i + 1] == index) i++;
+        return i;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.JsonWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer instrumentation of the conversion: one timer per stage ({@code estrazione.stage}, tagged
+ * with the stage name), one for the whole run ({@code estrazione.run}) and the counters of {@link Count}.
+ * <p>
+ * Meters accumulate over all runs of the process; every {@link Run} also keeps its own values, which
+ * end up in the JSON report written next to the output file.
+ */
+@Component
+public class ConversionMetrics {
+
+    /** Stages of a conversion, in execution order. */
+    public enum Stage {
+        /** loading the template workbook */
+        TEMPLATE,
+        /** reading the CSV and folding its rows into the aggregation state */
+        PARSE,
+        /** building the terminal_N values per riceId */
+        AGGREGATE,
+        /** compiling the template to output column mapping */
+        PROJECT,
+        /** building the riceId join index */
+        INDEX,
+        /** copying template rows and terminal values into the streaming workbook */
+        FILL,
+        /** writing the workbook to disk */
+        WRITE;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Counters of a conversion. */
+    public enum Count {
+        ROWS_READ("estrazione.rows.read", "rowsRead", "CSV records folded into the aggregation"),
+        ROWS_MALFORMED("estrazione.rows.malformed", "malformedRows", "CSV rows skipped because they could not be decoded"),
+        RICEIDS_MATCHED("estrazione.riceids.matched", "riceIdsMatched", "Template rows whose riceId has terminals in the CSV"),
+        RICEIDS_UNMATCHED("estrazione.riceids.unmatched", "riceIdsUnmatched", "Template rows whose riceId has no terminals in the CSV"),
+        TERMINAL_CELLS_FILLED("estrazione.terminal.cells.filled", "terminalCellsFilled", "terminal_N cells written to the output");
+
+        private final String meterName;
+        private final String reportName;
+        private final String description;
+
+        Count(String meterName, String reportName, String description) {
+            this.meterName = meterName;
+            this.reportName = reportName;
+            this.description = description;
+        }
+    }
+
+    private final Timer runTimer;
+    private final Timer[] stageTimers = new Timer[Stage.values().length];
+    private final Counter[] counters = new Counter[Count.values().length];
+
+    /** Metrics kept in a private registry, for callers outside the Spring context (tools, tests). */
+    public ConversionMetrics() {
+        this(new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public ConversionMetrics(MeterRegistry registry) {
+        runTimer = Timer.builder("estrazione.run")
+                .description("Duration of a whole conversion")
+                .register(registry);
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("estrazione.stage")
+                    .description("Duration of a conversion stage")
+                    .tag("stage", stage.tag())
+                    .register(registry);
+        }
+        for (Count count : Count.values()) {
+            counters[count.ordinal()] = Counter.builder(count.meterName)
+                    .description(count.description)
+                    .register(registry);
+        }
+    }
+
+    /** Start measuring a conversion; {@code name} is the job name, null for a single conversion. */
+    public Run start(String name, String csvPath, String templatePath, int aggregationThreads) {
+        return new Run(name, csvPath, templatePath, aggregationThreads);
+    }
+
+    /**
+     * Measurements of a single conversion. Not thread-safe: stages and counts are recorded by the thread
+     * running the conversion.
+     */
+    public final class Run {
+
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        // JVM uptime: startup cost of the process (JVM, Spring context) before the conversion
+        private final long uptimeAtStartMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        private long timeToFirstRowMs = -1;
+        private final String name;
+        private final String csvPath;
+        private final String templatePath;
+        private final int aggregationThreads;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private final long[] counts = new long[Count.values().length];
+        private final Map<String, Object> details = new LinkedHashMap<>();
+        private long durationNanos = -1;
+        private OutputSummary outputSummary;
+
+        private Run(String name, String csvPath, String templatePath, int aggregationThreads) {
+            this.name = name;
+            this.csvPath = csvPath;
+            this.templatePath = templatePath;
+            this.aggregationThreads = aggregationThreads;
+        }
+
+        /**
+         * Record the time spent in a stage since {@code fromNanos}.
+         *
+         * @return the current {@link System#nanoTime()}, the start of the next stage
+         */
+        public long lap(Stage stage, long fromNanos) {
+            long now = System.nanoTime();
+            stage(stage, now - fromNanos);
+            return now;
+        }
+
+        /** Record time spent in a stage; a stage recorded twice adds up. */
+        public void stage(Stage stage, long nanos) {
+            stageNanos[stage.ordinal()] += nanos;
+            stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void count(Count count, long amount) {
+            counts[count.ordinal()] += amount;
+            counters[count.ordinal()].increment(amount);
+        }
+
+        /** Extra value for the report, e.g. the number of distinct riceIds. */
+        public void detail(String name, Object value) {
+            details.put(name, value);
+        }
+
+        public long get(Count count) {
+            return counts[count.ordinal()];
+        }
+
+        /** Note that the first extract row is being read; the JVM uptime at that point goes to the report. */
+        public void markFirstRow() {
+            if (timeToFirstRowMs < 0) timeToFirstRowMs = ManagementFactory.getRuntimeMXBean().getUptime();
+        }
+
+        /** JVM uptime in milliseconds when the first extract row was read, -1 if none was. */
+        public long timeToFirstRowMs() {
+            return timeToFirstRowMs;
+        }
+
+        /** What was written to the outputs, null until they are filled. */
+        public OutputSummary outputSummary() {
+            return outputSummary;
+        }
+
+        public void outputSummary(OutputSummary summary) {
+            this.outputSummary = summary;
+        }
+
+        /** Job name, null for a single conversion. */
+        public String name() {
+            return name;
+        }
+
+        /** Duration of the run in milliseconds, up to now if it is not finished. */
+        public double durationMs() {
+            return millis(durationNanos >= 0 ? durationNanos : System.nanoTime() - startNanos);
+        }
+
+        /** Stop the run timer; later calls keep the first duration. */
+        public void finish() {
+            if (durationNanos >= 0) return;
+            durationNanos = System.nanoTime() - startNanos;
+            runTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /** Report content: run parameters, duration, per-stage times, counters and throughput. */
+        public Map<String, Object> report(Path output) {
+            finish();
+            Map<String, Object> report = new LinkedHashMap<>();
+            if (name != null) report.put("job", name);
+            report.put("startedAt", startedAt.toString());
+            report.put("csv", csvPath);
+            report.put("template", templatePath);
+            report.put("output", output.toString());
+            report.put("aggregationThreads", aggregationThreads);
+            report.put("durationMs", millis(durationNanos));
+            report.put("jvmUptimeAtStartMs", uptimeAtStartMs);
+            report.put("timeToFirstRowMs", timeToFirstRowMs);
+            Map<String, Object> stages = new LinkedHashMap<>();
+            for (Stage stage : Stage.values()) stages.put(stage.tag(), millis(stageNanos[stage.ordinal()]));
+            report.put("stagesMs", stages);
+            Map<String, Object> countValues = new LinkedHashMap<>();
+            for (Count count : Count.values()) countValues.put(count.reportName, counts[count.ordinal()]);
+            countValues.putAll(details);
+            report.put("counters", countValues);
+            long parseNanos = stageNanos[Stage.PARSE.ordinal()];
+            report.put("rowsPerSecond", parseNanos > 0 ? Math.round(get(Count.ROWS_READ) * 1e9 / parseNanos) : 0);
+            return report;
+        }
+
+        /**
+         * Write the report as JSON next to the output file: {@code estrazione_output.xlsx} gets
+         * {@code estrazione_output.report.json}.
+         *
+         * @return the report file
+         */
+        public Path writeReport(Path output) throws IOException {
+            Path file = reportPath(output);
+            JsonWriter.write(file, report(output));
+            return file;
+        }
+    }
+
+    /** Report file for an output file. */
+    public static Path reportPath(Path output) {
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return output.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".report.json");
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.estrazione_win10_sales.service;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output rows as ';' separated text, the separator of the extract. Fields holding the separator, quotes or
+ * line breaks are quoted, with quotes doubled. Empty template rows are left out.
+ */
+public class CsvOutputSink extends TextOutputSink {
+
+    public static final char SEPARATOR = ';';
+
+    public CsvOutputSink(WritableByteChannel channel) {
+        super(channel);
+    }
+
+    @Override
+    public void header(Object[] cells) throws IOException {
+        append(cells);
+    }
+
+    @Override
+    public void row(int rowIndex, Object[] cells) throws IOException {
+        if (!isEmpty(cells)) append(cells);
+    }
+
+    private void append(Object[] cells) throws IOException {
+        for (int c = 0; c < cells.length; c++) {
+            if (c > 0) line.append(SEPARATOR);
+            String value = text(cells[c]);
+            if (value != null) appendField(value);
+        }
+        writeLine();
+    }
+
+    private void appendField(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == SEPARATOR || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') line.append('"');
+            line.append(ch);
+        }
+        line.append('"');
+    }
+}
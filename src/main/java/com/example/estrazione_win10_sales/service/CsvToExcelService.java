@@ -1,290 +1,194 @@
 package com.example.estrazione_win10_sales.service;
 
+import com.example.estrazione_win10_sales.config.ExcelProperties;
 import com.example.estrazione_win10_sales.model.CsvRecord;
-import com.example.estrazione_win10_sales.util.ExcelUtils;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.model.OutputFormat;
+import com.example.estrazione_win10_sales.util.RiceIdJoinIndex;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.exceptions.CsvException;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
-public class CsvToExcelService {
+public class CsvToExcelService implements AutoCloseable {
+
+    /** Columns dropped from the output (CSV columns and their template counterparts) */
+    private static final List<String> REMOVED_COLUMNS = List.of("chiave", "tid", "timestamp_TO_DELETE", "valore", "timestamp", "rice_id", "terminal_id");
+
+    private final ExcelProperties props;
+    private final ConversionMetrics metrics;
+    private final TemplateCache templateCache;
+    // extraction database pool: opened by the first run that reads from the database, shared by the next ones
+    private HikariDataSource dataSource;
+
+    /** Service with its own metrics registry, for callers outside the Spring context */
+    public CsvToExcelService(ExcelProperties props) {
+        this(props, new ConversionMetrics());
+    }
+
+    @Autowired
+    public CsvToExcelService(ExcelProperties props, ConversionMetrics metrics) {
+        this.props = props;
+        this.metrics = metrics;
+        String cacheDir = props.getTemplateCacheDir();
+        this.templateCache = new TemplateCache(cacheDir == null || cacheDir.isBlank() ? null : Path.of(cacheDir));
+    }
 
     /**
      * Run conversion: read CSV, add columns to template as needed, write output file.
      * CSV is expected to have semicolon (;) as separator in this project.
+     * Stage times and counters go to {@link ConversionMetrics} and to a JSON report next to the output file.
+     *
+     * @return the measurements of the run, with the {@link OutputSummary} of what was written
+     */
+    public ConversionMetrics.Run run(String csvPath, String templatePath, String outputPath) throws IOException {
+        return run(new ExcelProperties.Job(null, csvPath, templatePath, outputPath, props.getSnapshotPath()));
+    }
+
+    /**
+     * Run one conversion job. All the state of a conversion is local to the call, so several jobs can run
+     * on the same service at once as long as they write different outputs and snapshots.
+     *
+     * @return the measurements of the run
      */
-    public void run(String csvPath, String templatePath, String outputPath) throws IOException {
+    public ConversionMetrics.Run run(ExcelProperties.Job job) throws IOException {
+        String csvPath = job.getCsvPath();
+        String templatePath = job.getTemplatePath();
+        String outputPath = job.getOutputPath();
         // Resolve resources: support classpath: prefix
         InputStream templateIn = openResource(templatePath);
         if (templateIn == null) {
             throw new FileNotFoundException("Template not found: " + templatePath);
         }
 
-        try (Workbook workbook = new XSSFWorkbook(templateIn)) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Map<String, Integer> existing = ExcelUtils.headerMap(sheet);
-
-            // Read CSV headers and rows
-            List<String[]> rows = readCsv(csvPath);
-            if (rows.isEmpty()) {
-                // no-op
-                return;
+        int threads = props.getAggregationThreads();
+        boolean jdbc = props.getJdbcUrl() != null && !props.getJdbcUrl().isBlank();
+        // the database query needs the template riceIds, so only a CSV read can overlap the template load
+        boolean pipelined = props.isPipelined();
+        boolean templateInParallel = pipelined && !jdbc;
+        ConversionMetrics.Run metricsRun = metrics.start(job.getName(), csvPath, templatePath, threads);
+        metricsRun.detail("pipelined", pipelined);
+        long t = System.nanoTime();
+        // a template parsed before is mapped from the cache, no workbook is built
+        FutureTask<TimedTemplate> templateLoad = new FutureTask<>(() -> loadTemplate(templatePath, templateIn));
+        Thread templateLoader = null;
+        SpillingTerminalAggregator spilling = null;
+        try {
+            PreparsedTemplate template = null;
+            if (templateInParallel) {
+                templateLoader = Thread.ofPlatform().name("template-loader").daemon(true).start(templateLoad);
+            } else {
+                template = awaitTemplate(templateLoad, metricsRun);
+                t = metricsRun.lap(ConversionMetrics.Stage.TEMPLATE, t);
             }
 
-            String[] headers = rows.get(0);
-
-            // Convert CSV rows into CsvRecord list (skip header row)
-            List<CsvRecord> records = new ArrayList<>();
-            for (int i = 1; i < rows.size(); i++) {
-                try {
-                    records.add(CsvRecord.fromCsvRow(rows.get(i)));
-                } catch (IllegalArgumentException ex) {
-                    // skip malformed row
+            // Stream CSV (or database) rows straight into the per-riceId/per-tid aggregation: raw rows are not kept
+            TerminalColumnService terminalService = new TerminalColumnService();
+            int parallelism = jdbc ? props.getJdbcThreads() : threads;
+            TerminalAccumulator aggregator;
+            String[] headers;
+            // incremental mode: start from the state of the previous run, only newer rows are merged
+            Path snapshot = job.getSnapshotPath() == null || job.getSnapshotPath().isBlank() ? null : Path.of(job.getSnapshotPath());
+            TerminalAggregator snapshotState = null;
+            long restoredRecords = 0;
+            if (snapshot == null && props.isSortedInput()) {
+                // extract grouped by riceId: only the riceId being read is aggregation state
+                if (parallelism > 1) {
+                    System.out.println("Sorted-input aggregation reads on one thread, "
+                            + (jdbc ? "jdbcThreads=" + props.getJdbcThreads() : "aggregationThreads=" + threads) + " ignored");
+                }
+                aggregator = new SortedGroupAggregator();
+                metricsRun.detail("sortedInput", true);
+            } else if (snapshot == null) {
+                aggregator = hashAggregator(parallelism, jdbc);
+            } else {
+                if (props.isSortedInput() || props.getAggregationMemoryMb() > 0) {
+                    System.out.println("Incremental mode keeps its state in memory, sortedInput and aggregationMemoryMb ignored");
+                }
+                if (parallelism > 1 && !jdbc) {
+                    System.out.println("Incremental mode aggregates on the reading thread, aggregationThreads=" + threads + " ignored");
+                }
+                TerminalSnapshot.Loaded loaded = loadSnapshot(snapshot, metricsRun);
+                if (loaded != null) {
+                    loaded.aggregator().setWatermark(loaded.watermark());
+                    restoredRecords = loaded.records();
                 }
+                aggregator = loaded != null ? loaded.aggregator() : new TerminalAggregator();
+                snapshotState = (TerminalAggregator) aggregator;
             }
-
-            // Compute terminal columns per riceId
-            TerminalColumnService terminalService = new TerminalColumnService();
-            Map<String, List<String>> terminalsByRiceId = terminalService.computeTerminalsByRiceId(records);
-            int maxTerminals = terminalService.maxTerminalCount(terminalsByRiceId);
-
-            // Ensure terminal headers exist: terminal_1 .. terminal_N
-            List<String> terminalHeaders = new ArrayList<>();
-            for (int t = 1; t <= maxTerminals; t++) {
-                terminalHeaders.add("terminal_" + t);
+            if (aggregator instanceof SpillingTerminalAggregator s) spilling = s;
+
+            metricsRun.markFirstRow();
+            try {
+                headers = readExtract(csvPath, template, aggregator, metricsRun);
+            } catch (SortedGroupAggregator.UnsortedInputException ex) {
+                // nothing read so far is usable: the extract is read again, at the cost of a second pass
+                System.out.println(ex.getMessage() + "; reading it again with the hash aggregation");
+                metricsRun.detail("sortedInputFallback", true);
+                aggregator = hashAggregator(parallelism, jdbc);
+                if (aggregator instanceof SpillingTerminalAggregator s) spilling = s;
+                headers = readExtract(csvPath, template, aggregator, metricsRun);
             }
-
-            // determine which headers from CSV are new (not in existing map)
-            List<String> newHeaders = new ArrayList<>(Arrays.stream(headers)
-                    .filter(h -> h != null && !h.isBlank())
-                    .filter(h -> !existing.containsKey(h))
-                    .collect(Collectors.toList()));
-
-            // append terminal headers too if missing
-            for (String th : terminalHeaders) {
-                if (!existing.containsKey(th)) newHeaders.add(th);
+            metricsRun.count(ConversionMetrics.Count.ROWS_READ, aggregator.recordCount() - restoredRecords);
+            if (snapshotState != null) metricsRun.detail("rowsBelowWatermark", snapshotState.belowWatermarkCount());
+            metricsRun.count(ConversionMetrics.Count.ROWS_MALFORMED, aggregator.malformedCount());
+            t = metricsRun.lap(ConversionMetrics.Stage.PARSE, t);
+            if (headers == null) {
+                // no-op
+                return metricsRun;
             }
 
-            // add new headers at the end
-            int lastCol = existing.isEmpty() ? 0 : existing.values().stream().max(Integer::compareTo).orElse(-1) + 1;
-            Row headerRow = sheet.getRow(0);
-            if (headerRow == null) headerRow = sheet.createRow(0);
-            for (int i = 0; i < newHeaders.size(); i++) {
-                Cell c = ExcelUtils.createCellIfAbsent(headerRow, lastCol + i);
-                c.setCellValue(newHeaders.get(i));
-                // update existing map with new index
-                existing.put(newHeaders.get(i), lastCol + i);
+            // Compute terminal columns per riceId
+            Map<String, List<String>> terminalsByRiceId = aggregator.result();
+            if (spilling != null) {
+                metricsRun.detail("aggregationMemoryMb", props.getAggregationMemoryMb());
+                metricsRun.detail("spilledRuns", spilling.spilledRuns());
+                metricsRun.detail("spilledBytes", spilling.spilledBytes());
+                metricsRun.detail("mergePasses", spilling.mergePasses());
             }
-
-            // Build a map of riceId -> sheet row indices for quick lookup (allow multiple rows per riceId)
-            Map<String, List<Integer>> sheetRiceRows = new HashMap<>();
-            int lastRowNum = sheet.getLastRowNum();
-            for (int r = 1; r <= lastRowNum; r++) {
-                Row row = sheet.getRow(r);
-                if (row == null) continue;
-                Cell first = row.getCell(0);
-                String v = ExcelUtils.getStringCellValue(first);
-                if (v != null && !v.isBlank()) {
-                    sheetRiceRows.computeIfAbsent(v, k -> new ArrayList<>()).add(r);
-                }
+            int maxTerminals = terminalService.maxTerminalCount(terminalsByRiceId);
+            metricsRun.detail("csvRiceIds", terminalsByRiceId.size());
+            metricsRun.detail("maxTerminals", maxTerminals);
+            t = metricsRun.lap(ConversionMetrics.Stage.AGGREGATE, t);
+            if (template == null) {
+                // pipelined: the template stage costs only the time still spent waiting for it here
+                template = awaitTemplate(templateLoad, metricsRun);
+                t = metricsRun.lap(ConversionMetrics.Stage.TEMPLATE, t);
             }
 
-            // Diagnostic logging
-            System.out.println("DEBUG: CSV records count=" + records.size());
-             // first distinct riceIds from records
-             Set<String> sampleRice = records.stream().map(CsvRecord::getRiceId).filter(Objects::nonNull).limit(10).collect(Collectors.toSet());
-             System.out.println("DEBUG: sample riceIds from CSV (up to 10): " + sampleRice);
-             System.out.println("DEBUG: terminalsByRiceId count=" + terminalsByRiceId.size());
-             System.out.println("DEBUG: template sheet riceIds count=" + sheetRiceRows.size());
-             System.out.println("DEBUG: sample template riceIds (up to 10): " + sheetRiceRows.keySet().stream().limit(10).toList());
-
-             // Fill terminal columns for EVERY row in template
-             // Iterate through ALL template rows (not CSV riceIds)
-             int filledTerminalCells = 0;
-             int templateRowCount = sheet.getLastRowNum();
-
-             for (int r = 1; r <= templateRowCount; r++) {
-                Row templateRow = sheet.getRow(r);
-                if (templateRow == null) continue;
-
-                Cell firstCell = templateRow.getCell(0);
-                String templateRiceId = ExcelUtils.getStringCellValue(firstCell);
-
-                if (templateRiceId != null && !templateRiceId.trim().isEmpty()) {
-                    // Look for terminals for this template riceId in the CSV data
-                    List<String> terminals = terminalsByRiceId.get(templateRiceId.trim());
-
-                    if (terminals == null) {
-                        // Try case-insensitive lookup
-                        for (Map.Entry<String, List<String>> entry : terminalsByRiceId.entrySet()) {
-                            if (entry.getKey() != null && entry.getKey().trim().equalsIgnoreCase(templateRiceId.trim())) {
-                                terminals = entry.getValue();
-                                break;
-                            }
-                        }
-                    }
-
-                    if (terminals != null && !terminals.isEmpty()) {
-                        // Add terminals to this template row
-                        for (int i = 0; i < terminals.size(); i++) {
-                            String header = "terminal_" + (i + 1);
-                            Integer colIndex = existing.get(header);
-                            if (colIndex == null) continue; // shouldn't happen
-
-                            Cell cell = ExcelUtils.createCellIfAbsent(templateRow, colIndex);
-                            String value = terminals.get(i);
-                            if (value != null) {
-                                cell.setCellValue(value);
-                                filledTerminalCells++;
-                            }
-                        }
-                    } else {
-                        // No terminals found for this template riceId - leave terminal columns empty (as required)
-                        // This is expected and correct behavior
-                    }
-                }
-             }
-
-             System.out.println("DEBUG: filled terminal cells count = " + filledTerminalCells);
-
-            // DO NOT remove duplicate rows - keep all rows from template as required
-            // The requirement is to maintain the same number of rows (2360) as the template
-
-            System.out.println("DEBUG: template sheet riceIds count=" + sheetRiceRows.size());
-            List<String> sampleKeys = new ArrayList<String>();
-            int count = 0;
-            for (String key : sheetRiceRows.keySet()) {
-                if (count >= 10) break;
-                sampleKeys.add(key);
-                count++;
-            }
-            System.out.println("DEBUG: sample template riceIds (up to 10): " + sampleKeys);
-            System.out.println("DEBUG: Total rows in template after processing: " + (sheet.getLastRowNum() + 1));
+            // Compile the output projection once: template columns minus the removed ones, then terminal_1..terminal_N.
+            // The CSV columns (rice_id, chiave, ...) are all in the removal list, so they never reach the output.
+            ColumnProjection projection = ColumnProjection.compile(template.headers(), REMOVED_COLUMNS, maxTerminals);
+            metricsRun.detail("templateRows", template.lastRowNum());
+            t = metricsRun.lap(ConversionMetrics.Stage.PROJECT, t);
 
+            // Join template riceIds with the CSV terminals through pre-normalized lookup tables
+            RiceIdJoinIndex<List<String>> terminalsFor = new RiceIdJoinIndex<>(terminalsByRiceId, props.getRiceIdMatch());
+            t = metricsRun.lap(ConversionMetrics.Stage.INDEX, t);
 
             // write workbook to a temp file then move atomically
             Path out = Path.of(outputPath);
 
-            // Remove unwanted columns from sheet (chiave, tid, timestamp_TO_DELETE, valore, timestamp)
-            List<String> colsToRemove = Arrays.asList("chiave", "tid", "timestamp_TO_DELETE", "valore", "timestamp", "rice_id", "terminal_id");
-            // compute set of column indices to remove based on current header map
-            Set<Integer> removeIdx = new HashSet<>();
-            for (String cName : colsToRemove) {
-                Integer idx = existing.get(cName);
-                if (idx != null) removeIdx.add(idx);
-            }
-            if (!removeIdx.isEmpty()) {
-                // build list of kept column indices in ascending order
-                int maxCol = existing.values().stream().mapToInt(Integer::intValue).max().orElse(-1);
-                List<Integer> keepIndices = new ArrayList<>();
-                for (int ci = 0; ci <= maxCol; ci++) {
-                    if (!removeIdx.contains(ci)) keepIndices.add(ci);
-                }
-
-                // create a temporary sheet and copy only kept columns
-                String originalName = sheet.getSheetName();
-                Sheet newSheet = workbook.createSheet(originalName + "_copy");
-                int lastRow = sheet.getLastRowNum();
-                for (int r = 0; r <= lastRow; r++) {
-                    Row srcRow = sheet.getRow(r);
-                    Row dstRow = newSheet.createRow(r);
-                    if (srcRow == null) continue;
-                    for (int j = 0; j < keepIndices.size(); j++) {
-                        int srcCol = keepIndices.get(j);
-                        Cell srcCell = srcRow.getCell(srcCol);
-                        if (srcCell == null) continue;
-                        Cell dstCell = dstRow.createCell(j);
-                        copyCellValue(srcCell, dstCell);
-                    }
-                }
-                // remove the old sheet and rename the new one to original name
-                int origIndex = workbook.getSheetIndex(sheet);
-                workbook.removeSheetAt(origIndex);
-                int newIndex = workbook.getSheetIndex(newSheet);
-                workbook.setSheetName(newIndex, originalName);
-
-                // Safety: after creating the new sheet, ensure terminal_* values are present by rewriting them
-                Sheet finalSheet = workbook.getSheetAt(newIndex);
-                Map<String,Integer> finalHeaders = ExcelUtils.headerMap(finalSheet);
-                // build map riceId->row index for finalSheet
-                Map<String,List<Integer>> finalSheetRiceRows = new HashMap<>();
-                int lastR = finalSheet.getLastRowNum();
-                for (int rr = 1; rr <= lastR; rr++) {
-                    Row row = finalSheet.getRow(rr);
-                    if (row == null) continue;
-                    String v0 = ExcelUtils.getStringCellValue(row.getCell(0));
-                    if (v0 != null && !v0.isBlank()) finalSheetRiceRows.computeIfAbsent(v0, k -> new ArrayList<>()).add(rr);
-                }
-                // rewrite terminal values from previously computed terminalsByRiceId
-                for (Map.Entry<String, List<String>> te : terminalsByRiceId.entrySet()) {
-                    String riceId = te.getKey();
-                    List<Integer> crow = finalSheetRiceRows.get(riceId);
-                    if (crow == null || crow.isEmpty()) continue;
-                    int rowIdx = crow.get(0);
-                    Row dstRow = finalSheet.getRow(rowIdx);
-                    if (dstRow == null) dstRow = finalSheet.createRow(rowIdx);
-                    List<String> terms = te.getValue();
-                    for (int i = 0; i < terms.size(); i++) {
-                        String header = "terminal_" + (i + 1);
-                        Integer colIdx = finalHeaders.get(header);
-                        if (colIdx == null) continue;
-                        String val = terms.get(i);
-                        if (val == null) continue;
-                        Cell cell = ExcelUtils.createCellIfAbsent(dstRow, colIdx);
-                        cell.setCellValue(val);
-                    }
-                }
-
-                // Ensure rice_id and terminal_id are removed: if present in finalHeaders, make a filtered copy excluding them
-                List<String> mustRemove = Arrays.asList("rice_id", "terminal_id");
-                boolean needSecondFilter = false;
-                for (String rm : mustRemove) if (finalHeaders.containsKey(rm)) { needSecondFilter = true; break; }
-                if (needSecondFilter) {
-                    // compute keep columns based on finalHeaders order
-                    int maxCol2 = finalHeaders.values().stream().mapToInt(Integer::intValue).max().orElse(-1);
-                    List<Integer> keepIdx2 = new ArrayList<>();
-                    for (int ci = 0; ci <= maxCol2; ci++) {
-                        boolean remove = false;
-                        for (Map.Entry<String,Integer> fh : finalHeaders.entrySet()) {
-                            if (fh.getValue() == ci && mustRemove.contains(fh.getKey())) { remove = true; break; }
-                        }
-                        if (!remove) keepIdx2.add(ci);
-                    }
-                    Sheet filtered = workbook.createSheet(originalName + "_filtered");
-                    int lastRow2 = finalSheet.getLastRowNum();
-                    for (int r = 0; r <= lastRow2; r++) {
-                        Row src = finalSheet.getRow(r);
-                        Row dst = filtered.createRow(r);
-                        if (src == null) continue;
-                        for (int j = 0; j < keepIdx2.size(); j++) {
-                            int sc = keepIdx2.get(j);
-                            Cell scell = src.getCell(sc);
-                            if (scell == null) continue;
-                            Cell dcell = dst.createCell(j);
-                            copyCellValue(scell, dcell);
-                        }
-                    }
-                    // remove finalSheet and rename filtered to originalName
-                    int fi = workbook.getSheetIndex(finalSheet);
-                    workbook.removeSheetAt(fi);
-                    int idx2 = workbook.getSheetIndex(filtered);
-                    workbook.setSheetName(idx2, originalName);
-                }
-             }
-
             // Safety: avoid overwriting the input template file when templatePath is a filesystem path and equals outputPath
             if (!templatePath.startsWith("classpath:")) {
                 try {
@@ -309,18 +213,305 @@ public class CsvToExcelService {
                  }
              }
 
-            Path parent = out.toAbsolutePath().getParent();
-            if (parent == null) {
-                // fallback to system temp directory if no parent is available
-                parent = Path.of(System.getProperty("java.io.tmpdir"));
+            // Fill terminal columns for EVERY row in template while streaming it to every output format
+            TemplateFill.Result written = writeOutputs(template, projection, terminalsFor, out, pipelined, metricsRun, t);
+            metricsRun.count(ConversionMetrics.Count.RICEIDS_MATCHED, written.matchedRows());
+            metricsRun.count(ConversionMetrics.Count.RICEIDS_UNMATCHED, written.unmatchedRows());
+            metricsRun.count(ConversionMetrics.Count.TERMINAL_CELLS_FILLED, written.filledTerminalCells());
+            if (snapshotState != null) saveSnapshot(snapshot, snapshotState, metricsRun);
+            writeReport(metricsRun, out);
+            return metricsRun;
+        } finally {
+            if (templateLoader != null) stopTemplateLoad(templateLoad, templateLoader, templateIn);
+            if (spilling != null) {
+                try {
+                    spilling.close();
+                } catch (IOException ex) {
+                    System.err.println("Aggregation runs not removed: " + ex.getMessage());
+                }
+            }
+            metricsRun.finish();
+        }
+    }
+
+    /**
+     * Aggregator for an extract in any order: records spilled in sorted runs when the aggregation has a memory
+     * budget, several aggregating threads when configured, the whole state on the reading thread otherwise.
+     */
+    private TerminalAccumulator hashAggregator(int parallelism, boolean jdbc) {
+        if (props.getAggregationMemoryMb() > 0) {
+            // bounded memory: records are sorted and spilled in runs, then merged
+            if (parallelism > 1 && !jdbc) {
+                System.out.println("Bounded-memory aggregation reads on one thread, aggregationThreads=" + props.getAggregationThreads() + " ignored");
+            }
+            String spillDir = props.getAggregationSpillDir();
+            return new SpillingTerminalAggregator(props.getAggregationMemoryMb() * 1024L * 1024L,
+                    spillDir == null || spillDir.isBlank() ? null : Path.of(spillDir));
+        }
+        return parallelism > 1 ? new ConcurrentTerminalAggregator(parallelism) : new TerminalAggregator();
+    }
+
+    /**
+     * Stream the extract, from the database or from the CSV, into the aggregator.
+     *
+     * @return the extract columns, null if the CSV is empty
+     */
+    private String[] readExtract(String csvPath, PreparsedTemplate template, TerminalAccumulator aggregator,
+                                 ConversionMetrics.Run metricsRun) throws IOException {
+        if (props.getJdbcUrl() != null && !props.getJdbcUrl().isBlank()) {
+            // the extraction query runs for the riceIds of the template, no CSV export in between
+            return readDatabase(template, aggregator, metricsRun);
+        }
+        if (aggregator instanceof ConcurrentTerminalAggregator) {
+            // parser threads fold rows concurrently, the reading thread only splits the file into rows
+            try (ParallelRecordFeeder feeder = new ParallelRecordFeeder(aggregator, props.getAggregationThreads())) {
+                String[] headers = streamCsv(csvPath, header -> feeder.decodingWith(rowDecoder(header)));
+                feeder.finish();
+                return headers;
+            }
+        }
+        // fast path for files in the usual extract layout, OpenCSV for anything else
+        Path csvFile = resolveFile(csvPath);
+        String[] headers = csvFile != null ? MappedExtractReader.read(csvFile, aggregator) : null;
+        if (headers == null) {
+            headers = streamCsv(csvPath, header -> {
+                Function<String[], CsvRecord> decoder = rowDecoder(header);
+                return row -> {
+                    try {
+                        aggregator.accept(decoder.apply(row), aggregator.recordCount());
+                    } catch (IllegalArgumentException ex) {
+                        aggregator.skipMalformed();
+                    }
+                };
+            });
+        }
+        return headers;
+    }
+
+    /** Template and the time it took to load, on whichever thread loaded it. */
+    private record TimedTemplate(TemplateCache.Loaded loaded, long nanos) {
+    }
+
+    private TimedTemplate loadTemplate(String templatePath, InputStream templateIn) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = templateIn) {
+            return new TimedTemplate(templateCache.load(templatePath, in), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * End a pipelined template load that a no-op or failed run no longer waits for: not started yet, it is
+     * cancelled; already parsing, it is waited for, so that batch and daemon runs do not pile up parses nobody uses.
+     */
+    private static void stopTemplateLoad(FutureTask<TimedTemplate> templateLoad, Thread loader, InputStream templateIn) {
+        // interrupts the loader: TemplateCache stops before the POI parse if it is not there yet
+        templateLoad.cancel(true);
+        try {
+            loader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            // not closed by a load cancelled before it started
+            templateIn.close();
+        } catch (IOException ex) {
+            System.err.println("Template stream not closed: " + ex.getMessage());
+        }
+    }
+
+    /** Run or wait for the template load, with its outcome in the run details. */
+    private static PreparsedTemplate awaitTemplate(FutureTask<TimedTemplate> templateLoad, ConversionMetrics.Run metricsRun) throws IOException {
+        templateLoad.run();
+        TimedTemplate loaded;
+        try {
+            loaded = templateLoad.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading the template", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IOException("Template load failed", e.getCause());
+        }
+        metricsRun.detail("templateCacheHit", loaded.loaded().cacheHit());
+        metricsRun.detail("templateLoadMs", loaded.nanos() / 1_000_000.0);
+        return loaded.loaded().template();
+    }
+
+    /**
+     * Stream the filled rows into one sink per output format. Each sink writes to a temp file in the output
+     * directory, moved over its target only once all of them are complete.
+     */
+    private TemplateFill.Result writeOutputs(PreparsedTemplate template, ColumnProjection projection, RiceIdJoinIndex<List<String>> terminals,
+                                             Path out, boolean pipelined, ConversionMetrics.Run metricsRun, long t) throws IOException {
+        Path parent = out.toAbsolutePath().getParent();
+        if (parent == null) {
+            // fallback to system temp directory if no parent is available
+            parent = Path.of(System.getProperty("java.io.tmpdir"));
+        }
+        // Ensure destination directory exists before creating temp files in it
+        Files.createDirectories(parent);
+        Set<OutputFormat> formats = new LinkedHashSet<>(props.getOutputFormats());
+        if (formats.isEmpty()) formats.add(OutputFormat.XLSX);
+        List<Path> tmps = new ArrayList<>();
+        List<FileChannel> channels = new ArrayList<>();
+        List<OutputSink> sinks = new ArrayList<>();
+        // diagnostics are taken from the rows as they go out, the outputs are never read back
+        OutputSummary summary = new OutputSummary(projection, OutputSummary.DEFAULT_SAMPLE_ROWS);
+        try {
+            for (OutputFormat format : formats) {
+                Path tmp = Files.createTempFile(parent, "estrazione-", ".tmp." + format.extension());
+                tmps.add(tmp);
+                FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                channels.add(channel);
+                sinks.add(switch (format) {
+                    case XLSX -> new XlsxOutputSink(template.sheetName(), props.getStreamingWindowSize(), channel);
+                    case CSV -> new CsvOutputSink(channel);
+                    case JSONL -> new JsonLinesOutputSink(channel);
+                });
+            }
+            sinks.add(summary);
+            TemplateFill.Result written;
+            if (pipelined) {
+                // rows are written on the output-writer thread while the next ones are filled
+                try (PipelinedOutputSink stage = new PipelinedOutputSink(sinks)) {
+                    written = TemplateFill.fill(template, projection, terminals, List.of(stage));
+                    stage.finish();
+                }
+            } else {
+                written = TemplateFill.fill(template, projection, terminals, sinks);
+            }
+            metricsRun.outputSummary(summary);
+            metricsRun.detail("outputSummary", summary.toReport());
+            t = metricsRun.lap(ConversionMetrics.Stage.FILL, t);
+            for (OutputSink sink : sinks) sink.finish();
+            for (FileChannel channel : channels) channel.close();
+            List<String> outputs = new ArrayList<>();
+            int i = 0;
+            for (OutputFormat format : formats) {
+                Path target = format.target(out);
+                Files.move(tmps.get(i++), target, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+                outputs.add(target.toString());
             }
-            // Ensure destination directory exists before creating temp file in it
-            Files.createDirectories(parent);
-            Path tmp = Files.createTempFile(parent, "estrazione-", ".tmp.xlsx");
-            try (OutputStream fos = Files.newOutputStream(tmp)) {
-                workbook.write(fos);
+            metricsRun.detail("outputs", outputs);
+            // writing the workbooks, closing the files and moving them in place count as writing
+            metricsRun.lap(ConversionMetrics.Stage.WRITE, t);
+            return written;
+        } finally {
+            for (OutputSink sink : sinks) {
+                try {
+                    sink.close();
+                } catch (IOException ex) {
+                    System.err.println("Output sink not released: " + ex.getMessage());
+                }
             }
-            Files.move(tmp, out, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+            for (FileChannel channel : channels) channel.close();
+            for (Path tmp : tmps) Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Run the extraction query for the distinct riceIds of template column A.
+     *
+     * @return the extract columns, as the header of the CSV export would name them
+     */
+    private String[] readDatabase(PreparsedTemplate template, TerminalAccumulator aggregator, ConversionMetrics.Run metricsRun) throws IOException {
+        Set<String> riceIds = template.riceIdRows().keySet();
+        // a sorted-input aggregation needs the chunks one after the other, each one grouped by riceId
+        int jdbcThreads = aggregator instanceof SortedGroupAggregator ? 1 : props.getJdbcThreads();
+        try {
+            int chunks = new JdbcExtractReader(dataSource(), props.getJdbcChunkSize(), jdbcThreads, props.getJdbcFetchSize())
+                    .read(new ArrayList<>(riceIds), aggregator);
+            metricsRun.detail("jdbcChunks", chunks);
+            // not numbers, they cannot match rice_id: their rows stay unmatched
+            long skipped = riceIds.stream().filter(id -> !JdbcExtractReader.queryable(id)).count();
+            metricsRun.detail("jdbcRiceIdsSkipped", skipped);
+            System.out.println("Extract read from " + props.getJdbcUrl() + ": " + (riceIds.size() - skipped) + " riceIds in "
+                    + chunks + " queries" + (skipped > 0 ? ", " + skipped + " non-numeric riceIds left out" : ""));
+        } catch (RuntimeException ex) {
+            // pool start-up failures (e.g. no driver or database unreachable)
+            throw new IOException("Cannot read the extract from " + props.getJdbcUrl() + ": " + ex.getMessage(), ex);
+        }
+        return MappedExtractReader.LAYOUT.toArray(new String[0]);
+    }
+
+    /**
+     * Pool of the extraction database, created on first use. Concurrent runs (batch jobs, inbox conversions) share
+     * its {@code jdbcThreads} connections instead of opening their own.
+     */
+    private synchronized HikariDataSource dataSource() {
+        if (dataSource == null) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("estrazione-jdbc");
+            config.setJdbcUrl(props.getJdbcUrl());
+            config.setUsername(props.getJdbcUsername());
+            config.setPassword(props.getJdbcPassword());
+            config.setMaximumPoolSize(Math.max(1, props.getJdbcThreads()));
+            // the chunks of concurrent runs queue for the connections: wait as long as a few chunk queries take
+            config.setConnectionTimeout(TimeUnit.MINUTES.toMillis(10));
+            config.setReadOnly(true);
+            // drivers such as PostgreSQL only stream with a fetch size outside auto-commit
+            config.setAutoCommit(false);
+            dataSource = new HikariDataSource(config);
+        }
+        return dataSource;
+    }
+
+    /** Close the extraction database pool, if a run opened it; Spring calls this on shutdown. */
+    @Override
+    public synchronized void close() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    /**
+     * State of the previous run, null if there is no snapshot yet or it cannot be read (the whole CSV is
+     * aggregated then and a new snapshot is written at the end of the run).
+     */
+    private static TerminalSnapshot.Loaded loadSnapshot(Path snapshot, ConversionMetrics.Run metricsRun) {
+        if (!Files.exists(snapshot)) {
+            System.out.println("No terminal snapshot at " + snapshot + ", aggregating the whole CSV");
+            return null;
+        }
+        try {
+            TerminalSnapshot.Loaded loaded = TerminalSnapshot.load(snapshot);
+            String watermark = loaded.watermark() == TerminalAccumulator.NO_TIMESTAMP ? null : Instant.ofEpochMilli(loaded.watermark()).toString();
+            metricsRun.detail("snapshotRiceIds", loaded.aggregator().riceIdCount());
+            metricsRun.detail("watermark", watermark);
+            System.out.println("Incremental run from " + snapshot + ": " + loaded.aggregator().riceIdCount()
+                    + " riceIds, merging CSV rows not older than " + watermark);
+            return loaded;
+        } catch (IOException ex) {
+            System.out.println("Terminal snapshot " + snapshot + " not usable, aggregating the whole CSV: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /** Persist the merged state with the newest timestamp seen as watermark; a failure only costs a longer next run. */
+    private static void saveSnapshot(Path snapshot, TerminalAggregator state, ConversionMetrics.Run metricsRun) {
+        try {
+            TerminalSnapshot.save(snapshot, state, state.maxTimestamp());
+            metricsRun.detail("nextWatermark", state.maxTimestamp() == TerminalAccumulator.NO_TIMESTAMP ? null : Instant.ofEpochMilli(state.maxTimestamp()).toString());
+        } catch (IOException ex) {
+            System.err.println("Terminal snapshot not written: " + ex.getMessage());
+        }
+    }
+
+    private static void writeReport(ConversionMetrics.Run metricsRun, Path out) {
+        metricsRun.finish();
+        System.out.println("Conversion" + (metricsRun.name() != null ? " " + metricsRun.name() : "") + ": " + metricsRun.get(ConversionMetrics.Count.ROWS_READ) + " extract records ("
+                + metricsRun.get(ConversionMetrics.Count.ROWS_MALFORMED) + " malformed skipped), "
+                + metricsRun.get(ConversionMetrics.Count.RICEIDS_MATCHED) + " template rows matched, "
+                + metricsRun.get(ConversionMetrics.Count.RICEIDS_UNMATCHED) + " unmatched, "
+                + metricsRun.get(ConversionMetrics.Count.TERMINAL_CELLS_FILLED) + " terminal cells filled, first row at "
+                + metricsRun.timeToFirstRowMs() + " ms of JVM uptime");
+        try {
+            System.out.println("Conversion report: " + metricsRun.writeReport(out));
+        } catch (IOException ex) {
+            // the output is already in place, a missing report does not fail the conversion
+            System.err.println("Conversion report not written: " + ex.getMessage());
         }
     }
 
@@ -337,45 +528,61 @@ public class CsvToExcelService {
         return Files.newInputStream(p);
     }
 
-    private List<String[]> readCsv(String csvPath) throws IOException {
+    /**
+     * File system path of a resource, null if it is not a plain file (e.g. a classpath entry inside a jar).
+     */
+    private Path resolveFile(String path) {
+        try {
+            if (path.startsWith("classpath:")) {
+                Resource r = new ClassPathResource(path.substring("classpath:".length()));
+                return r.exists() && r.isFile() ? r.getFile().toPath() : null;
+            }
+            Path p = Path.of(path);
+            return Files.isRegularFile(p) ? p : null;
+        } catch (IOException | java.nio.file.InvalidPathException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Row decoder for a CSV header: column ordinals compiled once from the header, or the per-row layout
+     * detection of CsvRecord.fromCsvRow when the header does not name the needed columns.
+     */
+    private static Function<String[], CsvRecord> rowDecoder(String[] header) {
+        CsvRowSchema schema = CsvRowSchema.compile(header);
+        if (schema == null) {
+            System.out.println("CSV header without rice_id/chiave/terminal_id/valore columns, detecting the layout row by row: " + Arrays.toString(header));
+            return CsvRecord::fromCsvRow;
+        }
+        return schema::decode;
+    }
+
+    /**
+     * Read the CSV one row at a time, passing every data row to the consumer built for the header row.
+     * Rows are not retained, so memory does not depend on the size of the file.
+     *
+     * @return the header row, or null if the file is empty
+     */
+    private String[] streamCsv(String csvPath, Function<String[], Consumer<String[]>> rowConsumerForHeader) throws IOException {
         InputStream in = openResource(csvPath);
         if (in == null) throw new FileNotFoundException("CSV not found: " + csvPath);
-        try (Reader reader = new InputStreamReader(in)) {
+        try (Reader reader = new BufferedReader(new InputStreamReader(in))) {
             try (CSVReader csvReader = new CSVReaderBuilder(reader)
                     .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
                     .build()) {
                 try {
-                    return csvReader.readAll();
+                    String[] headers = csvReader.readNext();
+                    if (headers == null) return null;
+                    Consumer<String[]> rowConsumer = rowConsumerForHeader.apply(headers);
+                    String[] row;
+                    while ((row = csvReader.readNext()) != null) {
+                        rowConsumer.accept(row);
+                    }
+                    return headers;
                 } catch (CsvException e) {
                     throw new IOException("CSV parsing error", e);
                 }
             }
         }
     }
-
-    private void copyCellValue(Cell src, Cell dst) {
-        dst.setCellType(src.getCellType());
-        switch (src.getCellType()) {
-            case STRING:
-                dst.setCellValue(src.getStringCellValue());
-                break;
-            case BOOLEAN:
-                dst.setCellValue(src.getBooleanCellValue());
-                break;
-            case NUMERIC:
-                dst.setCellValue(src.getNumericCellValue());
-                break;
-            case FORMULA:
-                dst.setCellFormula(src.getCellFormula());
-                break;
-            case BLANK:
-                dst.setBlank();
-                break;
-            case ERROR:
-                dst.setCellErrorValue(src.getErrorCellValue());
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported cell type: " + src.getCellType());
-        }
-    }
 }
@@ -0,0 +1,234 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.config.ExcelProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Daemon mode: watches {@code excel.inboxDir} and converts every CSV dropped there with the template of
+ * {@code excel.templatePath}, in the same JVM for as long as the application runs.
+ * <p>
+ * A drop is converted only once its size and modification time have not changed for {@code excel.inboxSettleMs},
+ * so files still being copied are left alone. Ready files go through a queue of {@code excel.inboxQueueCapacity}
+ * to {@code excel.inboxWorkers} worker threads; when the queue is full they simply stay in the inbox until there
+ * is room. The output goes to {@code excel.inboxOutputDir}, named after the CSV, and the CSV is then moved to
+ * {@code processed/} or {@code failed/} inside the inbox. CSVs found in the inbox at start-up are converted too.
+ * <p>
+ * Every conversion runs on the same warm {@link CsvToExcelService}, so the template is parsed once and then kept
+ * in memory by its {@link TemplateCache} (parsed again only when the file changes), and the JIT-compiled code is
+ * reused: a drop costs the conversion only, not a JVM and Spring start-up.
+ */
+@Component
+public class InboxWatcher implements AutoCloseable {
+
+    /** A CSV ready for conversion, with the time it was queued. */
+    private record Drop(Path csv, long queuedNanos) {
+    }
+
+    /** Size and modification time of a file last time it was looked at, and when they last changed. */
+    private static final class Pending {
+        long size = -1;
+        long modified = -1;
+        long changedNanos;
+    }
+
+    private final CsvToExcelService service;
+    private final ExcelProperties props;
+    private volatile boolean running = true;
+    private volatile WatchService watchService;
+    private volatile List<Thread> workers = List.of();
+    // CSVs that could not be moved out of the inbox, not converted again until restart
+    private final Set<Path> stuck = ConcurrentHashMap.newKeySet();
+
+    public InboxWatcher(CsvToExcelService service, ExcelProperties props) {
+        this.service = service;
+        this.props = props;
+    }
+
+    /**
+     * Watch the inbox until {@link #close()} is called (on application shutdown) or the inbox is deleted.
+     * Conversions in progress are completed before returning; queued CSVs stay in the inbox for the next start.
+     */
+    public void run() throws IOException, InterruptedException {
+        Path inbox = Path.of(props.getInboxDir()).toAbsolutePath();
+        Path processed = inbox.resolve("processed");
+        Path failed = inbox.resolve("failed");
+        Path outputDir = Path.of(props.getInboxOutputDir());
+        Files.createDirectories(processed);
+        Files.createDirectories(failed);
+        Files.createDirectories(outputDir);
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, props.getInboxSettleMs()));
+        long tickMs = Math.max(50, Math.min(1000, props.getInboxSettleMs() / 2));
+        BlockingQueue<Drop> queue = new ArrayBlockingQueue<>(Math.max(1, props.getInboxQueueCapacity()));
+        Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+        Map<Path, Pending> pending = new LinkedHashMap<>();
+
+        try (WatchService watcher = inbox.getFileSystem().newWatchService()) {
+            watchService = watcher;
+            inbox.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            int workerCount = Math.max(1, props.getInboxWorkers());
+            List<Thread> started = new ArrayList<>(workerCount);
+            for (int i = 1; i <= workerCount; i++) {
+                started.add(Thread.ofVirtual().name("inbox-worker-" + i)
+                        .start(() -> work(queue, inFlight, outputDir, processed, failed, tickMs)));
+            }
+            workers = started;
+            System.out.println("Inbox: watching " + inbox + " (" + workerCount + " workers, queue of "
+                    + queue.remainingCapacity() + ", settle " + props.getInboxSettleMs() + " ms), outputs to " + outputDir.toAbsolutePath());
+            scan(inbox, pending, inFlight);
+            boolean queueFull = false;
+            while (running) {
+                WatchKey key = watcher.poll(tickMs, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost, the directory listing has them all
+                            scan(inbox, pending, inFlight);
+                        } else {
+                            track(inbox.resolve((Path) event.context()), pending, inFlight);
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("Inbox: " + inbox + " is no longer accessible, stopping");
+                        break;
+                    }
+                }
+                boolean full = promote(pending, queue, inFlight, settleNanos);
+                if (full && !queueFull) {
+                    System.out.println("Inbox: queue full, further CSVs wait in the inbox");
+                }
+                queueFull = full;
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // closed by close()
+        } finally {
+            running = false;
+            for (Thread worker : workers) worker.join();
+            System.out.println("Inbox: stopped");
+        }
+    }
+
+    /**
+     * Stop watching and wait for the conversions in progress, so that a shutdown does not cut one short.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        WatchService watcher = watchService;
+        if (watcher != null) watcher.close();
+        try {
+            for (Thread worker : workers) worker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work(BlockingQueue<Drop> queue, Set<Path> inFlight, Path outputDir, Path processed, Path failed, long tickMs) {
+        try {
+            while (running) {
+                Drop drop = queue.poll(tickMs, TimeUnit.MILLISECONDS);
+                if (drop == null) continue;
+                try {
+                    convert(drop, outputDir, processed, failed);
+                } finally {
+                    inFlight.remove(drop.csv());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void convert(Drop drop, Path outputDir, Path processed, Path failed) {
+        Path csv = drop.csv();
+        String fileName = csv.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - ".csv".length());
+        Path output = outputDir.resolve(name + ".xlsx");
+        double waitMs = (System.nanoTime() - drop.queuedNanos()) / 1_000_000.0;
+        Path target = processed;
+        try {
+            ConversionMetrics.Run run = service.run(new ExcelProperties.Job(name, csv.toString(), props.getTemplatePath(),
+                    output.toString(), null));
+            System.out.printf(Locale.ROOT, "Inbox: %s converted in %.0f ms (queued %.0f ms), output=%s%n",
+                    fileName, run.durationMs(), waitMs, output);
+        } catch (Exception e) {
+            System.err.println("Inbox: " + fileName + " failed: " + e.getMessage());
+            e.printStackTrace();
+            target = failed;
+        }
+        try {
+            Files.move(csv, target.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            // still in the inbox: skipped from now on, or every change of it would convert it again
+            stuck.add(csv);
+            System.err.println("Inbox: " + fileName + " could not be moved to " + target + ", ignored until restart: " + ex.getMessage());
+        }
+    }
+
+    /** Track every CSV already in the inbox. */
+    private void scan(Path inbox, Map<Path, Pending> pending, Set<Path> inFlight) throws IOException {
+        try (Stream<Path> files = Files.list(inbox)) {
+            files.forEach(f -> track(f, pending, inFlight));
+        }
+    }
+
+    private void track(Path file, Map<Path, Pending> pending, Set<Path> inFlight) {
+        String name = file.getFileName().toString();
+        if (!name.toLowerCase(Locale.ROOT).endsWith(".csv") || name.startsWith(".")) return;
+        if (inFlight.contains(file) || stuck.contains(file)) return;
+        pending.computeIfAbsent(file, f -> new Pending());
+    }
+
+    /**
+     * Queue the tracked files that have settled.
+     *
+     * @return whether a settled file was left out because the queue is full
+     */
+    private static boolean promote(Map<Path, Pending> pending, BlockingQueue<Drop> queue, Set<Path> inFlight, long settleNanos) {
+        long now = System.nanoTime();
+        boolean full = false;
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Pending> e = it.next();
+            Path file = e.getKey();
+            Pending p = e.getValue();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                // deleted or renamed meanwhile
+                it.remove();
+                continue;
+            }
+            if (!attrs.isRegularFile()) {
+                it.remove();
+                continue;
+            }
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (size != p.size || modified != p.modified) {
+                p.size = size;
+                p.modified = modified;
+                p.changedNanos = now;
+                continue;
+            }
+            if (now - p.changedNanos < settleNanos) continue;
+            inFlight.add(file);
+            if (queue.offer(new Drop(file, now))) {
+                it.remove();
+            } else {
+                inFlight.remove(file);
+                full = true;
+            }
+        }
+        return full;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.example.estrazione_win10_sales.util.LongIntHashMap;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Columnar in-memory store of parsed inventory rows, for callers that need the rows themselves and not only
+ * the aggregated terminals (diagnostics, several aggregations over the same extract).
+ * <p>
+ * Rows are kept as a struct of arrays: riceId, tid and timestamp are primitive long columns (ids encoded with
+ * {@link IdCodec}), chiave is a one-byte {@link Chiave} code and valore a code into a dictionary of the distinct
+ * values. That is {@value #BYTES_PER_ROW} bytes per row, against well over 100 for a
+ * {@link com.example.estrazione_win10_sales.model.CsvRecord} with its strings and Instant.
+ * Chiave values other than osType/osVersion are only kept as {@link Chiave#OTHER}, which is all the aggregation
+ * looks at.
+ * <p>
+ * The store is filled through {@link TerminalAccumulator}, so every extract reader can load it. Rows are kept in
+ * arrival order and numbered from 0, that number replaces the input position of the record. Not thread-safe.
+ */
+public final class InventoryColumnStore implements TerminalAccumulator {
+
+    /** Bytes of the columns per row: three long columns, the chiave byte and the valore code. */
+    public static final int BYTES_PER_ROW = 3 * Long.BYTES + 1 + Integer.BYTES;
+
+    private static final byte NO_CHIAVE = -1;
+    private static final int NO_VALUE = -1;
+    private static final Chiave[] CHIAVI = Chiave.values();
+
+    private final IdCodec ids;
+
+    private long[] riceIds;
+    private long[] tids;
+    private long[] timestamps;
+    private byte[] chiavi;
+    private int[] valori;
+    private int size;
+    private long malformedCount;
+
+    private final Map<String, Integer> valueCodes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    // riceId key -> group ordinal, in order of first appearance
+    private final LongIntHashMap groupByRice = new LongIntHashMap(1024);
+    private long[] groupRice = new long[1024];
+    private int groups;
+
+    /** Rows of one riceId, in arrival order: {@code rows[from..to)}. */
+    @FunctionalInterface
+    public interface GroupVisitor {
+        void group(long riceKey, int[] rows, int from, int to);
+    }
+
+    public InventoryColumnStore() {
+        this(new IdCodec(), 1024);
+    }
+
+    public InventoryColumnStore(IdCodec ids, int expectedRows) {
+        this.ids = ids;
+        int capacity = Math.max(16, expectedRows);
+        riceIds = new long[capacity];
+        tids = new long[capacity];
+        timestamps = new long[capacity];
+        chiavi = new byte[capacity];
+        valori = new int[capacity];
+    }
+
+    /**
+     * Load an extract CSV: the memory-mapped reader for files in the usual layout, OpenCSV for anything else.
+     */
+    public static InventoryColumnStore read(Path csv) throws IOException {
+        InventoryColumnStore store = new InventoryColumnStore(new IdCodec(), (int) Math.min(Files.size(csv) / 40, 1 << 24));
+        if (MappedExtractReader.read(csv, store) != null) {
+            store.trimToSize();
+            return store;
+        }
+        try (CSVReader reader = new CSVReaderBuilder(Files.newBufferedReader(csv))
+                .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
+                .build()) {
+            String[] header = reader.readNext();
+            if (header == null) return store;
+            // header without the named columns: the layout is detected row by row, as in the conversion
+            CsvRowSchema schema = CsvRowSchema.compile(header);
+            Function<String[], CsvRecord> decoder = schema != null ? schema::decode : CsvRecord::fromCsvRow;
+            String[] row;
+            long seq = 0;
+            while ((row = reader.readNext()) != null) {
+                try {
+                    store.accept(decoder.apply(row), seq++);
+                } catch (IllegalArgumentException ex) {
+                    store.skipMalformed();
+                }
+            }
+        } catch (CsvException e) {
+            throw new IOException("CSV parsing error", e);
+        }
+        store.trimToSize();
+        return store;
+    }
+
+    @Override
+    public IdCodec ids() {
+        return ids;
+    }
+
+    /** Append a row; {@code seq} is not stored, rows are numbered in arrival order. */
+    @Override
+    public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        if (size == riceIds.length) grow();
+        riceIds[size] = riceKey;
+        tids[size] = tidKey;
+        timestamps[size] = tsMillis;
+        chiavi[size] = chiave == null ? NO_CHIAVE : (byte) chiave.ordinal();
+        valori[size] = valueCode(valore);
+        size++;
+        if (riceKey != IdCodec.NO_ID && groupByRice.get(riceKey) == LongIntHashMap.MISSING) {
+            if (groups == groupRice.length) groupRice = Arrays.copyOf(groupRice, groups * 2);
+            groupRice[groups] = riceKey;
+            groupByRice.put(riceKey, groups++);
+        }
+    }
+
+    /** Number of rows. */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long recordCount() {
+        return size;
+    }
+
+    @Override
+    public void skipMalformed() {
+        malformedCount++;
+    }
+
+    @Override
+    public long malformedCount() {
+        return malformedCount;
+    }
+
+    @Override
+    public int riceIdCount() {
+        return groups;
+    }
+
+    /** Bytes held by the columns, allocated capacity included; the value dictionary is not counted. */
+    public long columnBytes() {
+        return (long) riceIds.length * BYTES_PER_ROW;
+    }
+
+    /** riceId key of a row, {@link IdCodec#NO_ID} if missing. */
+    public long riceKey(int row) {
+        return riceIds[check(row)];
+    }
+
+    /** tid key of a row, {@link IdCodec#NO_ID} if missing. */
+    public long tidKey(int row) {
+        return tids[check(row)];
+    }
+
+    public String riceId(int row) {
+        return ids.decode(riceKey(row));
+    }
+
+    public String tid(int row) {
+        return ids.decode(tidKey(row));
+    }
+
+    /** Chiave code of a row, null if missing. */
+    public Chiave chiave(int row) {
+        byte code = chiavi[check(row)];
+        return code == NO_CHIAVE ? null : CHIAVI[code];
+    }
+
+    /** Value of a row, the dictionary instance shared by every row with the same text; null if missing. */
+    public String valore(int row) {
+        int code = valori[check(row)];
+        return code == NO_VALUE ? null : values.get(code);
+    }
+
+    /** Epoch millis of a row, {@link TerminalAccumulator#NO_TIMESTAMP} if missing. */
+    public long timestamp(int row) {
+        return timestamps[check(row)];
+    }
+
+    /**
+     * Feed every row to an accumulator, numbered by row. Keys are re-encoded only if the accumulator has
+     * a codec of its own.
+     */
+    public void replay(TerminalAccumulator target) {
+        IdCodec targetIds = target.ids();
+        for (int i = 0; i < size; i++) {
+            long riceKey = riceIds[i];
+            long tidKey = tids[i];
+            if (targetIds != ids) {
+                riceKey = targetIds.encode(ids.decode(riceKey));
+                tidKey = targetIds.encode(ids.decode(tidKey));
+            }
+            target.accept(i, riceKey, tidKey, chiave(i), valore(i), timestamps[i]);
+        }
+    }
+
+    /** terminal_1..terminal_N values per riceId, computed from the rows each time. */
+    @Override
+    public Map<String, List<String>> result() {
+        TerminalAggregator aggregator = new TerminalAggregator(ids);
+        replay(aggregator);
+        return aggregator.result();
+    }
+
+    /**
+     * Visit the rows grouped by riceId, rows without riceId left out. Groups come in order of first
+     * appearance, or sorted by riceId: numeric riceIds by value, then the others by text.
+     * Rows inside a group keep their arrival order.
+     */
+    public void forEachGroup(boolean sortedByRiceId, GroupVisitor visitor) {
+        int[] rank = sortedByRiceId ? sortedRanks() : null;
+        // counting sort of the rows by group: two passes over the riceId column, no per-row objects
+        int[] start = new int[groups + 1];
+        for (int i = 0; i < size; i++) {
+            if (riceIds[i] == IdCodec.NO_ID) continue;
+            int g = groupByRice.get(riceIds[i]);
+            start[(rank != null ? rank[g] : g) + 1]++;
+        }
+        for (int g = 0; g < groups; g++) start[g + 1] += start[g];
+        int[] rows = new int[start[groups]];
+        int[] next = Arrays.copyOf(start, groups);
+        for (int i = 0; i < size; i++) {
+            if (riceIds[i] == IdCodec.NO_ID) continue;
+            int g = groupByRice.get(riceIds[i]);
+            rows[next[rank != null ? rank[g] : g]++] = i;
+        }
+        for (int r = 0; r < groups; r++) {
+            if (start[r] == start[r + 1]) continue;
+            visitor.group(riceIds[rows[start[r]]], rows, start[r], start[r + 1]);
+        }
+    }
+
+    /** Position of every group in riceId order. */
+    private int[] sortedRanks() {
+        Integer[] order = new Integer[groups];
+        for (int g = 0; g < groups; g++) order[g] = g;
+        Arrays.sort(order, (a, b) -> {
+            long ka = groupRice[a], kb = groupRice[b];
+            boolean na = IdCodec.isNumeric(ka), nb = IdCodec.isNumeric(kb);
+            if (na && nb) return Long.compare(ka, kb);
+            if (na != nb) return na ? -1 : 1;
+            return ids.decode(ka).compareTo(ids.decode(kb));
+        });
+        int[] rank = new int[groups];
+        for (int r = 0; r < groups; r++) rank[order[r]] = r;
+        return rank;
+    }
+
+    /** Shrink the columns to the rows held, e.g. once a file is loaded. */
+    public void trimToSize() {
+        if (size == riceIds.length) return;
+        resize(Math.max(size, 1));
+    }
+
+    private int valueCode(String valore) {
+        if (valore == null) return NO_VALUE;
+        Integer code = valueCodes.get(valore);
+        if (code == null) {
+            code = values.size();
+            values.add(valore);
+            valueCodes.put(valore, code);
+        }
+        return code;
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        return row;
+    }
+
+    private void grow() {
+        resize(riceIds.length + (riceIds.length >> 1));
+    }
+
+    private void resize(int capacity) {
+        riceIds = Arrays.copyOf(riceIds, capacity);
+        tids = Arrays.copyOf(tids, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        chiavi = Arrays.copyOf(chiavi, capacity);
+        valori = Arrays.copyOf(valori, capacity);
+    }
+}
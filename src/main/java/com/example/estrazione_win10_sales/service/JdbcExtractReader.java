@@ -0,0 +1,163 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.example.estrazione_win10_sales.util.TimestampParser;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Input source reading the extract straight from the inventory database instead of a CSV export.
+ * <p>
+ * The query of {@code sql/querySQL.sql} is built for the riceIds of the template, split into chunks of
+ * {@code chunkSize} ids. Chunks run concurrently on at most {@code threads} connections and every result set is
+ * streamed with a bounded fetch size into the terminal aggregation, so neither the rows nor a CSV file are kept.
+ * Records are numbered by chunk and by row inside the chunk, ties between equal timestamps are broken in that
+ * order like lines of the CSV export.
+ */
+public class JdbcExtractReader {
+
+    static final String SELECT = "SELECT tt.rice_id, ii.chiave, tt.terminal_id, ii.valore, ii.timestamp"
+            + " FROM sisalpay_ts_ms_terminal_shop.terminal tt"
+            + " LEFT JOIN nts_inventario.inventory ii ON tt.terminal_id = ii.tid AND ii.chiave IN ('osType', 'osVersion')"
+            + " WHERE tt.rice_id IN (";
+    static final String ORDER_BY = ") ORDER BY tt.rice_id, tt.terminal_id";
+
+    // record position = chunk << CHUNK_SHIFT | row inside the chunk
+    private static final int CHUNK_SHIFT = 40;
+
+    private final DataSource dataSource;
+    private final int chunkSize;
+    private final int threads;
+    private final int fetchSize;
+    private final TimestampParser timestamps = CsvRecord.timestampParser();
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    public JdbcExtractReader(DataSource dataSource, int chunkSize, int threads, int fetchSize) {
+        this.dataSource = dataSource;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.threads = Math.max(1, threads);
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    /** Query for a chunk of {@code ids} riceIds. */
+    static String query(int ids) {
+        return SELECT + String.join(", ", Collections.nCopies(ids, "?")) + ORDER_BY;
+    }
+
+    /**
+     * Whether a riceId can match the numeric rice_id column, i.e. is a canonical number. Other ids are left out of
+     * the query: on strict databases a single text value would fail its whole chunk.
+     */
+    static boolean queryable(String riceId) {
+        return IdCodec.parseCanonical(riceId) >= 0;
+    }
+
+    /**
+     * Read the extract rows of the given riceIds into the accumulator; ids that are not {@link #queryable} have no
+     * rows. Accumulators other than {@link ConcurrentTerminalAggregator} are fed under a lock when several chunks
+     * run at once.
+     *
+     * @return number of chunk queries run
+     * @throws IOException if a query fails; the other chunks are cancelled
+     */
+    public int read(List<String> ids, TerminalAccumulator accumulator) throws IOException {
+        List<String> riceIds = ids.stream().filter(JdbcExtractReader::queryable).toList();
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < riceIds.size(); i += chunkSize) {
+            chunks.add(riceIds.subList(i, Math.min(i + chunkSize, riceIds.size())));
+        }
+        if (chunks.isEmpty()) return 0;
+        int poolSize = Math.min(threads, chunks.size());
+        boolean locked = poolSize > 1 && !(accumulator instanceof ConcurrentTerminalAggregator);
+        if (poolSize == 1) {
+            for (int c = 0; c < chunks.size(); c++) readChunk(c, chunks.get(c), accumulator, false);
+            return chunks.size();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < chunks.size(); c++) {
+                int chunk = c;
+                futures.add(executor.submit(() -> {
+                    readChunk(chunk, chunks.get(chunk), accumulator, locked);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+            return chunks.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the extract from the database", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException("Extraction query failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void readChunk(int chunk, List<String> riceIds, TerminalAccumulator accumulator, boolean locked) throws IOException {
+        IdCodec ids = accumulator.ids();
+        long seq = (long) chunk << CHUNK_SHIFT;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(query(riceIds.size()),
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(fetchSize);
+            for (int i = 0; i < riceIds.size(); i++) {
+                statement.setLong(i + 1, IdCodec.parseCanonical(riceIds.get(i)));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    long riceKey = key(ids, rs.getString(1));
+                    Chiave chiave = Chiave.of(text(rs.getString(2)));
+                    long tidKey = key(ids, rs.getString(3));
+                    String valore = text(rs.getString(4));
+                    long ts = timestamp(rs.getObject(5));
+                    if (locked) {
+                        synchronized (accumulator) {
+                            accumulator.accept(seq++, riceKey, tidKey, chiave, valore, ts);
+                        }
+                    } else {
+                        accumulator.accept(seq++, riceKey, tidKey, chiave, valore, ts);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Extraction query failed for chunk " + chunk + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long key(IdCodec ids, String id) {
+        String t = text(id);
+        return t == null ? IdCodec.NO_ID : ids.encode(t);
+    }
+
+    /** Column text as the CSV export would give it: trimmed, null when blank */
+    private static String text(String s) {
+        if (s == null) return null;
+        String t = s.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    /** Epoch millis of the timestamp column; local date-times are in the same zone as the CSV timestamps */
+    private long timestamp(Object value) {
+        if (value == null) return TerminalAccumulator.NO_TIMESTAMP;
+        if (value instanceof Timestamp ts) return ts.getTime();
+        if (value instanceof LocalDateTime ldt) return ldt.atZone(zone).toInstant().toEpochMilli();
+        if (value instanceof OffsetDateTime odt) return odt.toInstant().toEpochMilli();
+        if (value instanceof java.util.Date date) return date.getTime();
+        return timestamps.parse(value.toString());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Output rows as JSON Lines: one object per data row, with every output column as a key (null when the
+ * row has no cell there). Keys are the output headers; blank headers become {@code column_N} and repeated
+ * ones get the {@code _N} suffix of their column, N being 1-based (the first higher N not taken yet if another
+ * header already has that name). Numbers and booleans keep their JSON type, everything else is a string.
+ * Empty template rows are left out.
+ */
+public class JsonLinesOutputSink extends TextOutputSink {
+
+    /** Keys already quoted and followed by the colon, by output column */
+    private String[] keys = new String[0];
+
+    public JsonLinesOutputSink(WritableByteChannel channel) {
+        super(channel);
+    }
+
+    @Override
+    public void header(Object[] cells) {
+        keys = new String[cells.length];
+        Set<String> seen = new HashSet<>();
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < cells.length; c++) {
+            String name = text(cells[c]);
+            if (name == null || name.isBlank()) name = "column_" + (c + 1);
+            // a repeated name gets the number of its column, or the next one if a header already has that name
+            String base = name;
+            for (int n = c + 1; !seen.add(name); n++) name = base + "_" + n;
+            sb.setLength(0);
+            JsonWriter.appendString(sb, name);
+            keys[c] = sb.append(':').toString();
+        }
+    }
+
+    @Override
+    public void row(int rowIndex, Object[] cells) throws IOException {
+        if (isEmpty(cells)) return;
+        line.append('{');
+        for (int c = 0; c < cells.length; c++) {
+            if (c > 0) line.append(',');
+            line.append(c < keys.length ? keys[c] : "\"column_" + (c + 1) + "\":");
+            appendValue(cells[c]);
+        }
+        line.append('}');
+        writeLine();
+    }
+
+    private void appendValue(Object cell) {
+        if (cell == null) {
+            line.append("null");
+        } else if (cell instanceof Double d) {
+            if (!Double.isFinite(d)) {
+                line.append("null");
+            } else if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                line.append((long) (double) d);
+            } else {
+                line.append(BigDecimal.valueOf(d).toPlainString());
+            }
+        } else if (cell instanceof Boolean b) {
+            line.append(b.booleanValue());
+        } else {
+            JsonWriter.appendString(line, text(cell));
+        }
+    }
+}
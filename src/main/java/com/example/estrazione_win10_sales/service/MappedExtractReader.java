@@ -0,0 +1,300 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.example.estrazione_win10_sales.util.TimestampParser;
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fast path reader for the inventory extract layout
+ * {@code rice_id;rice_id;chiave;terminal_id;timestamp_TO_DELETE;valore;timestamp}.
+ * <p>
+ * The file is memory-mapped and scanned byte by byte for separators and line ends; only riceId, tid,
+ * chiave, valore and timestamp are decoded, straight into the primitive
+ * {@link TerminalAccumulator#accept(long, long, long, Chiave, String, long)}. No String is built for ids,
+ * chiave, NULL markers or the ignored columns, and valore is only decoded for osType/osVersion rows.
+ * <p>
+ * Lines the fast path does not handle (non-ASCII bytes, escapes, embedded or unbalanced quotes, a column
+ * count other than 7) are decoded and parsed by OpenCSV with the same settings as the regular reader, so
+ * the result is always the one of {@link CsvRowSchema#decode(String[])} on OpenCSV rows.
+ */
+public final class MappedExtractReader {
+
+    /** Header of the extract layout handled by the fast path. */
+    public static final List<String> LAYOUT = List.of("rice_id", "rice_id", "chiave", "terminal_id", "timestamp_TO_DELETE", "valore", "timestamp");
+
+    /** Column ordinals of the layout, compiled like any other header */
+    private static final CsvRowSchema SCHEMA = CsvRowSchema.compile(LAYOUT.toArray(new String[0]));
+    private static final int COLUMNS = SCHEMA.getColumnCount();
+    private static final int RICE_ID = SCHEMA.getRiceIdColumn();
+    private static final int CHIAVE = SCHEMA.getChiaveColumn();
+    private static final int TID = SCHEMA.getTidColumn();
+    private static final int VALORE = SCHEMA.getValoreColumn();
+    private static final int TIMESTAMP = SCHEMA.getTimestampColumn();
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private static final byte[] OS_TYPE = Chiave.OS_TYPE.getKey().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OS_VERSION = Chiave.OS_VERSION.getKey().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final long size;
+    private final long window;
+    private final TerminalAccumulator accumulator;
+    private final IdCodec ids;
+    private final CSVParser parser = new CSVParserBuilder().withSeparator(';').build();
+
+    // current mapped window, [base, base + buf.limit()) of the file
+    private MappedByteBuffer buf;
+    private long base;
+    private int pos;
+    // current physical line, without line terminator
+    private int lineStart;
+    private int lineEnd;
+    // input position of the next record
+    private long seq;
+
+    // sanitized field bounds of the current line, start -1 for a null field
+    private final int[] fieldStart = new int[COLUMNS];
+    private final int[] fieldEnd = new int[COLUMNS];
+
+    // repeated values: the same few valore strings come back on every line
+    private final String[] valueCache = new String[256];
+    private final TimestampParser timestamps = CsvRecord.timestampParser();
+
+    private MappedExtractReader(FileChannel channel, TerminalAccumulator accumulator, long window) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.window = window;
+        this.accumulator = accumulator;
+        this.ids = accumulator.ids();
+        map(0);
+    }
+
+    /**
+     * Read the extract into the accumulator, records numbered by line.
+     *
+     * @return the header row, or null if the file is empty or not in the {@link #LAYOUT} (nothing is accepted then)
+     */
+    public static String[] read(Path csv, TerminalAccumulator accumulator) throws IOException {
+        return read(csv, accumulator, MAX_WINDOW);
+    }
+
+    /** Same as {@link #read(Path, TerminalAccumulator)}, mapping at most {@code window} bytes at a time. */
+    static String[] read(Path csv, TerminalAccumulator accumulator, long window) throws IOException {
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            if (channel.size() == 0) return null;
+            MappedExtractReader reader = new MappedExtractReader(channel, accumulator, window);
+            if (!reader.nextLine()) return null;
+            String[] header;
+            try {
+                header = reader.parser.parseLine(reader.decodeLine());
+            } catch (IOException ex) {
+                // e.g. unterminated quote: leave it to the regular reader
+                return null;
+            }
+            if (!LAYOUT.equals(Arrays.asList(header))) return null;
+            reader.readRecords();
+            return header;
+        }
+    }
+
+    private void map(long offset) throws IOException {
+        base = offset;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+        pos = 0;
+    }
+
+    /** Move to the next physical line, remapping the window if the line crosses its end. */
+    private boolean nextLine() throws IOException {
+        if (base + pos >= size) return false;
+        int limit = buf.limit();
+        int i = pos;
+        while (i < limit && buf.get(i) != '\n') i++;
+        if (i == limit && base + limit < size) {
+            if (pos == 0) throw new IOException("CSV line longer than " + window + " bytes");
+            map(base + pos);
+            return nextLine();
+        }
+        lineStart = pos;
+        lineEnd = i > lineStart && buf.get(i - 1) == '\r' ? i - 1 : i;
+        pos = i < limit ? i + 1 : i;
+        return true;
+    }
+
+    private String decodeLine() {
+        byte[] bytes = new byte[lineEnd - lineStart];
+        buf.get(lineStart, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void readRecords() throws IOException {
+        while (nextLine()) {
+            if (splitFields()) {
+                acceptFields();
+            } else {
+                acceptParsed();
+            }
+        }
+    }
+
+    /**
+     * Split the current line into 7 sanitized fields.
+     * Returns false if the line needs the general parser.
+     */
+    private boolean splitFields() {
+        int field = 0;
+        int i = lineStart;
+        while (true) {
+            if (field == COLUMNS) return false;
+            int start = i;
+            int end;
+            if (i < lineEnd && buf.get(i) == '"') {
+                // quoted field: no quote, escape or line end inside, separator or line end right after
+                i++;
+                start = i;
+                while (i < lineEnd && isPlain(buf.get(i))) i++;
+                if (i == lineEnd || buf.get(i) != '"') return false;
+                end = i++;
+                if (i < lineEnd && buf.get(i) != ';') return false;
+            } else {
+                while (i < lineEnd && buf.get(i) != ';') {
+                    if (!isPlain(buf.get(i))) return false;
+                    i++;
+                }
+                end = i;
+            }
+            sanitize(field++, start, end);
+            if (i == lineEnd) return field == COLUMNS;
+            i++; // separator
+        }
+    }
+
+    /** ASCII byte that OpenCSV takes literally: no quote, escape, CR or non-ASCII byte */
+    private static boolean isPlain(byte b) {
+        return b >= 0 && b != '"' && b != '\\' && b != '\r';
+    }
+
+    /** Same rules as CsvRecord.sanitize: trim, blank or NULL is missing */
+    private void sanitize(int field, int start, int end) {
+        while (start < end && buf.get(start) <= ' ') start++;
+        while (end > start && buf.get(end - 1) <= ' ') end--;
+        if (start == end || (end - start == 4
+                && (buf.get(start) | 0x20) == 'n' && (buf.get(start + 1) | 0x20) == 'u'
+                && (buf.get(start + 2) | 0x20) == 'l' && (buf.get(start + 3) | 0x20) == 'l')) {
+            fieldStart[field] = -1;
+            return;
+        }
+        fieldStart[field] = start;
+        fieldEnd[field] = end;
+    }
+
+    private void acceptFields() {
+        Chiave chiave = chiave(CHIAVE);
+        String valore = null;
+        if ((chiave == Chiave.OS_TYPE || chiave == Chiave.OS_VERSION) && fieldStart[VALORE] >= 0) {
+            valore = value(fieldStart[VALORE], fieldEnd[VALORE]);
+        }
+        accumulator.accept(seq++, id(RICE_ID), id(TID), chiave, valore, timestamp(TIMESTAMP));
+    }
+
+    private void acceptParsed() throws IOException {
+        List<String> fields = new ArrayList<>(COLUMNS);
+        // BufferedReader, used by the regular reader, also breaks lines on a lone CR
+        String[] lines = decodeLine().split("\r", -1);
+        int next = 0;
+        do {
+            String line;
+            if (next < lines.length) {
+                line = lines[next++];
+            } else if (nextLine()) {
+                lines = decodeLine().split("\r", -1);
+                line = lines[0];
+                next = 1;
+            } else {
+                throw new IOException("Unterminated quoted field at the end of the CSV file");
+            }
+            fields.addAll(Arrays.asList(parser.parseLineMulti(line)));
+            if (!parser.isPending()) {
+                try {
+                    accumulator.accept(SCHEMA.decode(fields.toArray(new String[0])), seq++);
+                } catch (IllegalArgumentException ex) {
+                    accumulator.skipMalformed();
+                }
+                fields.clear();
+            }
+        } while (parser.isPending() || next < lines.length);
+    }
+
+    private boolean equalsBytes(int field, byte[] expected) {
+        int start = fieldStart[field];
+        if (fieldEnd[field] - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(start + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private Chiave chiave(int field) {
+        if (fieldStart[field] < 0) return null;
+        if (equalsBytes(field, OS_TYPE)) return Chiave.OS_TYPE;
+        if (equalsBytes(field, OS_VERSION)) return Chiave.OS_VERSION;
+        return Chiave.OTHER;
+    }
+
+    /** Key of an id field: canonical decimals are parsed in place, anything else goes through the codec */
+    private long id(int field) {
+        int start = fieldStart[field];
+        if (start < 0) return IdCodec.NO_ID;
+        int end = fieldEnd[field];
+        int len = end - start;
+        if (len <= 18 && (len == 1 || buf.get(start) != '0')) {
+            long v = 0;
+            int i = start;
+            for (; i < end; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) break;
+                v = v * 10 + d;
+            }
+            if (i == end) return v;
+        }
+        return ids.encode(value(start, end));
+    }
+
+    /** ASCII text of the range, interned through a small direct-mapped cache */
+    private String value(int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + buf.get(i);
+        int slot = (h ^ (h >>> 8)) & (valueCache.length - 1);
+        String cached = valueCache[slot];
+        if (cached != null && cached.length() == end - start) {
+            int i = 0;
+            while (i < cached.length() && cached.charAt(i) == buf.get(start + i)) i++;
+            if (i == cached.length()) return cached;
+        }
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        String value = new String(bytes, StandardCharsets.US_ASCII);
+        valueCache[slot] = value;
+        return value;
+    }
+
+    /** Epoch millis of the timestamp field */
+    private long timestamp(int field) {
+        int start = fieldStart[field];
+        if (start < 0) return TerminalAccumulator.NO_TIMESTAMP;
+        return timestamps.parse(buf, start, fieldEnd[field]);
+    }
+}
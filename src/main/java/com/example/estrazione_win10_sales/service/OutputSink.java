@@ -0,0 +1,46 @@
+package com.example.estrazione_win10_sales.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the enriched rows, fed by {@link TemplateFill} one row at a time as soon as the row is built.
+ * <p>
+ * Rows are arrays of cell values by output column: {@link String}, {@link Double}, {@link Boolean},
+ * {@link Formula}, {@link ErrorValue}, {@link #BLANK}, or null for no cell. The array is reused for the next
+ * row, so a sink must not keep it. A sink writes to a channel it does not own: the caller opens it, and
+ * closes and moves the file into place after {@link #finish()}.
+ */
+public interface OutputSink extends Closeable {
+
+    /** Formula cell of the template: a formula in xlsx, its {@code =expression} text in the other formats. */
+    record Formula(String expression) {
+        @Override
+        public String toString() {
+            return "=" + expression;
+        }
+    }
+
+    /** Error cell of the template, by its Excel error code. */
+    record ErrorValue(byte code) {
+    }
+
+    /** Blank cell of the template: present without a value, an empty field in the text formats. */
+    record Blank() {
+    }
+
+    Blank BLANK = new Blank();
+
+    /** Header row: template headers through the projection, then terminal_1..terminal_N. Called once, first. */
+    void header(Object[] cells) throws IOException;
+
+    /** Data row; {@code rowIndex} is the template row, rows without any cell may be skipped by text formats. */
+    void row(int rowIndex, Object[] cells) throws IOException;
+
+    /** Write out whatever is still pending; the channel stays open. */
+    void finish() throws IOException;
+
+    /** Release buffers and temp files; the output is incomplete unless {@link #finish()} succeeded. */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,146 @@
+package com.example.estrazione_win10_sales.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Diagnostics of the output, recorded while the rows are written: header layout, the first data rows,
+ * row and column counts and how many terminal cells were filled. It sits next to the real sinks in
+ * {@link TemplateFill}, so checking the output never means reading it back.
+ * Cell text follows {@link PreparsedTemplate#text}, as if the cells were read from the workbook.
+ */
+public class OutputSummary implements OutputSink {
+
+    /** Data rows kept as samples by default. */
+    public static final int DEFAULT_SAMPLE_ROWS = 5;
+
+    private final int sampleRows;
+    private final int[] terminalColumns;
+    private final Map<String, Integer> headers = new LinkedHashMap<>();
+    private final List<String[]> samples = new ArrayList<>();
+    private int columns;
+    private int lastRow;
+    private int dataRows;
+    private long[] filledByColumn = new long[0];
+    // rows by number of filled terminal columns
+    private long[] rowsByFilled = new long[0];
+
+    /**
+     * @param projection output column mapping, for the position of the terminal columns
+     * @param sampleRows data rows to keep, the first ones of the output
+     */
+    public OutputSummary(ColumnProjection projection, int sampleRows) {
+        this.sampleRows = Math.max(0, sampleRows);
+        this.terminalColumns = new int[projection.terminalCount()];
+        for (int i = 0; i < terminalColumns.length; i++) terminalColumns[i] = projection.terminalTarget(i);
+        this.filledByColumn = new long[terminalColumns.length];
+        this.rowsByFilled = new long[terminalColumns.length + 1];
+    }
+
+    @Override
+    public void header(Object[] cells) {
+        columns = cells.length;
+        for (int c = 0; c < cells.length; c++) {
+            String value = PreparsedTemplate.text(cells[c]);
+            if (value != null && !value.isBlank()) headers.put(value, c);
+        }
+    }
+
+    @Override
+    public void row(int rowIndex, Object[] cells) {
+        lastRow = rowIndex;
+        // same rows as the post-run check used to read: 1..sampleRows of the sheet
+        if (rowIndex <= sampleRows) {
+            String[] texts = new String[cells.length];
+            for (int c = 0; c < cells.length; c++) texts[c] = PreparsedTemplate.text(cells[c]);
+            samples.add(texts);
+        }
+        boolean empty = true;
+        for (Object cell : cells) {
+            if (cell != null) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) return;
+        dataRows++;
+        int filled = 0;
+        for (int i = 0; i < terminalColumns.length; i++) {
+            if (cells[terminalColumns[i]] instanceof String s && !s.isEmpty()) {
+                filledByColumn[i]++;
+                filled++;
+            }
+        }
+        rowsByFilled[filled]++;
+    }
+
+    @Override
+    public void finish() {
+        // nothing to write
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    /** Header text -> output column, blank headers left out. */
+    public Map<String, Integer> headers() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /** Non-empty data rows. */
+    public int dataRows() {
+        return dataRows;
+    }
+
+    /** Output columns, terminal ones included. */
+    public int columns() {
+        return columns;
+    }
+
+    /** Values for the run report. */
+    public Map<String, Object> toReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("dataRows", dataRows);
+        report.put("lastRow", lastRow);
+        report.put("columns", columns);
+        Map<String, Object> filled = new LinkedHashMap<>();
+        for (int i = 0; i < terminalColumns.length; i++) filled.put(ColumnProjection.terminalHeader(i), filledByColumn[i]);
+        report.put("terminalCellsByColumn", filled);
+        List<Long> byCount = new ArrayList<>();
+        for (long n : rowsByFilled) byCount.add(n);
+        report.put("rowsByTerminalCount", byCount);
+        return report;
+    }
+
+    /**
+     * Diagnostics text: the header map, then every header with its value for each sample row, then the counts.
+     */
+    public String diagnostics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Headers: ").append(headers).append(System.lineSeparator());
+        for (String[] row : samples) {
+            for (Map.Entry<String, Integer> e : headers.entrySet()) {
+                int ci = e.getValue();
+                String val = ci < row.length ? row[ci] : null;
+                sb.append(e.getKey()).append(" -> '").append(val).append("'\n");
+            }
+            sb.append(System.lineSeparator());
+        }
+        sb.append("Rows: ").append(dataRows).append(" data rows, last row ").append(lastRow)
+                .append(", ").append(columns).append(" columns").append(System.lineSeparator());
+        for (int i = 0; i < terminalColumns.length; i++) {
+            sb.append(ColumnProjection.terminalHeader(i)).append(" filled: ").append(filledByColumn[i])
+                    .append(System.lineSeparator());
+        }
+        sb.append("Rows by filled terminals: ").append(toReport().get("rowsByTerminalCount")).append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    public void writeDiagnostics(Path file) throws IOException {
+        Files.writeString(file, diagnostics());
+    }
+}
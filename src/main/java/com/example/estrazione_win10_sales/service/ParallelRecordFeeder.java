@@ -0,0 +1,95 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hands raw CSV rows, in batches, to a pool of parser threads that decode them to {@link CsvRecord}
+ * and fold them into a thread-safe {@link TerminalAccumulator}.
+ * Rows are numbered in the order they are passed to {@link #accept(String[])}, so the accumulator can
+ * resolve timestamp ties exactly as a sequential read would. When the parsers fall behind, the reading
+ * thread parses the batch itself instead of queueing more rows.
+ */
+class ParallelRecordFeeder implements Consumer<String[]>, AutoCloseable {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final TerminalAccumulator accumulator;
+    private final ThreadPoolExecutor executor;
+    private Function<String[], CsvRecord> decoder = CsvRecord::fromCsvRow;
+    private final List<Future<?>> pending = new ArrayList<>();
+    private List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+    private long batchStart;
+    private long next;
+
+    ParallelRecordFeeder(TerminalAccumulator accumulator, int threads) {
+        this.accumulator = accumulator;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /** Use the given row decoder (e.g. compiled from the header) for the rows passed from now on. */
+    public ParallelRecordFeeder decodingWith(Function<String[], CsvRecord> decoder) {
+        if (!batch.isEmpty()) submit();
+        this.decoder = decoder;
+        return this;
+    }
+
+    @Override
+    public void accept(String[] row) {
+        batch.add(row);
+        next++;
+        if (batch.size() == BATCH_SIZE) submit();
+    }
+
+    private void submit() {
+        List<String[]> rows = batch;
+        long start = batchStart;
+        Function<String[], CsvRecord> rowDecoder = decoder;
+        pending.add(executor.submit(() -> parse(rows, start, rowDecoder)));
+        // failed batches stay in the list, finish() reports them
+        pending.removeIf(f -> f.state() == Future.State.SUCCESS);
+        batch = new ArrayList<>(BATCH_SIZE);
+        batchStart = next;
+    }
+
+    private void parse(List<String[]> rows, long start, Function<String[], CsvRecord> rowDecoder) {
+        long seq = start;
+        for (String[] row : rows) {
+            try {
+                accumulator.accept(rowDecoder.apply(row), seq);
+            } catch (IllegalArgumentException ex) {
+                accumulator.skipMalformed();
+            }
+            seq++;
+        }
+    }
+
+    /**
+     * Parse the last partial batch and wait for all parser threads to finish.
+     */
+    public void finish() throws IOException {
+        if (!batch.isEmpty()) submit();
+        try {
+            for (Future<?> f : pending) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing CSV rows", e);
+        } catch (ExecutionException e) {
+            throw new IOException("CSV row parsing failed", e.getCause());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.estrazione_win10_sales.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Write stage of the pipelined mode: rows filled on the calling thread are copied into batches and handed
+ * through a bounded queue to a writer thread, which feeds them to the actual sinks. Filling and writing
+ * (xlsx row serialization and compression, text encoding, file I/O) then run at the same time; when the
+ * writer falls behind, the queue is full and the filling thread waits.
+ * <p>
+ * The sinks fed are not owned: {@link #finish()} only waits until they have received every row, the caller
+ * still finishes and closes them. A failure of the writer is thrown by the next call on the filling side.
+ */
+public final class PipelinedOutputSink implements OutputSink {
+
+    /** Rows per hand-off. */
+    static final int BATCH_ROWS = 512;
+    /** Batches queued before the filling thread has to wait. */
+    static final int QUEUE_BATCHES = 8;
+
+    private static final int HEADER = -1;
+    private static final Batch END = new Batch(new int[0], new Object[0][], 0);
+
+    /** Rows of one hand-off: {@code rows[i]} is template row {@code rowIndexes[i]}, {@link #HEADER} for the header. */
+    private record Batch(int[] rowIndexes, Object[][] rows, int size) {
+    }
+
+    private final List<? extends OutputSink> sinks;
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+    private final Thread writer;
+    private volatile Throwable failure;
+    private int[] rowIndexes = new int[BATCH_ROWS];
+    private Object[][] rows = new Object[BATCH_ROWS][];
+    private int size;
+    private boolean ended;
+
+    /** @param sinks sinks fed by the writer thread, in this order for every row */
+    public PipelinedOutputSink(List<? extends OutputSink> sinks) {
+        this.sinks = List.copyOf(sinks);
+        this.writer = Thread.ofPlatform().name("output-writer").daemon(true).start(this::write);
+    }
+
+    @Override
+    public void header(Object[] cells) throws IOException {
+        add(HEADER, cells);
+    }
+
+    @Override
+    public void row(int rowIndex, Object[] cells) throws IOException {
+        add(rowIndex, cells);
+    }
+
+    /** Hand over the last rows and wait until the writer thread has passed them all to the sinks. */
+    @Override
+    public void finish() throws IOException {
+        if (!ended) {
+            if (size > 0) flush();
+            put(END);
+            ended = true;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the outputs", e);
+        }
+        checkFailure();
+    }
+
+    /** Stop the writer thread, e.g. after a failed fill; the sinks are left to the caller. */
+    @Override
+    public void close() {
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(int rowIndex, Object[] cells) throws IOException {
+        // the caller reuses its array; the values themselves are immutable and can be shared
+        rowIndexes[size] = rowIndex;
+        rows[size] = cells.clone();
+        if (++size == BATCH_ROWS) flush();
+    }
+
+    private void flush() throws IOException {
+        put(new Batch(rowIndexes, rows, size));
+        rowIndexes = new int[BATCH_ROWS];
+        rows = new Object[BATCH_ROWS][];
+        size = 0;
+    }
+
+    private void put(Batch batch) throws IOException {
+        checkFailure();
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while handing rows to the writer", e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t instanceof IOException io) throw new IOException("Output write failed: " + io.getMessage(), io);
+        if (t instanceof RuntimeException re) throw re;
+        if (t instanceof Error err) throw err;
+    }
+
+    /** Writer thread: after a failure it keeps taking batches without writing them, so the filling side never blocks. */
+    private void write() {
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == END) return;
+                if (failure != null) continue;
+                try {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Object[] cells = batch.rows()[i];
+                        int rowIndex = batch.rowIndexes()[i];
+                        for (OutputSink sink : sinks) {
+                            if (rowIndex == HEADER) sink.header(cells);
+                            else sink.row(rowIndex, cells);
+                        }
+                    }
+                } catch (IOException | RuntimeException | Error e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed before the end of the rows
+        }
+    }
+}
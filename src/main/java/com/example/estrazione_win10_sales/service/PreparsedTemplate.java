@@ -0,0 +1,375 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.ExcelUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Template sheet in a compact binary form, everything a conversion reads from the template: sheet name,
+ * header texts, the cells of every row with their type, and the riceId (column A) -> rows index.
+ * <p>
+ * Built once from the POI sheet, saved to a file and memory-mapped by later runs (see {@link TemplateCache}),
+ * so they neither unzip nor parse the OOXML. Rows are decoded one at a time by a {@link RowCursor} straight
+ * from the buffer; texts are kept once in a string table and decoded on first use.
+ * <p>
+ * Layout, big-endian ints: a fixed header (magic, last row, sheet name, header count, section offsets, size),
+ * the header string codes, the string table (count, count + 1 offsets, UTF-8 bytes), the rows (row index,
+ * cell count, then column, type and value of each cell) and the riceId index (count, then code, row count
+ * and rows of each riceId).
+ */
+public final class PreparsedTemplate {
+
+    private static final int MAGIC = 0x45545031; // "ETP1"
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+    private static final int NO_STRING = -1;
+
+    private static final byte STRING = 1;
+    private static final byte NUMERIC = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte FORMULA = 4;
+    private static final byte ERROR = 5;
+    private static final byte BLANK = 6;
+
+    private final ByteBuffer buffer;
+    private final int lastRowNum;
+    private final String sheetName;
+    private final List<String> headers;
+    private final int stringsCount;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int rowsOffset;
+    private final int riceIdsOffset;
+    private final String[] strings;
+    private Map<String, List<Integer>> riceIdRows;
+
+    private PreparsedTemplate(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt(0) != MAGIC) throw new IOException("Not a preparsed template");
+            lastRowNum = buffer.getInt(4);
+            int sheetNameCode = buffer.getInt(8);
+            int headerCount = buffer.getInt(12);
+            int stringsOffset = buffer.getInt(16);
+            rowsOffset = buffer.getInt(20);
+            riceIdsOffset = buffer.getInt(24);
+            if (buffer.getInt(28) != buffer.limit()) throw new IOException("Truncated preparsed template");
+            stringsCount = buffer.getInt(stringsOffset);
+            stringOffsets = stringsOffset + Integer.BYTES;
+            stringData = stringOffsets + (stringsCount + 1) * Integer.BYTES;
+            strings = new String[stringsCount];
+            sheetName = string(sheetNameCode);
+            List<String> h = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) h.add(string(buffer.getInt(HEADER_BYTES + i * Integer.BYTES)));
+            headers = Collections.unmodifiableList(h);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException ex) {
+            throw new IOException("Corrupted preparsed template", ex);
+        }
+    }
+
+    /**
+     * Encode a POI sheet. Header texts cover the columns up to the last non-blank header cell, like
+     * {@link ExcelUtils#headerMap}.
+     */
+    public static PreparsedTemplate of(Sheet sheet) throws IOException {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream rowBytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream rows = new DataOutputStream(rowBytes);
+        Map<String, List<Integer>> riceIdRows = new LinkedHashMap<>();
+        for (Row row : sheet) {
+            rows.writeInt(row.getRowNum());
+            rows.writeInt(row.getPhysicalNumberOfCells());
+            for (Cell cell : row) {
+                rows.writeInt(cell.getColumnIndex());
+                switch (cell.getCellType()) {
+                    case STRING -> {
+                        rows.writeByte(STRING);
+                        rows.writeInt(code(cell.getStringCellValue(), codes, strings));
+                    }
+                    case NUMERIC -> {
+                        rows.writeByte(NUMERIC);
+                        rows.writeDouble(cell.getNumericCellValue());
+                    }
+                    case BOOLEAN -> {
+                        rows.writeByte(BOOLEAN);
+                        rows.writeByte(cell.getBooleanCellValue() ? 1 : 0);
+                    }
+                    case FORMULA -> {
+                        rows.writeByte(FORMULA);
+                        rows.writeInt(code(cell.getCellFormula(), codes, strings));
+                    }
+                    case ERROR -> {
+                        rows.writeByte(ERROR);
+                        rows.writeByte(cell.getErrorCellValue());
+                    }
+                    case BLANK -> rows.writeByte(BLANK);
+                    default -> throw new IllegalArgumentException("Unsupported cell type: " + cell.getCellType());
+                }
+            }
+            if (row.getRowNum() > 0) {
+                String riceId = ExcelUtils.getStringCellValue(row.getCell(0));
+                if (riceId != null && !riceId.isBlank()) {
+                    riceIdRows.computeIfAbsent(riceId.trim(), k -> new ArrayList<>()).add(row.getRowNum());
+                }
+            }
+        }
+        rows.flush();
+
+        Map<String, Integer> headerMap = ExcelUtils.headerMap(sheet);
+        int maxCol = headerMap.values().stream().mapToInt(Integer::intValue).max().orElse(-1);
+        Row headerRow = sheet.getRow(0);
+        int[] headerCodes = new int[maxCol + 1];
+        for (int ci = 0; ci <= maxCol; ci++) {
+            String h = headerRow != null ? ExcelUtils.getStringCellValue(headerRow.getCell(ci)) : null;
+            headerCodes[ci] = h != null && !h.isBlank() ? code(h, codes, strings) : NO_STRING;
+        }
+        int sheetNameCode = code(sheet.getSheetName(), codes, strings);
+        List<int[]> riceIdEntries = new ArrayList<>(riceIdRows.size());
+        for (Map.Entry<String, List<Integer>> e : riceIdRows.entrySet()) {
+            int[] entry = new int[e.getValue().size() + 1];
+            entry[0] = code(e.getKey(), codes, strings);
+            for (int i = 0; i < e.getValue().size(); i++) entry[i + 1] = e.getValue().get(i);
+            riceIdEntries.add(entry);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rowBytes.size() + (1 << 16));
+        DataOutputStream out = new DataOutputStream(bytes);
+        // the fixed header is rewritten with the section offsets once they are known
+        for (int i = 0; i < HEADER_BYTES / Integer.BYTES; i++) out.writeInt(0);
+        for (int headerCode : headerCodes) out.writeInt(headerCode);
+        int stringsOffset = out.size();
+        out.writeInt(strings.size());
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int offset = 0;
+        for (String s : strings) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            out.writeInt(offset);
+            offset += b.length;
+        }
+        out.writeInt(offset);
+        for (byte[] b : encoded) out.write(b);
+        int rowsOffset = out.size();
+        rowBytes.writeTo(out);
+        int riceIdsOffset = out.size();
+        out.writeInt(riceIdEntries.size());
+        for (int[] entry : riceIdEntries) {
+            out.writeInt(entry[0]);
+            out.writeInt(entry.length - 1);
+            for (int i = 1; i < entry.length; i++) out.writeInt(entry[i]);
+        }
+        out.flush();
+        // size() stops counting at Integer.MAX_VALUE, past what int offsets and a single mapping can address
+        if (out.size() == Integer.MAX_VALUE) throw new IOException("Template too large to preparse");
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, MAGIC)
+                .putInt(4, sheet.getLastRowNum())
+                .putInt(8, sheetNameCode)
+                .putInt(12, headerCodes.length)
+                .putInt(16, stringsOffset)
+                .putInt(20, rowsOffset)
+                .putInt(24, riceIdsOffset)
+                .putInt(28, buffer.limit());
+        return new PreparsedTemplate(buffer);
+    }
+
+    /**
+     * Map a file written by {@link #save(Path)}. The mapping stays valid after the call; it is released
+     * with the template.
+     *
+     * @throws IOException if the file cannot be read or is not a complete preparsed template
+     */
+    public static PreparsedTemplate map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // header checked before mapping: a mapped file cannot be replaced on Windows until the mapping is collected
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) throw new IOException("Not a preparsed template: " + file);
+            if (header.getInt(28) != size) throw new IOException("Truncated preparsed template: " + file);
+            return new PreparsedTemplate(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /** Write the encoded template, replacing the file atomically. */
+    public void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "template-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer content = buffer.duplicate().clear();
+                while (content.hasRemaining()) channel.write(content);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public String sheetName() {
+        return sheetName;
+    }
+
+    /** Last row index, as {@link Sheet#getLastRowNum()}. */
+    public int lastRowNum() {
+        return lastRowNum;
+    }
+
+    /** Header text of every column up to the last non-blank header, null for blank ones. */
+    public List<String> headers() {
+        return headers;
+    }
+
+    /** Header text -> column, as {@link ExcelUtils#headerMap}. */
+    public Map<String, Integer> headerMap() {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int ci = 0; ci < headers.size(); ci++) {
+            if (headers.get(ci) != null) map.put(headers.get(ci), ci);
+        }
+        return map;
+    }
+
+    /** Trimmed non-blank column A text -> data rows holding it, in sheet order; decoded on first call. */
+    public Map<String, List<Integer>> riceIdRows() {
+        if (riceIdRows == null) {
+            ByteBuffer in = buffer.duplicate().position(riceIdsOffset);
+            int count = in.getInt();
+            Map<String, List<Integer>> map = new LinkedHashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i++) {
+                String riceId = string(in.getInt());
+                int n = in.getInt();
+                List<Integer> rows = new ArrayList<>(n);
+                for (int r = 0; r < n; r++) rows.add(in.getInt());
+                map.put(riceId, rows);
+            }
+            riceIdRows = Collections.unmodifiableMap(map);
+        }
+        return riceIdRows;
+    }
+
+    /** Encoded size in bytes. */
+    public int size() {
+        return buffer.limit();
+    }
+
+    /** Cursor over the rows present in the sheet, in row order; rows missing from the sheet are skipped. */
+    public RowCursor rows() {
+        return new RowCursor();
+    }
+
+    /**
+     * Text of a cell value as {@link ExcelUtils#getStringCellValue} gives it for the template cell: formulas
+     * without '=', booleans in lower case, "" for blank cells; null for no cell.
+     */
+    public static String text(Object value) {
+        if (value == null) return null;
+        if (value instanceof String s) return s;
+        if (value instanceof Double d) return ExcelUtils.formatNumeric(d);
+        if (value instanceof Boolean b) return String.valueOf(b);
+        if (value instanceof OutputSink.Formula f) return f.expression();
+        if (value instanceof OutputSink.ErrorValue e) return FormulaError.forInt(e.code()).getString();
+        return "";
+    }
+
+    /**
+     * Decodes one row at a time. Cell values are the ones of {@link OutputSink}: String, Double, Boolean,
+     * {@link OutputSink.Formula}, {@link OutputSink.ErrorValue} or {@link OutputSink#BLANK}.
+     */
+    public final class RowCursor {
+        private final ByteBuffer in = buffer.duplicate().position(rowsOffset).limit(riceIdsOffset);
+        private int rowIndex = -1;
+        private int size;
+        private int[] columns = new int[16];
+        private Object[] values = new Object[16];
+
+        private RowCursor() {
+        }
+
+        /** Move to the next stored row; false once past the last one. */
+        public boolean next() {
+            if (!in.hasRemaining()) return false;
+            rowIndex = in.getInt();
+            size = in.getInt();
+            if (size > columns.length) {
+                columns = new int[size];
+                values = new Object[size];
+            }
+            for (int i = 0; i < size; i++) {
+                columns[i] = in.getInt();
+                byte type = in.get();
+                values[i] = switch (type) {
+                    case STRING -> string(in.getInt());
+                    case NUMERIC -> in.getDouble();
+                    case BOOLEAN -> in.get() != 0;
+                    case FORMULA -> new OutputSink.Formula(string(in.getInt()));
+                    case ERROR -> new OutputSink.ErrorValue(in.get());
+                    case BLANK -> OutputSink.BLANK;
+                    default -> throw new IllegalStateException("Corrupted preparsed template: cell type " + type);
+                };
+            }
+            return true;
+        }
+
+        /** Index of the current row, -1 before the first {@link #next()}. */
+        public int rowIndex() {
+            return rowIndex;
+        }
+
+        /** Cells of the current row. */
+        public int size() {
+            return size;
+        }
+
+        /** Column of the i-th cell of the current row; cells come in column order. */
+        public int column(int i) {
+            return columns[i];
+        }
+
+        public Object value(int i) {
+            return values[i];
+        }
+    }
+
+    private String string(int code) {
+        if (code == NO_STRING) return null;
+        String s = strings[code];
+        if (s == null) {
+            int from = buffer.getInt(stringOffsets + code * Integer.BYTES);
+            int to = buffer.getInt(stringOffsets + (code + 1) * Integer.BYTES);
+            byte[] b = new byte[to - from];
+            buffer.get(stringData + from, b);
+            s = new String(b, StandardCharsets.UTF_8);
+            strings[code] = s;
+        }
+        return s;
+    }
+
+    private static int code(String s, Map<String, Integer> codes, List<String> strings) {
+        Integer code = codes.get(s);
+        if (code == null) {
+            code = strings.size();
+            strings.add(s);
+            codes.put(s, code);
+        }
+        return code;
+    }
+}
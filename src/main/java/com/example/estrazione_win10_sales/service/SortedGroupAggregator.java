@@ -0,0 +1,95 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.util.IdCodec;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation of an extract grouped by riceId, as the extraction query returns it ({@code ORDER BY rice_id,
+ * terminal_id}): only the riceId being read is kept as aggregation state, its terminal values are built as
+ * soon as the next riceId starts.
+ * <p>
+ * The records of a riceId go to a reused {@link TerminalAggregator}, so values and terminal order follow the
+ * same rules as the hash aggregation. The ordering is checked while reading: a riceId coming back after another
+ * one started throws {@link UnsortedInputException}, and the caller reads the extract again with the hash
+ * aggregation. Only the grouping matters, riceIds may come in any order. Not thread-safe.
+ */
+public final class SortedGroupAggregator implements TerminalAccumulator {
+
+    /** The extract is not grouped by riceId; nothing of what was read so far can be used. */
+    public static final class UnsortedInputException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        UnsortedInputException(String message) {
+            super(message);
+        }
+    }
+
+    private final IdCodec ids = new IdCodec();
+    private final TerminalAggregator group = new TerminalAggregator(ids);
+    // terminal values of the riceIds already completed, in input order
+    private final Map<String, List<String>> result = new LinkedHashMap<>();
+    private long currentRice = IdCodec.NO_ID;
+    private String currentRiceId;
+    private long recordCount;
+    private long malformedCount;
+
+    @Override
+    public IdCodec ids() {
+        return ids;
+    }
+
+    @Override
+    public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        recordCount++;
+        if (riceKey == IdCodec.NO_ID) return;
+        if (riceKey != currentRice) {
+            completeGroup();
+            String riceId = ids.decode(riceKey);
+            if (result.containsKey(riceId)) {
+                throw new UnsortedInputException("Extract not grouped by riceId: " + riceId + " found again at record "
+                        + (recordCount - 1) + " after other riceIds");
+            }
+            currentRice = riceKey;
+            currentRiceId = riceId;
+        }
+        group.accept(seq, riceKey, tidKey, chiave, valore, tsMillis);
+    }
+
+    private void completeGroup() {
+        if (currentRice == IdCodec.NO_ID) return;
+        result.put(currentRiceId, group.terminals(0));
+        group.clear();
+        currentRice = IdCodec.NO_ID;
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void skipMalformed() {
+        malformedCount++;
+    }
+
+    @Override
+    public long malformedCount() {
+        return malformedCount;
+    }
+
+    @Override
+    public int riceIdCount() {
+        return result.size() + (currentRice == IdCodec.NO_ID ? 0 : 1);
+    }
+
+    /** Complete the last riceId and give the terminal values of all of them, in order of appearance. */
+    @Override
+    public Map<String, List<String>> result() {
+        completeGroup();
+        return result;
+    }
+}
@@ -0,0 +1,544 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.util.IdCodec;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Bounded-memory version of {@link TerminalAggregator}: an external sort of the records by riceId and tid.
+ * <p>
+ * Records are buffered as primitive (riceId, tid, chiave, value, timestamp, position) tuples until the buffer
+ * reaches the memory budget; the buffer is then sorted by riceId/tid and spilled to a temporary run file, where
+ * each riceId/tid is reduced to its first position and its latest osType/osVersion. {@link #result()} merges
+ * the runs (at most {@link #MAX_FAN_IN} at a time) and replays each riceId into a small {@link TerminalAggregator},
+ * so terminal values and orders follow exactly the same rules as the in-memory aggregation.
+ * <p>
+ * The heap taken by the records does not depend on the size of the extract: it is the budget plus one read
+ * buffer per merged run. What stays in memory is the result itself (the terminal values of every riceId), the
+ * id dictionary for non-numeric ids and the few distinct values. Not thread-safe; fed from one thread, or under
+ * a lock like {@link JdbcExtractReader} does.
+ */
+public final class SpillingTerminalAggregator implements TerminalAccumulator, AutoCloseable {
+
+    /** Heap taken by one buffered record: the tuple columns plus the two sort index arrays. */
+    static final int BYTES_PER_RECORD = 8 + 8 + 8 + 8 + 4 + 1 + 4 + 4;
+    /** Runs read at once by a merge; more runs are first merged into bigger ones. */
+    static final int MAX_FAN_IN = 64;
+
+    private static final int MIN_CHUNK_RECORDS = 1024;
+    private static final int IO_BUFFER = 1 << 16;
+    private static final byte OTHER = 0;
+    private static final byte OS_TYPE = 1;
+    private static final byte OS_VERSION = 2;
+    private static final int NO_VALUE = -1;
+
+    private final IdCodec ids = new IdCodec();
+    private final int chunkRecords;
+    private final int fanIn;
+    private final Path spillParent;
+
+    // buffered records, sorted and spilled when full
+    private long[] seq = new long[0];
+    private long[] rice = new long[0];
+    private long[] tid = new long[0];
+    private long[] ts = new long[0];
+    private int[] value = new int[0];
+    private byte[] chiave = new byte[0];
+    private int buffered;
+
+    // valore dictionary: only osType/osVersion values are kept, a handful of distinct strings
+    private final Map<String, Integer> valueCodes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    private Path spillDir;
+    private final List<Path> runs = new ArrayList<>();
+    private int runsWritten;
+    private long spilledBytes;
+    private int mergePasses;
+    private long recordCount;
+    private long malformedCount;
+    private int riceIdCount;
+
+    /**
+     * @param memoryBytes heap for the buffered records
+     * @param spillDir    directory of the run files, null for the system temp directory
+     */
+    public SpillingTerminalAggregator(long memoryBytes, Path spillDir) {
+        this((int) Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_CHUNK_RECORDS, memoryBytes / BYTES_PER_RECORD)), MAX_FAN_IN, spillDir);
+    }
+
+    /** Aggregator spilling every {@code chunkRecords} records and merging {@code fanIn} runs at a time. */
+    SpillingTerminalAggregator(int chunkRecords, int fanIn, Path spillDir) {
+        this.chunkRecords = chunkRecords;
+        this.fanIn = Math.max(2, fanIn);
+        this.spillParent = spillDir;
+    }
+
+    @Override
+    public IdCodec ids() {
+        return ids;
+    }
+
+    @Override
+    public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        recordCount++;
+        if (riceKey == IdCodec.NO_ID) return;
+        if (buffered == this.seq.length) {
+            if (buffered == chunkRecords) {
+                spillBuffer();
+            } else {
+                grow();
+            }
+        }
+        byte code = OTHER;
+        int valueCode = NO_VALUE;
+        if (valore != null && (chiave == Chiave.OS_TYPE || chiave == Chiave.OS_VERSION)) {
+            code = chiave == Chiave.OS_TYPE ? OS_TYPE : OS_VERSION;
+            valueCode = valueCode(valore);
+        }
+        int i = buffered++;
+        this.seq[i] = seq;
+        rice[i] = riceKey;
+        tid[i] = tidKey;
+        ts[i] = tsMillis;
+        value[i] = valueCode;
+        this.chiave[i] = code;
+    }
+
+    private int valueCode(String valore) {
+        Integer code = valueCodes.get(valore);
+        if (code == null) {
+            code = values.size();
+            values.add(valore);
+            valueCodes.put(valore, code);
+        }
+        return code;
+    }
+
+    /** Buffers grow with the input up to the chunk size, a small extract does not take the whole budget. */
+    private void grow() {
+        int n = (int) Math.min(chunkRecords, Math.max(MIN_CHUNK_RECORDS, 2L * seq.length));
+        seq = Arrays.copyOf(seq, n);
+        rice = Arrays.copyOf(rice, n);
+        tid = Arrays.copyOf(tid, n);
+        ts = Arrays.copyOf(ts, n);
+        value = Arrays.copyOf(value, n);
+        chiave = Arrays.copyOf(chiave, n);
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void skipMalformed() {
+        malformedCount++;
+    }
+
+    @Override
+    public long malformedCount() {
+        return malformedCount;
+    }
+
+    /** Distinct riceIds, known once {@link #result()} has merged the runs; 0 before. */
+    @Override
+    public int riceIdCount() {
+        return riceIdCount;
+    }
+
+    /** Run files written so far, intermediate merges included. */
+    public int spilledRuns() {
+        return runsWritten;
+    }
+
+    /** Bytes written to run files so far. */
+    public long spilledBytes() {
+        return spilledBytes;
+    }
+
+    /** Merges of runs into bigger runs, needed when more than {@link #MAX_FAN_IN} runs were spilled. */
+    public int mergePasses() {
+        return mergePasses;
+    }
+
+    /**
+     * Merge the buffered records and the spilled runs into the terminal values of every riceId, riceIds in order
+     * of first appearance. Run files are deleted as soon as they have been merged.
+     *
+     * @throws UncheckedIOException if a run file cannot be written or read
+     */
+    @Override
+    public Map<String, List<String>> result() {
+        GroupBuilder groups = new GroupBuilder();
+        try {
+            if (runs.isEmpty()) {
+                // everything fitted in the budget, no disk access
+                reduceBuffer(groups);
+            } else {
+                if (buffered > 0) spillBuffer();
+                while (runs.size() > fanIn) {
+                    List<Path> batch = new ArrayList<>(runs.subList(0, fanIn));
+                    runs.subList(0, fanIn).clear();
+                    Path merged = newRun();
+                    runs.add(merged);
+                    try (RunWriter out = new RunWriter(merged)) {
+                        merge(batch, out);
+                    }
+                    spilledBytes += Files.size(merged);
+                    mergePasses++;
+                }
+                List<Path> last = new ArrayList<>(runs);
+                runs.clear();
+                merge(last, groups);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Spilled aggregation failed: " + ex.getMessage(), ex);
+        }
+        // the buffers are not needed any more, leave the heap to the outputs
+        buffered = 0;
+        seq = new long[0];
+        rice = new long[0];
+        tid = new long[0];
+        ts = new long[0];
+        value = new int[0];
+        chiave = new byte[0];
+        Map<String, List<String>> result = groups.result();
+        riceIdCount = result.size();
+        return result;
+    }
+
+    /** Delete the run files left by an aggregation that did not get to {@link #result()}. */
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) Files.deleteIfExists(run);
+        runs.clear();
+        if (spillDir != null) Files.deleteIfExists(spillDir);
+        spillDir = null;
+    }
+
+    private void spillBuffer() {
+        try {
+            Path run = newRun();
+            runs.add(run);
+            try (RunWriter out = new RunWriter(run)) {
+                reduceBuffer(out);
+            }
+            spilledBytes += Files.size(run);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot spill the aggregation to " + spillParent + ": " + ex.getMessage(), ex);
+        }
+        buffered = 0;
+    }
+
+    private Path newRun() throws IOException {
+        if (spillDir == null) {
+            Path parent = spillParent != null ? spillParent : Path.of(System.getProperty("java.io.tmpdir"));
+            Files.createDirectories(parent);
+            spillDir = Files.createTempDirectory(parent, "aggregation-");
+        }
+        return spillDir.resolve("run-" + (++runsWritten) + ".bin");
+    }
+
+    /** Sort the buffered records by riceId/tid and pass on one reduced pair per riceId/tid. */
+    private void reduceBuffer(PairSink sink) throws IOException {
+        int[] order = new int[buffered];
+        for (int i = 0; i < buffered; i++) order[i] = i;
+        sort(order, new int[buffered], 0, buffered);
+        Pair pair = new Pair();
+        for (int k = 0; k < buffered; k++) {
+            int i = order[k];
+            if (k > 0 && (rice[i] != pair.rice || tid[i] != pair.tid)) {
+                sink.pair(pair);
+                pair.clear();
+            }
+            pair.rice = rice[i];
+            pair.tid = tid[i];
+            pair.fold(seq[i], chiave[i], value[i], ts[i]);
+        }
+        if (buffered > 0) sink.pair(pair);
+    }
+
+    /** Merge sort of the buffer positions by riceId, then tid. */
+    private void sort(int[] a, int[] tmp, int from, int to) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(a, tmp, from, mid);
+        sort(a, tmp, mid, to);
+        if (compare(a[mid - 1], a[mid]) <= 0) return;
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compare(tmp[i], tmp[j]) <= 0)) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        int c = Long.compare(rice[i], rice[j]);
+        return c != 0 ? c : Long.compare(tid[i], tid[j]);
+    }
+
+    /** k-way merge of sorted runs, pairs of the same riceId/tid from different runs are combined. */
+    private static void merge(List<Path> inputs, PairSink sink) throws IOException {
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(inputs.size(), (a, b) -> compare(a.pair, b.pair));
+        List<RunReader> readers = new ArrayList<>(inputs.size());
+        try {
+            for (Path input : inputs) {
+                RunReader reader = new RunReader(input);
+                readers.add(reader);
+                if (reader.next()) heap.add(reader);
+            }
+            Pair current = new Pair();
+            boolean any = false;
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                if (any && (reader.pair.rice != current.rice || reader.pair.tid != current.tid)) {
+                    sink.pair(current);
+                    current.clear();
+                }
+                current.combine(reader.pair);
+                any = true;
+                if (reader.next()) heap.add(reader);
+            }
+            if (any) sink.pair(current);
+        } finally {
+            for (RunReader reader : readers) reader.close();
+            for (Path input : inputs) Files.deleteIfExists(input);
+        }
+    }
+
+    private static int compare(Pair a, Pair b) {
+        int c = Long.compare(a.rice, b.rice);
+        return c != 0 ? c : Long.compare(a.tid, b.tid);
+    }
+
+    /** One riceId/tid reduced to its first input position and its latest osType/osVersion. */
+    private static final class Pair {
+        long rice;
+        long tid;
+        long firstSeq;
+        int osType;
+        long osTypeTs;
+        long osTypeSeq;
+        int osVersion;
+        long osVersionTs;
+        long osVersionSeq;
+
+        Pair() {
+            clear();
+        }
+
+        void clear() {
+            firstSeq = Long.MAX_VALUE;
+            osType = NO_VALUE;
+            osTypeTs = NO_TIMESTAMP;
+            osVersion = NO_VALUE;
+            osVersionTs = NO_TIMESTAMP;
+        }
+
+        /** Fold one record of this riceId/tid, with the replacement rule of {@link TerminalAggregator}. */
+        void fold(long seq, byte chiave, int value, long ts) {
+            if (seq < firstSeq) firstSeq = seq;
+            if (chiave == OS_TYPE && isNewer(ts, seq, osType, osTypeTs, osTypeSeq)) {
+                osType = value;
+                osTypeTs = ts;
+                osTypeSeq = seq;
+            } else if (chiave == OS_VERSION && isNewer(ts, seq, osVersion, osVersionTs, osVersionSeq)) {
+                osVersion = value;
+                osVersionTs = ts;
+                osVersionSeq = seq;
+            }
+        }
+
+        /** Fold another reduction of the same riceId/tid. */
+        void combine(Pair other) {
+            rice = other.rice;
+            tid = other.tid;
+            fold(other.firstSeq, OTHER, NO_VALUE, NO_TIMESTAMP);
+            if (other.osType != NO_VALUE) fold(other.osTypeSeq, OS_TYPE, other.osType, other.osTypeTs);
+            if (other.osVersion != NO_VALUE) fold(other.osVersionSeq, OS_VERSION, other.osVersion, other.osVersionTs);
+        }
+
+        private static boolean isNewer(long ts, long seq, int existingValue, long existingTs, long existingSeq) {
+            if (existingValue == NO_VALUE) return true;
+            return ts > existingTs || (ts == existingTs && seq < existingSeq);
+        }
+    }
+
+    /** Receiver of reduced pairs in riceId/tid order. */
+    private interface PairSink {
+        void pair(Pair pair) throws IOException;
+    }
+
+    /**
+     * Run file: one entry per riceId/tid in sorted order. riceIds and tids are written as unsigned varint
+     * deltas from the previous entry (tids from the previous tid of the same riceId), then a flag byte for the
+     * values present, the first position, and code, zigzag timestamp and position of each value.
+     */
+    private static final class RunWriter implements PairSink, Closeable {
+        private final DataOutputStream out;
+        private long rice = Long.MIN_VALUE;
+        private long tid = Long.MIN_VALUE;
+
+        RunWriter(Path file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER));
+        }
+
+        @Override
+        public void pair(Pair p) throws IOException {
+            if (p.rice != rice) tid = Long.MIN_VALUE;
+            // sorted keys: the difference is never negative, read as unsigned it also covers the whole long range
+            writeVarLong(p.rice - rice);
+            writeVarLong(p.tid - tid);
+            rice = p.rice;
+            tid = p.tid;
+            out.writeByte((p.osType != NO_VALUE ? OS_TYPE : 0) | (p.osVersion != NO_VALUE ? OS_VERSION : 0));
+            writeVarLong(p.firstSeq);
+            if (p.osType != NO_VALUE) writeValue(p.osType, p.osTypeTs, p.osTypeSeq);
+            if (p.osVersion != NO_VALUE) writeValue(p.osVersion, p.osVersionTs, p.osVersionSeq);
+        }
+
+        private void writeValue(int code, long ts, long seq) throws IOException {
+            writeVarLong(code);
+            writeVarLong((ts << 1) ^ (ts >> 63));
+            writeVarLong(seq);
+        }
+
+        private void writeVarLong(long v) throws IOException {
+            while ((v & ~0x7FL) != 0) {
+                out.writeByte((int) (v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Sequential reader of a run file written by {@link RunWriter}. */
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        final Pair pair = new Pair();
+
+        RunReader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), IO_BUFFER));
+            pair.rice = Long.MIN_VALUE;
+            pair.tid = Long.MIN_VALUE;
+        }
+
+        /** Read the next entry into {@link #pair}, false at the end of the run. */
+        boolean next() throws IOException {
+            int first = in.read();
+            if (first < 0) return false;
+            long riceDelta = readVarLong(first);
+            long tidDelta = readVarLong(in.readUnsignedByte());
+            if (riceDelta != 0) pair.tid = Long.MIN_VALUE;
+            pair.rice += riceDelta;
+            pair.tid += tidDelta;
+            int flags = in.readUnsignedByte();
+            pair.firstSeq = readVarLong(in.readUnsignedByte());
+            pair.osType = NO_VALUE;
+            pair.osVersion = NO_VALUE;
+            if ((flags & OS_TYPE) != 0) {
+                pair.osType = (int) readVarLong(in.readUnsignedByte());
+                pair.osTypeTs = readTimestamp();
+                pair.osTypeSeq = readVarLong(in.readUnsignedByte());
+            }
+            if ((flags & OS_VERSION) != 0) {
+                pair.osVersion = (int) readVarLong(in.readUnsignedByte());
+                pair.osVersionTs = readTimestamp();
+                pair.osVersionSeq = readVarLong(in.readUnsignedByte());
+            }
+            return true;
+        }
+
+        private long readTimestamp() throws IOException {
+            long z = readVarLong(in.readUnsignedByte());
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        private long readVarLong(int b) throws IOException {
+            long v = b & 0x7F;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                b = in.readUnsignedByte();
+                v |= (long) (b & 0x7F) << shift;
+            }
+            return v;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Final merge: the pairs of each riceId are replayed into a reused {@link TerminalAggregator}, which gives the
+     * terminal values and the first position of the riceId; riceIds are put back in input order at the end.
+     */
+    private final class GroupBuilder implements PairSink {
+        private final TerminalAggregator group = new TerminalAggregator(ids);
+        private long currentRice;
+        private boolean open;
+        private long[] firstSeq = new long[1024];
+        private String[] riceIds = new String[1024];
+        private List<List<String>> terminals = new ArrayList<>();
+
+        @Override
+        public void pair(Pair p) {
+            if (open && p.rice != currentRice) flushGroup();
+            currentRice = p.rice;
+            open = true;
+            group.accept(p.firstSeq, p.rice, p.tid, null, null, NO_TIMESTAMP);
+            if (p.osType != NO_VALUE) group.accept(p.osTypeSeq, p.rice, p.tid, Chiave.OS_TYPE, values.get(p.osType), p.osTypeTs);
+            if (p.osVersion != NO_VALUE) group.accept(p.osVersionSeq, p.rice, p.tid, Chiave.OS_VERSION, values.get(p.osVersion), p.osVersionTs);
+        }
+
+        private void flushGroup() {
+            int g = terminals.size();
+            if (g == firstSeq.length) {
+                firstSeq = Arrays.copyOf(firstSeq, g * 2);
+                riceIds = Arrays.copyOf(riceIds, g * 2);
+            }
+            firstSeq[g] = group.groupFirstSeq(0);
+            riceIds[g] = ids.decode(group.groupRice(0));
+            terminals.add(group.terminals(0));
+            group.clear();
+            open = false;
+        }
+
+        Map<String, List<String>> result() {
+            if (open) flushGroup();
+            int n = terminals.size();
+            Integer[] order = new Integer[n];
+            for (int g = 0; g < n; g++) order[g] = g;
+            Arrays.sort(order, Comparator.comparingLong(g -> firstSeq[g]));
+            Map<String, List<String>> result = new LinkedHashMap<>(Math.max(16, n * 2));
+            for (int g : order) result.put(riceIds[g], terminals.get(g));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.estrazione_win10_sales.service;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local cache of {@link PreparsedTemplate}s, one file per template location and content, named after the
+ * SHA-256 of both.
+ * <p>
+ * The template bytes are always read, to hash them, but only a new or changed template is unzipped and
+ * parsed with POI; a known one is memory-mapped from its file. A file that cannot be used is replaced by
+ * parsing the template again, and a cache that cannot be written only costs the parse on the next run.
+ * When a template changes, the files of its older contents are deleted; templates at other locations
+ * (batch jobs sharing the directory) keep theirs.
+ * <p>
+ * The last template loaded from each location is also kept in memory, with or without a directory, so the
+ * later runs of a long-lived service (daemon mode, batch jobs) reuse it as long as its content is the same.
+ */
+public class TemplateCache {
+
+    private static final String EXTENSION = ".tpl";
+
+    private final Path directory;
+    // last template of each location, by source key
+    private final Map<String, Recent> recent = new ConcurrentHashMap<>();
+
+    private record Recent(String key, PreparsedTemplate template) {
+    }
+
+    /**
+     * Outcome of {@link #load(String, InputStream)}.
+     *
+     * @param template the first sheet of the template
+     * @param cacheHit whether it came from memory or from the cache directory rather than from parsing the workbook
+     */
+    public record Loaded(PreparsedTemplate template, boolean cacheHit) {
+    }
+
+    /** @param directory cache directory, null to parse every template */
+    public TemplateCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Read a template workbook, from its cached form when the same content was parsed before.
+     *
+     * @param source   where the template comes from (path or classpath location), groups its versions
+     * @param template template content
+     */
+    public Loaded load(String source, InputStream template) throws IOException {
+        byte[] content = template.readAllBytes();
+        String sourceKey = sourceKey(source);
+        String key = key(content);
+        Recent last = recent.get(sourceKey);
+        if (last != null && last.key().equals(key)) return new Loaded(last.template(), true);
+
+        String prefix = sourceKey + "-";
+        Path file = directory != null ? directory.resolve(prefix + key + EXTENSION) : null;
+        if (file != null && Files.exists(file)) {
+            try {
+                PreparsedTemplate mapped = PreparsedTemplate.map(file);
+                recent.put(sourceKey, new Recent(key, mapped));
+                return new Loaded(mapped, true);
+            } catch (IOException ex) {
+                System.out.println("Cached template " + file + " not usable, parsing the template: " + ex.getMessage());
+            }
+        }
+        // a load given up by its caller stops here, before the costly part
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Template load interrupted");
+        PreparsedTemplate parsed;
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(content))) {
+            parsed = PreparsedTemplate.of(workbook.getSheetAt(0));
+        }
+        if (file != null) {
+            try {
+                parsed.save(file);
+                deleteOlderVersions(prefix, file);
+            } catch (IOException ex) {
+                System.err.println("Template cache not written: " + ex.getMessage());
+            }
+        }
+        recent.put(sourceKey, new Recent(key, parsed));
+        return new Loaded(parsed, false);
+    }
+
+    /** Delete the files of the same template location with another content than {@code current}. */
+    private void deleteOlderVersions(String prefix, Path current) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + EXTENSION)) {
+            for (Path f : files) {
+                if (f.equals(current)) continue;
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException ex) {
+                    // still mapped by a running conversion on Windows: removed by a later run
+                    System.out.println("Old cached template " + f + " not deleted: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /** First 16 hex digits of the SHA-256 of the template location, file paths made absolute. */
+    static String sourceKey(String source) {
+        String location = source;
+        if (source != null && !source.startsWith("classpath:")) {
+            try {
+                location = Path.of(source).toAbsolutePath().normalize().toString();
+            } catch (InvalidPathException ex) {
+                // not a file path (URL or similar): the text itself identifies it
+            }
+        }
+        String text = location != null ? location : "";
+        return key(text.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    }
+
+    /** Cache key of a template content: hex SHA-256 of its bytes. */
+    static String key(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException ex) {
+            // every JDK ships SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.RiceIdJoinIndex;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fill stage: walks the template rows once, projects every row onto the output columns, adds the
+ * terminal values looked up by the riceId of column A and hands the row to every {@link OutputSink}
+ * before building the next one.
+ */
+public final class TemplateFill {
+
+    /**
+     * Outcome of a fill.
+     *
+     * @param filledTerminalCells terminal cells written
+     * @param matchedRows         data rows whose riceId has terminal values
+     * @param unmatchedRows       data rows with a riceId without terminal values
+     */
+    public record Result(int filledTerminalCells, int matchedRows, int unmatchedRows) {
+    }
+
+    private TemplateFill() {
+    }
+
+    /**
+     * @param source     template, left untouched
+     * @param projection compiled template -> output column mapping
+     * @param terminals  join index from template riceId (column A) to its terminal values
+     * @param sinks      destinations of the rows
+     * @return terminal cells written and matched/unmatched rows
+     */
+    public static Result fill(PreparsedTemplate source, ColumnProjection projection, RiceIdJoinIndex<List<String>> terminals,
+                              List<? extends OutputSink> sinks) throws IOException {
+        int filledTerminalCells = 0;
+        int matchedRows = 0;
+        int unmatchedRows = 0;
+        Object[] cells = new Object[projection.headers().size()];
+        PreparsedTemplate.RowCursor srcRows = source.rows();
+        boolean more = srcRows.next();
+        int lastRow = Math.max(source.lastRowNum(), 0);
+        for (int r = 0; r <= lastRow; r++) {
+            Arrays.fill(cells, null);
+            Object riceId = null;
+            if (more && srcRows.rowIndex() == r) {
+                for (int i = 0; i < srcRows.size(); i++) {
+                    int column = srcRows.column(i);
+                    if (column == 0) riceId = srcRows.value(i);
+                    int target = projection.target(column);
+                    if (target < 0) continue;
+                    cells[target] = srcRows.value(i);
+                }
+                more = srcRows.next();
+            }
+            if (r == 0) {
+                for (int i = 0; i < projection.terminalCount(); i++) {
+                    cells[projection.terminalTarget(i)] = ColumnProjection.terminalHeader(i);
+                }
+                for (OutputSink sink : sinks) sink.header(cells);
+                continue;
+            }
+            if (!isBlank(riceId)) {
+                List<String> values = lookup(riceId, terminals);
+                if (values == null) {
+                    unmatchedRows++;
+                } else {
+                    matchedRows++;
+                    // No terminals found for a riceId leaves its terminal columns empty, as required
+                    for (int i = 0; i < values.size() && i < projection.terminalCount(); i++) {
+                        String value = values.get(i);
+                        if (value == null) continue;
+                        cells[projection.terminalTarget(i)] = value;
+                        filledTerminalCells++;
+                    }
+                }
+            }
+            for (OutputSink sink : sinks) sink.row(r, cells);
+        }
+        return new Result(filledTerminalCells, matchedRows, unmatchedRows);
+    }
+
+    private static boolean isBlank(Object riceId) {
+        if (riceId == null) return true;
+        if (riceId instanceof Double) return false;
+        return PreparsedTemplate.text(riceId).trim().isEmpty();
+    }
+
+    /** Join a non-blank column A value with the index; numeric cells skip the conversion to text. */
+    private static <V> V lookup(Object riceId, RiceIdJoinIndex<V> index) {
+        if (riceId instanceof Double d) {
+            return index.get(d);
+        }
+        return index.get(PreparsedTemplate.text(riceId));
+    }
+}
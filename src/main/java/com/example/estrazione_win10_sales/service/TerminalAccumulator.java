@@ -0,0 +1,65 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.util.IdCodec;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation of inventory records into terminal_1..terminal_N values per riceId.
+ * <p>
+ * Every record carries a sequence number, its position in the input. When two records for the same
+ * riceId/tid/chiave have the same timestamp (or none) the one with the lower sequence number wins, so
+ * the result does not depend on the order in which records are handed over: feeding them from several
+ * threads gives the same result as reading the file from top to bottom.
+ */
+public interface TerminalAccumulator {
+
+    /** Timestamp value for a record without (parsable) timestamp. */
+    long NO_TIMESTAMP = CsvRecord.NO_TIMESTAMP;
+
+    /** Codec used for the riceId/tid keys of the primitive accept. */
+    IdCodec ids();
+
+    /**
+     * Fold a record into the aggregation state.
+     * Records without riceId are ignored; records without tid only register the riceId.
+     */
+    default void accept(CsvRecord r, long seq) {
+        if (r == null) return;
+        accept(seq, key(r.getRiceId()), key(r.getTid()), Chiave.of(r.getChiave()), r.getValore(), r.getTimestampMillis());
+    }
+
+    /**
+     * Primitive variant of {@link #accept(CsvRecord, long)} for readers that decode the fields themselves.
+     *
+     * @param seq      position of the record in the input
+     * @param riceKey  riceId encoded with {@link #ids()}, {@link IdCodec#NO_ID} if missing
+     * @param tidKey   tid encoded with {@link #ids()}, {@link IdCodec#NO_ID} if missing
+     * @param chiave   chiave code, null if missing
+     * @param valore   value, null if missing
+     * @param tsMillis epoch millis of the record, {@link #NO_TIMESTAMP} if missing
+     */
+    void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis);
+
+    /** Number of records passed to accept so far. */
+    long recordCount();
+
+    /** Count an input row that could not be decoded and was skipped. */
+    void skipMalformed();
+
+    /** Number of rows counted by {@link #skipMalformed()}. */
+    long malformedCount();
+
+    /** Number of distinct riceIds seen so far. */
+    int riceIdCount();
+
+    /** terminal_1..terminal_N values per riceId, riceIds in order of first appearance. */
+    Map<String, List<String>> result();
+
+    private long key(String id) {
+        return id == null || id.isBlank() ? IdCodec.NO_ID : ids().encode(id);
+    }
+}
@@ -0,0 +1,474 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.example.estrazione_win10_sales.util.LongIntHashMap;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Incremental version of {@link TerminalColumnService#computeTerminalsByRiceId(List)}.
+ * Records are folded one at a time into a per-riceId/per-tid "latest value" state, so the caller
+ * never has to keep the parsed rows around: memory grows with the number of distinct riceId/tid
+ * pairs instead of with the number of CSV lines.
+ * <p>
+ * The state is kept in primitive form: riceIds and tids are long keys (see {@link IdCodec}) held in
+ * open addressing tables, each tid slot stores the latest osType/osVersion as a dictionary code plus
+ * an epoch-millis timestamp, and chiave is reduced to a {@link Chiave} code. No object is allocated
+ * per record once a riceId/tid pair has been seen.
+ * Records may arrive out of order as long as each carries its input position (see {@link TerminalAccumulator}).
+ * Not thread-safe, {@link ConcurrentTerminalAggregator} stripes several instances for concurrent feeding.
+ */
+public class TerminalAggregator implements TerminalAccumulator {
+
+    private static final int NO_VALUE = -1;
+    private static final int NO_SLOT = -1;
+
+    private final IdCodec ids;
+
+    // riceId key -> group ordinal; groups are kept in first-seen order like the groupingBy of the batch version
+    private LongIntHashMap groupByRice = new LongIntHashMap(1024);
+    private long[] groupRice = new long[1024];
+    private int[] groupFirstSlot = new int[1024];
+    private int[] groupLastSlot = new int[1024];
+    private int[] groupSize = new int[1024];
+    private long[] groupFirstSeq = new long[1024];
+    private int groups;
+
+    // one slot per distinct (riceId, tid), chained per group in first-seen order
+    private long[] slotTid = new long[1024];
+    private int[] slotGroup = new int[1024];
+    private int[] slotNext = new int[1024];
+    private int[] osTypeValue = new int[1024];
+    private long[] osTypeTs = new long[1024];
+    private int[] osVersionValue = new int[1024];
+    private long[] osVersionTs = new long[1024];
+    // input position of the first record of the slot and of the records holding the current values
+    private long[] slotFirstSeq = new long[1024];
+    private long[] osTypeSeq = new long[1024];
+    private long[] osVersionSeq = new long[1024];
+    private int slots;
+    // (group, tid) -> slot + 1, open addressing; 0 marks an empty bucket
+    private int[] slotTable = new int[2048];
+
+    // valore dictionary: the same few osType/osVersion strings repeat millions of times
+    private final Map<String, Integer> valueCodes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    private long recordCount;
+    private long malformedCount;
+
+    // incremental mode: records older than the watermark are dropped when the groups and slots held when it
+    // was set (the snapshot state) already have their riceId/tid; the newest timestamp is tracked
+    private long watermark = NO_TIMESTAMP;
+    private int settledGroups;
+    private int settledSlots;
+    private long belowWatermark;
+    private long maxTimestamp = NO_TIMESTAMP;
+
+    public TerminalAggregator() {
+        this(new IdCodec());
+    }
+
+    /** Aggregator sharing the id dictionary of the given codec (needed when keys are encoded by the caller). */
+    public TerminalAggregator(IdCodec ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public IdCodec ids() {
+        return ids;
+    }
+
+    /** Fold the next record of the input, records are numbered in the order they are passed. */
+    public void accept(CsvRecord r) {
+        accept(r, recordCount);
+    }
+
+    /** Primitive variant of {@link #accept(CsvRecord)}, see {@link #accept(long, long, long, Chiave, String, long)}. */
+    public void accept(long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        accept(recordCount, riceKey, tidKey, chiave, valore, tsMillis);
+    }
+
+    @Override
+    public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+        recordCount++;
+        if (tsMillis != NO_TIMESTAMP && tsMillis < watermark && settled(riceKey, tidKey)) {
+            belowWatermark++;
+            return;
+        }
+        if (tsMillis > maxTimestamp) maxTimestamp = tsMillis;
+        if (riceKey == IdCodec.NO_ID) return;
+        int group = groupByRice.get(riceKey);
+        if (group == LongIntHashMap.MISSING) {
+            group = addGroup(riceKey, seq);
+        } else if (seq < groupFirstSeq[group]) {
+            groupFirstSeq[group] = seq;
+        }
+
+        if (tidKey == IdCodec.NO_ID) return;
+        int slot = findSlot(group, tidKey);
+        if (slot == NO_SLOT) {
+            slot = addSlot(group, tidKey, seq);
+        } else if (seq < slotFirstSeq[slot]) {
+            slotFirstSeq[slot] = seq;
+        }
+        if (chiave == null || valore == null) return;
+        // other chiave values never reach the output, no need to keep them
+        if (chiave == Chiave.OS_TYPE) {
+            if (isNewer(tsMillis, seq, osTypeValue[slot], osTypeTs[slot], osTypeSeq[slot])) {
+                osTypeValue[slot] = valueCode(valore);
+                osTypeTs[slot] = tsMillis;
+                osTypeSeq[slot] = seq;
+            }
+        } else if (chiave == Chiave.OS_VERSION) {
+            if (isNewer(tsMillis, seq, osVersionValue[slot], osVersionTs[slot], osVersionSeq[slot])) {
+                osVersionValue[slot] = valueCode(valore);
+                osVersionTs[slot] = tsMillis;
+                osVersionSeq[slot] = seq;
+            }
+        }
+    }
+
+    /** Whether the riceId/tid of a record is part of the state held when the watermark was set. */
+    private boolean settled(long riceKey, long tidKey) {
+        if (riceKey == IdCodec.NO_ID) return true;
+        int group = groupByRice.get(riceKey);
+        if (group == LongIntHashMap.MISSING || group >= settledGroups) return false;
+        if (tidKey == IdCodec.NO_ID) return true;
+        int slot = findSlot(group, tidKey);
+        return slot != NO_SLOT && slot < settledSlots;
+    }
+
+    /**
+     * decide replacement: prefer non-null newer timestamp; if both null (or equal) keep the first seen.
+     * NO_TIMESTAMP is Long.MIN_VALUE, so any timestamp is newer than a missing one.
+     */
+    private static boolean isNewer(long ts, long seq, int existingValue, long existingTs, long existingSeq) {
+        if (existingValue == NO_VALUE) return true;
+        return ts > existingTs || (ts == existingTs && seq < existingSeq);
+    }
+
+    private int valueCode(String valore) {
+        Integer code = valueCodes.get(valore);
+        if (code == null) {
+            code = values.size();
+            values.add(valore);
+            valueCodes.put(valore, code);
+        }
+        return code;
+    }
+
+    private int addGroup(long riceKey, long seq) {
+        if (groups == groupRice.length) {
+            int n = groups * 2;
+            groupRice = Arrays.copyOf(groupRice, n);
+            groupFirstSlot = Arrays.copyOf(groupFirstSlot, n);
+            groupLastSlot = Arrays.copyOf(groupLastSlot, n);
+            groupSize = Arrays.copyOf(groupSize, n);
+            groupFirstSeq = Arrays.copyOf(groupFirstSeq, n);
+        }
+        int g = groups++;
+        groupRice[g] = riceKey;
+        groupFirstSlot[g] = NO_SLOT;
+        groupLastSlot[g] = NO_SLOT;
+        groupSize[g] = 0;
+        groupFirstSeq[g] = seq;
+        groupByRice.put(riceKey, g);
+        return g;
+    }
+
+    private static int mix(int group, long tid) {
+        long h = (tid + group * 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findSlot(int group, long tid) {
+        int mask = slotTable.length - 1;
+        for (int i = mix(group, tid) & mask; slotTable[i] != 0; i = (i + 1) & mask) {
+            int s = slotTable[i] - 1;
+            if (slotTid[s] == tid && slotGroup[s] == group) return s;
+        }
+        return NO_SLOT;
+    }
+
+    private void index(int slot) {
+        int mask = slotTable.length - 1;
+        int i = mix(slotGroup[slot], slotTid[slot]) & mask;
+        while (slotTable[i] != 0) i = (i + 1) & mask;
+        slotTable[i] = slot + 1;
+    }
+
+    private int addSlot(int group, long tid, long seq) {
+        if (slots == slotTid.length) {
+            int n = slots * 2;
+            slotTid = Arrays.copyOf(slotTid, n);
+            slotGroup = Arrays.copyOf(slotGroup, n);
+            slotNext = Arrays.copyOf(slotNext, n);
+            osTypeValue = Arrays.copyOf(osTypeValue, n);
+            osTypeTs = Arrays.copyOf(osTypeTs, n);
+            osVersionValue = Arrays.copyOf(osVersionValue, n);
+            osVersionTs = Arrays.copyOf(osVersionTs, n);
+            slotFirstSeq = Arrays.copyOf(slotFirstSeq, n);
+            osTypeSeq = Arrays.copyOf(osTypeSeq, n);
+            osVersionSeq = Arrays.copyOf(osVersionSeq, n);
+        }
+        int s = slots++;
+        slotTid[s] = tid;
+        slotGroup[s] = group;
+        slotNext[s] = NO_SLOT;
+        osTypeValue[s] = NO_VALUE;
+        osTypeTs[s] = NO_TIMESTAMP;
+        osVersionValue[s] = NO_VALUE;
+        osVersionTs[s] = NO_TIMESTAMP;
+        slotFirstSeq[s] = seq;
+        if (groupLastSlot[group] == NO_SLOT) {
+            groupFirstSlot[group] = s;
+        } else {
+            slotNext[groupLastSlot[group]] = s;
+        }
+        groupLastSlot[group] = s;
+        groupSize[group]++;
+
+        // keep the (group, tid) table at most half full
+        if (slots * 2 > slotTable.length) {
+            slotTable = new int[slotTable.length * 2];
+            for (int i = 0; i < slots; i++) index(i);
+        } else {
+            index(s);
+        }
+        return s;
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void skipMalformed() {
+        malformedCount++;
+    }
+
+    @Override
+    public long malformedCount() {
+        return malformedCount;
+    }
+
+    @Override
+    public int riceIdCount() {
+        return groups;
+    }
+
+    /**
+     * Ignore from now on the records with a timestamp older than {@code watermark} whose riceId/tid is already
+     * held, typically the state loaded from a snapshot: the run that wrote it folded them already. Older records
+     * of any other riceId/tid (a terminal newly assigned to a riceId, a riceId added to the template) are folded
+     * as in a full run; records without timestamp are always accepted.
+     */
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+        settledGroups = groups;
+        settledSlots = slots;
+    }
+
+    /** Records dropped because older than the watermark, see {@link #setWatermark(long)}. */
+    public long belowWatermarkCount() {
+        return belowWatermark;
+    }
+
+    /** Newest timestamp accepted so far, {@link #NO_TIMESTAMP} if none. */
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /** Receives the aggregation state, see {@link #forEachTerminal(TerminalVisitor)}. */
+    interface TerminalVisitor {
+        /** Start of a riceId, followed by {@code tids} calls to {@link #tid}. */
+        void riceId(String riceId, int tids) throws IOException;
+
+        /** Latest osType/osVersion of a tid of the current riceId, null values if none was seen. */
+        void tid(String tid, String osType, long osTypeTs, String osVersion, long osVersionTs) throws IOException;
+    }
+
+    /**
+     * Visit the latest osType/osVersion of every riceId/tid: riceIds in order of first appearance, tids of a
+     * riceId in order of first appearance. Replaying the visited values with increasing input positions
+     * rebuilds the same state.
+     */
+    void forEachTerminal(TerminalVisitor visitor) throws IOException {
+        for (int g : groupsInInputOrder()) {
+            visitor.riceId(ids.decode(groupRice[g]), groupSize[g]);
+            int[] ordered = new int[groupSize[g]];
+            int k = 0;
+            for (int s = groupFirstSlot[g]; s != NO_SLOT; s = slotNext[s]) ordered[k++] = s;
+            sortByFirstSeq(ordered);
+            for (int s : ordered) {
+                visitor.tid(ids.decode(slotTid[s]),
+                        osTypeValue[s] == NO_VALUE ? null : values.get(osTypeValue[s]), osTypeTs[s],
+                        osVersionValue[s] == NO_VALUE ? null : values.get(osVersionValue[s]), osVersionTs[s]);
+            }
+        }
+    }
+
+    /**
+     * Build the terminal_1..terminal_N values for every riceId seen so far.
+     * Tids that are canonical numbers (see {@link IdCodec}) come first, by value, then the other tids in lexical
+     * order; the value of each terminal follows the rules of DEVELOPMENT_PLAN.md.
+     * <p>
+     * This departs from the batch version for riceIds mixing both kinds: it compared with Long.parseLong and
+     * fell back to text when either tid did not parse, an order that is not transitive, so tids like 007, +7 or
+     * abc ended up wherever the sort met them in HashMap iteration order. Here they always come after the
+     * canonical numbers, and the order does not depend on the order of the records.
+     */
+    @Override
+    public Map<String, List<String>> result() {
+        List<List<String>> terminals = new ArrayList<>(groups);
+        for (int g = 0; g < groups; g++) terminals.add(terminals(g));
+
+        Map<String, List<String>> result = new LinkedHashMap<>(Math.max(16, groups * 2));
+        for (int g : groupsInInputOrder()) {
+            result.put(ids.decode(groupRice[g]), terminals.get(g));
+        }
+        return result;
+    }
+
+    private int[] groupsInInputOrder() {
+        int[] order = new int[groups];
+        boolean sorted = true;
+        for (int g = 0; g < groups; g++) {
+            order[g] = g;
+            sorted &= g == 0 || groupFirstSeq[g - 1] < groupFirstSeq[g];
+        }
+        if (sorted) return order;
+        // groups are created in input order unless records were fed out of order
+        Integer[] boxed = new Integer[groups];
+        for (int g = 0; g < groups; g++) boxed[g] = g;
+        Arrays.sort(boxed, Comparator.comparingLong(g -> groupFirstSeq[g]));
+        for (int g = 0; g < groups; g++) order[g] = boxed[g];
+        return order;
+    }
+
+    /**
+     * Forget every riceId/tid and the counters, so that the same instance can aggregate the next riceId of a
+     * feed sorted by riceId. The group and slot arrays and the value dictionary are kept; only the riceId index
+     * is allocated again, sized on the riceIds just cleared, so the cost follows what was used and not the
+     * largest tables reached.
+     */
+    void clear() {
+        // cheaper than sweeping the old index, whose initial capacity alone is a few thousand entries
+        groupByRice = new LongIntHashMap(groups);
+        groups = 0;
+        if (slots * 4 < slotTable.length) {
+            // locate the buckets of the slots first, zeroing them one at a time would break the probe chains
+            int mask = slotTable.length - 1;
+            for (int s = 0; s < slots; s++) {
+                int i = mix(slotGroup[s], slotTid[s]) & mask;
+                while (slotTable[i] != s + 1) i = (i + 1) & mask;
+                slotNext[s] = i;
+            }
+            for (int s = 0; s < slots; s++) slotTable[slotNext[s]] = 0;
+        } else {
+            Arrays.fill(slotTable, 0);
+        }
+        slots = 0;
+        settledGroups = 0;
+        settledSlots = 0;
+        recordCount = 0;
+        malformedCount = 0;
+        belowWatermark = 0;
+        maxTimestamp = NO_TIMESTAMP;
+    }
+
+    /** Number of riceId groups, group ordinals go from 0 to groups() - 1. */
+    int groups() {
+        return groups;
+    }
+
+    /** Input position of the first record of the group. */
+    long groupFirstSeq(int group) {
+        return groupFirstSeq[group];
+    }
+
+    /** riceId key of the group. */
+    long groupRice(int group) {
+        return groupRice[group];
+    }
+
+    /** terminal_1..terminal_N values of the group. */
+    List<String> terminals(int group) {
+        int n = groupSize[group];
+        int[] ordered = new int[n];
+        boolean numeric = true;
+        int k = 0;
+        for (int s = groupFirstSlot[group]; s != NO_SLOT; s = slotNext[s]) {
+            ordered[k++] = s;
+            numeric &= IdCodec.isNumeric(slotTid[s]);
+        }
+        if (numeric) {
+            // tids parsed once: sort the primitive keys, then map them back to their slots
+            long[] tids = new long[n];
+            for (int i = 0; i < n; i++) tids[i] = slotTid[ordered[i]];
+            Arrays.sort(tids);
+            for (int i = 0; i < n; i++) ordered[i] = findSlot(group, tids[i]);
+        } else {
+            // at least one tid is not a plain number: numbers by value first, then the other tids by text
+            int[] slotsOf = ordered.clone();
+            long[] keys = new long[n];
+            String[] text = new String[n];
+            Integer[] boxed = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = slotTid[slotsOf[i]];
+                if (!IdCodec.isNumeric(keys[i])) text[i] = ids.decode(keys[i]);
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, (x, y) -> {
+                boolean nx = text[x] == null, ny = text[y] == null;
+                if (nx && ny) return Long.compare(keys[x], keys[y]);
+                if (nx != ny) return nx ? -1 : 1;
+                return text[x].compareTo(text[y]);
+            });
+            for (int i = 0; i < n; i++) ordered[i] = slotsOf[boxed[i]];
+        }
+
+        List<String> terminals = new ArrayList<>(n);
+        for (int s : ordered) {
+            String osType = osTypeValue[s] == NO_VALUE ? null : values.get(osTypeValue[s]);
+            String osVersion = osVersionValue[s] == NO_VALUE ? null : values.get(osVersionValue[s]);
+            terminals.add(terminalValue(ids.decode(slotTid[s]), osType, osVersion));
+        }
+        return terminals;
+    }
+
+    /** insertion sort of a group's slots by first appearance, already sorted unless fed out of order */
+    private void sortByFirstSeq(int[] slots) {
+        for (int i = 1; i < slots.length; i++) {
+            int s = slots[i];
+            int j = i - 1;
+            while (j >= 0 && slotFirstSeq[slots[j]] > slotFirstSeq[s]) {
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            slots[j + 1] = s;
+        }
+    }
+
+    /**
+     * Value of a terminal_N cell for a tid given its latest osType/osVersion.
+     * Returns null for non-WINDOWS terminals so the Excel writer will leave the cell empty.
+     */
+    static String terminalValue(String tid, String osType, String osVersion) {
+        if ((osType == null || osType.isBlank()) && (osVersion == null || osVersion.isBlank())) {
+            // tid present but no metadata -> mark as N.D.
+            return "N.D.";
+        } else if (osType != null && osType.equalsIgnoreCase("WINDOWS")) {
+            if (osVersion != null && osVersion.startsWith("10.0.2")) {
+                return tid + "_WIN11";
+            }
+            return tid + "_WIN10";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.util.IdCodec;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local snapshot of the aggregated per-riceId/per-tid state, for the incremental mode.
+ * <p>
+ * The file holds the latest osType/osVersion (value and timestamp) of every riceId/tid in order of first
+ * appearance, plus the timestamp watermark of the run that wrote it. Values are written once and then
+ * referenced by code, so the file stays small however many terminals share them.
+ * Loading replays the snapshot into a new {@link TerminalAggregator} with input positions before any CSV
+ * record: on equal timestamps the snapshot value wins, like an earlier line of the extract.
+ */
+public final class TerminalSnapshot {
+
+    private static final int MAGIC = 0x45545331; // "ETS1"
+    private static final int NO_VALUE = -1;
+
+    /**
+     * Outcome of {@link #load(Path)}.
+     *
+     * @param aggregator aggregator holding the snapshot state, ready for the CSV records
+     * @param watermark  newest timestamp of the run that wrote the snapshot, {@link TerminalAccumulator#NO_TIMESTAMP} if none
+     * @param records    records replayed into the aggregator (counted in its {@link TerminalAggregator#recordCount()})
+     */
+    public record Loaded(TerminalAggregator aggregator, long watermark, long records) {
+    }
+
+    private TerminalSnapshot() {
+    }
+
+    /**
+     * Replay a snapshot into a new aggregator.
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static Loaded load(Path file) throws IOException {
+        TerminalAggregator aggregator = new TerminalAggregator();
+        IdCodec ids = aggregator.ids();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a terminal snapshot: " + file);
+            long watermark = in.readLong();
+            int riceIds = in.readInt();
+            List<String> values = new ArrayList<>();
+            // replayed records come before the CSV records, whose positions start at 0
+            long seq = Long.MIN_VALUE + 1;
+            long first = seq;
+            for (int g = 0; g < riceIds; g++) {
+                long riceKey = ids.encode(in.readUTF());
+                int tids = in.readInt();
+                if (tids == 0) {
+                    aggregator.accept(seq++, riceKey, IdCodec.NO_ID, null, null, TerminalAccumulator.NO_TIMESTAMP);
+                    continue;
+                }
+                for (int t = 0; t < tids; t++) {
+                    long tidKey = ids.encode(in.readUTF());
+                    aggregator.accept(seq++, riceKey, tidKey, null, null, TerminalAccumulator.NO_TIMESTAMP);
+                    String osType = readValue(in, values);
+                    long osTypeTs = in.readLong();
+                    String osVersion = readValue(in, values);
+                    long osVersionTs = in.readLong();
+                    if (osType != null) aggregator.accept(seq++, riceKey, tidKey, Chiave.OS_TYPE, osType, osTypeTs);
+                    if (osVersion != null) aggregator.accept(seq++, riceKey, tidKey, Chiave.OS_VERSION, osVersion, osVersionTs);
+                }
+            }
+            return new Loaded(aggregator, watermark, seq - first);
+        } catch (EOFException ex) {
+            throw new IOException("Truncated terminal snapshot: " + file, ex);
+        }
+    }
+
+    /**
+     * Write the aggregator state and the watermark, replacing the file atomically.
+     */
+    public static void save(Path file, TerminalAggregator aggregator, long watermark) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "terminal-snapshot-", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(watermark);
+                out.writeInt(aggregator.riceIdCount());
+                Map<String, Integer> codes = new HashMap<>();
+                aggregator.forEachTerminal(new TerminalAggregator.TerminalVisitor() {
+                    @Override
+                    public void riceId(String riceId, int tids) throws IOException {
+                        out.writeUTF(riceId);
+                        out.writeInt(tids);
+                    }
+
+                    @Override
+                    public void tid(String tid, String osType, long osTypeTs, String osVersion, long osVersionTs) throws IOException {
+                        out.writeUTF(tid);
+                        writeValue(out, osType, codes);
+                        out.writeLong(osTypeTs);
+                        writeValue(out, osVersion, codes);
+                        out.writeLong(osVersionTs);
+                    }
+                });
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Value code; a code equal to the number of values seen so far is followed by the new value. */
+    private static void writeValue(DataOutputStream out, String value, Map<String, Integer> codes) throws IOException {
+        if (value == null) {
+            out.writeInt(NO_VALUE);
+            return;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            out.writeInt(code);
+            return;
+        }
+        out.writeInt(codes.size());
+        out.writeUTF(value);
+        codes.put(value, codes.size());
+    }
+
+    private static String readValue(DataInputStream in, List<String> values) throws IOException {
+        int code = in.readInt();
+        if (code == NO_VALUE) return null;
+        if (code == values.size()) values.add(in.readUTF());
+        if (code < 0 || code >= values.size()) throw new IOException("Corrupted terminal snapshot: value code " + code);
+        return values.get(code);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.ExcelUtils;
+import org.apache.poi.ss.usermodel.FormulaError;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base of the line-oriented sinks: every row is formatted into {@link #line} and encoded as UTF-8 into a
+ * direct buffer, which goes to the channel whenever it fills up. Rows therefore reach the file while the
+ * fill is still running, and memory use is one line plus the buffer whatever the size of the output.
+ */
+abstract class TextOutputSink implements OutputSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Line being formatted, without the line separator. */
+    protected final StringBuilder line = new StringBuilder(256);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    protected TextOutputSink(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /** Encode {@link #line} plus a line feed into the buffer and clear it. */
+    protected void writeLine() throws IOException {
+        line.append('\n');
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+            flushBuffer();
+        }
+        encoder.reset();
+        line.setLength(0);
+    }
+
+    /** Whether a row has no cell at all, e.g. an empty template row. */
+    protected static boolean isEmpty(Object[] cells) {
+        for (Object cell : cells) {
+            if (cell != null) return false;
+        }
+        return true;
+    }
+
+    /** Text of a cell: numbers as {@link ExcelUtils#formatNumeric}, errors as #N/A, #REF!, ...; null for no cell. */
+    protected static String text(Object cell) {
+        if (cell == null) return null;
+        if (cell instanceof String s) return s;
+        if (cell instanceof Double d) return ExcelUtils.formatNumeric(d);
+        if (cell instanceof Boolean b) return b ? "TRUE" : "FALSE";
+        if (cell instanceof ErrorValue e) return FormulaError.forInt(e.code()).getString();
+        if (cell instanceof Blank) return "";
+        return cell.toString();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() {
+        // the channel belongs to the caller, the buffer to the garbage collector
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
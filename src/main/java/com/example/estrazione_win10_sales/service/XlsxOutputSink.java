@@ -0,0 +1,87 @@
+package com.example.estrazione_win10_sales.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming xlsx output, built on POI SXSSF.
+ * Rows are added in a single forward pass and only the last {@code windowSize} rows are kept in
+ * memory, older rows are flushed to a (compressed) temp file. Heap use while writing therefore does
+ * not depend on how many rows the template has. The workbook itself is written by {@link #finish()}.
+ */
+public class XlsxOutputSink implements OutputSink {
+
+    /** Default number of rows SXSSF keeps in memory before flushing to disk. */
+    public static final int DEFAULT_WINDOW_SIZE = 100;
+
+    private final SXSSFWorkbook workbook;
+    private final Sheet sheet;
+    private final WritableByteChannel channel;
+
+    /**
+     * @param sheetName  name of the output sheet, the one of the template
+     * @param windowSize rows kept in memory, {@link #DEFAULT_WINDOW_SIZE} if not positive
+     * @param channel    destination of the workbook
+     */
+    public XlsxOutputSink(String sheetName, int windowSize, WritableByteChannel channel) {
+        this.workbook = new SXSSFWorkbook(windowSize > 0 ? windowSize : DEFAULT_WINDOW_SIZE);
+        this.workbook.setCompressTempFiles(true);
+        this.sheet = workbook.createSheet(sheetName);
+        this.channel = channel;
+    }
+
+    @Override
+    public void header(Object[] cells) {
+        row(0, cells);
+    }
+
+    @Override
+    public void row(int rowIndex, Object[] cells) {
+        // every template row gets its output row, empty ones included, so row numbers match the template
+        Row row = sheet.createRow(rowIndex);
+        for (int c = 0; c < cells.length; c++) {
+            if (cells[c] != null) setCellValue(row.createCell(c), cells[c]);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // not closed: closing the stream would close the caller's channel
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        workbook.write(out);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // remove the temp files backing the flushed rows
+        workbook.dispose();
+        workbook.close();
+    }
+
+    private static void setCellValue(Cell cell, Object value) {
+        if (value instanceof String s) {
+            cell.setCellValue(s);
+        } else if (value instanceof Double d) {
+            cell.setCellValue(d);
+        } else if (value instanceof Boolean b) {
+            cell.setCellValue(b);
+        } else if (value instanceof Formula f) {
+            cell.setCellFormula(f.expression());
+        } else if (value instanceof ErrorValue e) {
+            cell.setCellErrorValue(e.code());
+        } else if (value instanceof Blank) {
+            cell.setBlank();
+        } else {
+            throw new IllegalArgumentException("Unsupported cell value: " + value.getClass().getName());
+        }
+    }
+}
@@ -1,19 +1,12 @@
 package com.example.estrazione_win10_sales.tools;
 
-import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.service.InventoryColumnStore;
 import com.example.estrazione_win10_sales.service.TerminalColumnService;
-import com.example.estrazione_win10_sales.util.ExcelUtils;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
+import com.example.estrazione_win10_sales.model.TemplateIndex;
+import com.example.estrazione_win10_sales.util.KeyNormalization;
+import com.example.estrazione_win10_sales.util.RiceIdJoinIndex;
+import com.example.estrazione_win10_sales.util.TemplateScanner;
 
-import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -21,29 +14,19 @@ import java.util.stream.Collectors;
 public class DebugInspector {
     public static void main(String[] args) throws Exception {
         Path csvPath = Path.of("src/main/resources/inputfile/estrazione.csv");
-        List<String[]> rows;
-        try (FileReader fr = new FileReader(csvPath.toFile())) {
-            CSVReader reader = new CSVReaderBuilder(fr)
-                    .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
-                    .build();
-            rows = reader.readAll();
-        }
-        System.out.println("CSV rows: " + rows.size());
-        List<CsvRecord> records = new ArrayList<>();
-        for (int i = 1; i < rows.size(); i++) {
-            try {
-                records.add(CsvRecord.fromCsvRow(rows.get(i)));
-            } catch (Exception ex) {
-                // ignore
-            }
-        }
-        System.out.println("Parsed CsvRecord count: " + records.size());
-        Set<String> distinctRice = records.stream().map(CsvRecord::getRiceId).filter(Objects::nonNull).collect(Collectors.toSet());
-        System.out.println("Distinct riceIds in CSV: " + distinctRice.size());
-        System.out.println("Sample riceIds from CSV: " + distinctRice.stream().limit(10).collect(Collectors.toList()));
+        // righe in forma colonnare: nessun oggetto per riga
+        InventoryColumnStore store = InventoryColumnStore.read(csvPath);
+        System.out.println("Parsed rows: " + store.size() + " (" + store.malformedCount() + " malformed, "
+                + store.columnBytes() / Math.max(1, store.size()) + " bytes/row)");
+        System.out.println("Distinct riceIds in CSV: " + store.riceIdCount());
+        List<String> sampleRice = new ArrayList<>();
+        store.forEachGroup(false, (riceKey, rows, from, to) -> {
+            if (sampleRice.size() < 10) sampleRice.add(store.ids().decode(riceKey));
+        });
+        System.out.println("Sample riceIds from CSV: " + sampleRice);
 
         TerminalColumnService svc = new TerminalColumnService();
-        Map<String, List<String>> terminals = svc.computeTerminalsByRiceId(records);
+        Map<String, List<String>> terminals = svc.computeTerminalsByRiceId(store);
         System.out.println("terminalsByRiceId size: " + terminals.size());
         System.out.println("Sample terminals entries: ");
         int c = 0;
@@ -52,43 +35,29 @@ public class DebugInspector {
             c++; if (c>=10) break;
         }
 
-        // read template
+        // read template: only header and column A are needed, SAX scan instead of the full workbook
         Path templatePath = Path.of("src/main/resources/inputfile/template.xlsx");
-        try (InputStream in = new FileInputStream(templatePath.toFile()); Workbook wb = ExcelUtils.openWorkbook(in)) {
-            Sheet s = wb.getSheetAt(0);
-            Map<String,Integer> sheetRice = new LinkedHashMap<>();
-            for (int r = 1; r <= s.getLastRowNum(); r++) {
-                Row row = s.getRow(r);
-                if (row == null) continue;
-                Cell c0 = row.getCell(0);
-                String v = ExcelUtils.getStringCellValue(c0);
-                if (v != null && !v.isBlank()) sheetRice.put(v, r);
-            }
-            System.out.println("Template riceIds count: " + sheetRice.size());
-            System.out.println("Sample template riceIds: " + sheetRice.keySet().stream().limit(10).collect(Collectors.toList()));
+        TemplateIndex template = TemplateScanner.scan(templatePath);
+        Map<String, List<Integer>> sheetRice = template.getRiceIdRows();
+        System.out.println("Template riceIds count: " + sheetRice.size());
+        System.out.println("Sample template riceIds: " + sheetRice.keySet().stream().limit(10).collect(Collectors.toList()));
 
-            // find intersection example
-            Set<String> intersection = new LinkedHashSet<>();
-            for (String k : terminals.keySet()) {
-                if (sheetRice.containsKey(k)) intersection.add(k);
-            }
-            System.out.println("Direct intersection size: " + intersection.size());
-            System.out.println("Direct intersection sample: " + intersection.stream().limit(10).collect(Collectors.toList()));
+        // find intersection example
+        RiceIdJoinIndex<List<Integer>> exact = new RiceIdJoinIndex<>(sheetRice, List.of(KeyNormalization.EXACT));
+        Set<String> intersection = new LinkedHashSet<>();
+        for (String k : terminals.keySet()) {
+            if (exact.get(k) != null) intersection.add(k);
+        }
+        System.out.println("Direct intersection size: " + intersection.size());
+        System.out.println("Direct intersection sample: " + intersection.stream().limit(10).collect(Collectors.toList()));
 
-            // try numeric-only intersection
-            Set<String> numericMatch = new LinkedHashSet<>();
-            for (String k : terminals.keySet()) {
-                String kd = k.replaceAll("\\D+", "");
-                for (String t : sheetRice.keySet()) {
-                    String td = t.replaceAll("\\D+", "");
-                    if (!kd.isEmpty() && kd.equals(td)) {
-                        numericMatch.add(k);
-                        break;
-                    }
-                }
-            }
-            System.out.println("Numeric-only match size: " + numericMatch.size());
-            System.out.println("Numeric-only sample: " + numericMatch.stream().limit(10).collect(Collectors.toList()));
+        // try numeric-only intersection: one lookup per riceId in the digits-only table
+        RiceIdJoinIndex<List<Integer>> digitsOnly = new RiceIdJoinIndex<>(sheetRice, List.of(KeyNormalization.DIGITS_ONLY));
+        Set<String> numericMatch = new LinkedHashSet<>();
+        for (String k : terminals.keySet()) {
+            if (digitsOnly.get(k) != null) numericMatch.add(k);
         }
+        System.out.println("Numeric-only match size: " + numericMatch.size());
+        System.out.println("Numeric-only sample: " + numericMatch.stream().limit(10).collect(Collectors.toList()));
     }
 }
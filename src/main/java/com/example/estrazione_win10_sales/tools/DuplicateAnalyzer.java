@@ -1,13 +1,10 @@
 package com.example.estrazione_win10_sales.tools;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.example.estrazione_win10_sales.model.TemplateIndex;
+import com.example.estrazione_win10_sales.util.TemplateScanner;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.DecimalFormat;
 import java.util.*;
 
 public class DuplicateAnalyzer {
@@ -18,131 +15,83 @@ public class DuplicateAnalyzer {
         // Leggi il template
         Path templatePath = Paths.get("src/main/resources/inputfile/template.xlsx");
 
-        try (InputStream in = new FileInputStream(templatePath.toFile());
-             Workbook wb = new XSSFWorkbook(in)) {
+        // Basta l'header e la colonna A: scansione SAX senza caricare tutto il workbook
+        TemplateIndex index = TemplateScanner.scan(templatePath);
 
-            Sheet sheet = wb.getSheetAt(0);
+        // Map per tracciare idrice -> lista di righe dove compare
+        Map<String, List<Integer>> idriceToRows = index.getRiceIdRows();
 
-            // Map per tracciare idrice -> lista di righe dove compare
-            Map<String, List<Integer>> idriceToRows = new LinkedHashMap<>();
+        int totalRows = index.getLastRowNum();
+        System.out.println("Numero totale righe nel template: " + (totalRows + 1)); // +1 perché include header
+        System.out.println("Righe dati (escluso header): " + totalRows);
 
-            // Scorri tutte le righe (escludi header)
-            int totalRows = sheet.getLastRowNum();
-            System.out.println("Numero totale righe nel template: " + (totalRows + 1)); // +1 perché include header
-            System.out.println("Righe dati (escluso header): " + totalRows);
+        System.out.println("Idrice univoci trovati nel template: " + idriceToRows.size());
 
-            for (int r = 1; r <= totalRows; r++) {
-                Row row = sheet.getRow(r);
-                if (row == null) continue;
+        // Trova i duplicati
+        List<String> duplicatedIdrice = new ArrayList<>();
+        int totalDuplicatedRows = 0;
 
-                Cell firstCell = row.getCell(0); // Colonna A = idrice
-                String idrice = getStringCellValue(firstCell);
+        for (Map.Entry<String, List<Integer>> entry : idriceToRows.entrySet()) {
+            String idrice = entry.getKey();
+            List<Integer> rows = entry.getValue();
 
-                if (idrice != null && !idrice.trim().isEmpty()) {
-                    if (!idriceToRows.containsKey(idrice)) {
-                        idriceToRows.put(idrice, new ArrayList<>());
-                    }
-                    idriceToRows.get(idrice).add(r);
-                }
+            if (rows.size() > 1) {
+                duplicatedIdrice.add(idrice);
+                totalDuplicatedRows += (rows.size() - 1); // -1 perché una riga la teniamo
             }
+        }
 
-            System.out.println("Idrice univoci trovati nel template: " + idriceToRows.size());
-
-            // Trova i duplicati
-            List<String> duplicatedIdrice = new ArrayList<>();
-            int totalDuplicatedRows = 0;
+        System.out.println("\n=== STATISTICHE DUPLICATI ===");
+        System.out.println("Idrice duplicati: " + duplicatedIdrice.size());
+        System.out.println("Righe duplicate totali: " + totalDuplicatedRows);
+        System.out.println("Righe che verrebbero rimosse: " + totalDuplicatedRows);
+        System.out.println("Righe finali se rimuovi duplicati: " + (totalRows - totalDuplicatedRows + 1)); // +1 per header
 
-            for (Map.Entry<String, List<Integer>> entry : idriceToRows.entrySet()) {
-                String idrice = entry.getKey();
-                List<Integer> rows = entry.getValue();
+        System.out.println("\n=== PRIMI 10 IDRICE DUPLICATI ===");
 
-                if (rows.size() > 1) {
-                    duplicatedIdrice.add(idrice);
-                    totalDuplicatedRows += (rows.size() - 1); // -1 perché una riga la teniamo
-                }
-            }
-
-            System.out.println("\n=== STATISTICHE DUPLICATI ===");
-            System.out.println("Idrice duplicati: " + duplicatedIdrice.size());
-            System.out.println("Righe duplicate totali: " + totalDuplicatedRows);
-            System.out.println("Righe che verrebbero rimosse: " + totalDuplicatedRows);
-            System.out.println("Righe finali se rimuovi duplicati: " + (totalRows - totalDuplicatedRows + 1)); // +1 per header
-
-            System.out.println("\n=== PRIMI 10 IDRICE DUPLICATI ===");
+        // Seconda scansione che legge per intero solo le righe dei primi 10 duplicati
+        Set<Integer> rowsToShow = new HashSet<>();
+        for (String idrice : duplicatedIdrice.subList(0, Math.min(10, duplicatedIdrice.size()))) {
+            rowsToShow.addAll(idriceToRows.get(idrice));
+        }
+        TemplateIndex details = TemplateScanner.scan(templatePath, rowsToShow);
+        Integer osVersionColIndex = index.getHeaderMap().get("osVersion");
 
-            int count = 0;
-            for (String idrice : duplicatedIdrice) {
-                if (count >= 10) break;
+        int count = 0;
+        for (String idrice : duplicatedIdrice) {
+            if (count >= 10) break;
 
-                List<Integer> rows = idriceToRows.get(idrice);
-                System.out.println("Idrice: '" + idrice + "' trovato nelle righe: " + rows);
+            List<Integer> rows = idriceToRows.get(idrice);
+            System.out.println("Idrice: '" + idrice + "' trovato nelle righe: " + rows);
 
-                // Mostra il contenuto di alcune colonne per ogni riga duplicata
-                for (int rowNum : rows) {
-                    Row row = sheet.getRow(rowNum);
-                    if (row != null) {
-                        Integer osVersionColIndex = getColumnIndex(sheet, "osVersion");
-                        String osVersion = osVersionColIndex != null ?
-                            getStringCellValue(row.getCell(osVersionColIndex)) : "N/A";
-                        String descrizione = getStringCellValue(row.getCell(1)); // Assuming column B is description
+            // Mostra il contenuto di alcune colonne per ogni riga duplicata
+            for (int rowNum : rows) {
+                Map<Integer, String> row = details.getRow(rowNum);
+                if (!row.isEmpty()) {
+                    String osVersion = osVersionColIndex != null ?
+                        row.get(osVersionColIndex) : "N/A";
+                    String descrizione = row.get(1); // Assuming column B is description
 
-                        String descSub = descrizione != null ?
-                            descrizione.substring(0, Math.min(50, descrizione.length())) + "..." : "N/A";
+                    String descSub = descrizione != null ?
+                        descrizione.substring(0, Math.min(50, descrizione.length())) + "..." : "N/A";
 
-                        System.out.println("  Riga " + (rowNum + 1) + ": osVersion='" + osVersion + "', Descrizione='" + descSub + "'");
-                    }
+                    System.out.println("  Riga " + (rowNum + 1) + ": osVersion='" + osVersion + "', Descrizione='" + descSub + "'");
                 }
-                System.out.println();
-                count++;
-            }
-
-            if (duplicatedIdrice.size() > 10) {
-                System.out.println("... e altri " + (duplicatedIdrice.size() - 10) + " idrice duplicati.");
-            }
-
-            System.out.println("\n=== ESEMPIO DI IDRICE DUPLICATO PER TEST MANUALE ===");
-            if (!duplicatedIdrice.isEmpty()) {
-                String firstDuplicate = duplicatedIdrice.getFirst();
-                System.out.println("Idrice da testare manualmente: " + firstDuplicate);
-                System.out.println("Righe nel template: " + idriceToRows.get(firstDuplicate));
-                System.out.println("Puoi cercare questo idrice nel file template.xlsx per verificare manualmente.");
             }
+            System.out.println();
+            count++;
         }
-    }
 
-    private static Integer getColumnIndex(Sheet sheet, String columnName) {
-        Row headerRow = sheet.getRow(0);
-        if (headerRow == null) return null;
-
-        for (Cell cell : headerRow) {
-            String headerValue = getStringCellValue(cell);
-            if (columnName.equals(headerValue)) {
-                return cell.getColumnIndex();
-            }
+        if (duplicatedIdrice.size() > 10) {
+            System.out.println("... e altri " + (duplicatedIdrice.size() - 10) + " idrice duplicati.");
         }
-        return null;
-    }
 
-    /**
-     * Utility method to get string value from Excel cell (replaces ExcelUtils.getStringCellValue)
-     */
-    private static String getStringCellValue(Cell c) {
-        if (c == null) return null;
-        if (c.getCellType() == CellType.STRING) return c.getStringCellValue();
-        if (c.getCellType() == CellType.NUMERIC) {
-            // Format numbers properly to avoid scientific notation
-            double numericValue = c.getNumericCellValue();
-            if (numericValue == Math.floor(numericValue)) {
-                // It's an integer
-                return String.valueOf((long) numericValue);
-            } else {
-                // It's a decimal
-                DecimalFormat df = new DecimalFormat("#.##########");
-                return df.format(numericValue);
-            }
+        System.out.println("\n=== ESEMPIO DI IDRICE DUPLICATO PER TEST MANUALE ===");
+        if (!duplicatedIdrice.isEmpty()) {
+            String firstDuplicate = duplicatedIdrice.getFirst();
+            System.out.println("Idrice da testare manualmente: " + firstDuplicate);
+            System.out.println("Righe nel template: " + idriceToRows.get(firstDuplicate));
+            System.out.println("Puoi cercare questo idrice nel file template.xlsx per verificare manualmente.");
         }
-        if (c.getCellType() == CellType.BOOLEAN) return String.valueOf(c.getBooleanCellValue());
-        if (c.getCellType() == CellType.FORMULA) return c.getCellFormula();
-        return null;
     }
 }
@@ -0,0 +1,213 @@
+package com.example.estrazione_win10_sales.tools;
+
+import com.example.estrazione_win10_sales.config.ExcelProperties;
+import com.example.estrazione_win10_sales.service.CsvToExcelService;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Esegue {@link CsvToExcelService#run} end to end su dataset sintetici di scala crescente e misura, per ogni
+ * passo, tempo, picco di heap, picco di RSS e pause GC. Serve per avere curve di scalabilità reali.
+ * <p>
+ * Uso: {@code LoadTestRunner --scales=100000,1000000,10000000 --out=target/loadtest --jvmArgs=-Xmx4g}
+ * <ul>
+ *   <li>{@code scales}: righe del CSV per ogni passo (default 10000,100000,1000000)</li>
+ *   <li>{@code templateRatio}: righe del template per riga del CSV (default 0.05)</li>
+ *   <li>{@code threads}: excel.aggregationThreads usato dalla conversione (default 1)</li>
+ *   <li>{@code jvmArgs}: opzioni della JVM figlia, separate da spazio (default nessuna)</li>
+ *   <li>{@code inProcess}: true per eseguire i passi in questa JVM; l'RSS è allora cumulativo (default false)</li>
+ *   <li>gli altri argomenti ({@code skew}, {@code tidsPerRice}, {@code nullDensity}, ...) vanno al
+ *       {@link SyntheticDatasetGenerator}</li>
+ * </ul>
+ * Ogni passo gira in una JVM figlia con lo stesso classpath, così heap, RSS e GC non risentono dei passi
+ * precedenti. Il risultato è stampato a video e scritto in {@code <out>/loadtest.csv}.
+ */
+public class LoadTestRunner {
+
+    private static final String RESULT_PREFIX = "LOADTEST-RESULT;";
+    private static final String CSV_HEADER = "rows;templateRows;csvBytes;wallMs;peakHeapMb;peakRssMb;gcCount;gcTimeMs;maxGcPauseMs";
+
+    /** Misure di un passo */
+    record StepResult(long wallMs, long peakHeapBytes, long peakRssBytes, long gcCount, long gcTimeMs, long maxGcPauseMs) {
+
+        String encode() {
+            return wallMs + ";" + peakHeapBytes + ";" + peakRssBytes + ";" + gcCount + ";" + gcTimeMs + ";" + maxGcPauseMs;
+        }
+
+        static StepResult decode(String s) {
+            String[] f = s.split(";");
+            return new StepResult(Long.parseLong(f[0]), Long.parseLong(f[1]), Long.parseLong(f[2]),
+                    Long.parseLong(f[3]), Long.parseLong(f[4]), Long.parseLong(f[5]));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = SyntheticDatasetGenerator.parseArgs(args);
+        if (params.containsKey("step")) {
+            // JVM figlia: un solo passo, il risultato va su stdout per il processo padre
+            StepResult r = measure(params.get("csv"), params.get("template"), params.get("output"),
+                    Integer.parseInt(params.getOrDefault("threads", "1")));
+            System.out.println(RESULT_PREFIX + r.encode());
+            return;
+        }
+
+        Path out = Path.of(params.getOrDefault("out", "target/loadtest"));
+        double templateRatio = Double.parseDouble(params.getOrDefault("templateRatio", "0.05"));
+        int threads = Integer.parseInt(params.getOrDefault("threads", "1"));
+        boolean inProcess = Boolean.parseBoolean(params.getOrDefault("inProcess", "false"));
+        List<Long> scales = new ArrayList<>();
+        for (String s : params.getOrDefault("scales", "10000,100000,1000000").split(",")) {
+            if (!s.isBlank()) scales.add(Long.parseLong(s.trim().replace("_", "")));
+        }
+        Files.createDirectories(out);
+
+        System.out.println("=== LOAD TEST ===");
+        System.out.println("Scale: " + scales + " threads=" + threads + (inProcess ? " (stessa JVM)" : " (JVM figlia per passo)"));
+        List<String> lines = new ArrayList<>();
+        lines.add(CSV_HEADER);
+        System.out.println(String.format(Locale.ROOT, "%12s %12s %10s %10s %10s %8s %10s %10s",
+                "rows", "template", "wall ms", "heap MB", "RSS MB", "GC n", "GC ms", "max pausa"));
+        for (long rows : scales) {
+            Path dir = out.resolve("rows-" + rows);
+            SyntheticDatasetGenerator.Options options = SyntheticDatasetGenerator.Options.parse(params)
+                    .rows(rows, Math.max(1, Math.round(rows * templateRatio)));
+            SyntheticDatasetGenerator.generate(dir, options);
+            Path csv = dir.resolve("estrazione.csv");
+            Path template = dir.resolve("template.xlsx");
+            Path output = dir.resolve("output.xlsx");
+
+            StepResult r = inProcess
+                    ? measure(csv.toString(), template.toString(), output.toString(), threads)
+                    : runChild(csv, template, output, threads, params.getOrDefault("jvmArgs", ""), dir.resolve("step.log"));
+            long csvBytes = Files.size(csv);
+            System.out.println(String.format(Locale.ROOT, "%12d %12d %10d %10d %10s %8d %10d %10d",
+                    rows, options.templateRows, r.wallMs, mb(r.peakHeapBytes),
+                    r.peakRssBytes < 0 ? "n/a" : String.valueOf(mb(r.peakRssBytes)), r.gcCount, r.gcTimeMs, r.maxGcPauseMs));
+            lines.add(rows + ";" + options.templateRows + ";" + csvBytes + ";" + r.wallMs + ";" + mb(r.peakHeapBytes) + ";"
+                    + (r.peakRssBytes < 0 ? "" : mb(r.peakRssBytes)) + ";" + r.gcCount + ";" + r.gcTimeMs + ";" + r.maxGcPauseMs);
+            Files.write(out.resolve("loadtest.csv"), lines, StandardCharsets.UTF_8);
+        }
+        System.out.println("Report: " + out.resolve("loadtest.csv"));
+    }
+
+    /** Esegue un passo in una JVM figlia con lo stesso classpath; l'output della conversione va nel log del passo */
+    private static StepResult runChild(Path csv, Path template, Path output, int threads, String jvmArgs, Path log)
+            throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String a : jvmArgs.trim().split("\\s+")) {
+            if (!a.isEmpty()) cmd.add(a);
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(LoadTestRunner.class.getName());
+        cmd.add("--step=true");
+        cmd.add("--csv=" + csv);
+        cmd.add("--template=" + template);
+        cmd.add("--output=" + output);
+        cmd.add("--threads=" + threads);
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        int exit = p.waitFor();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            if (line.startsWith(RESULT_PREFIX)) return StepResult.decode(line.substring(RESULT_PREFIX.length()));
+        }
+        throw new IOException("Passo fallito (exit " + exit + "), vedere " + log);
+    }
+
+    /** Esegue la conversione nella JVM corrente e ne misura tempo, memoria e GC */
+    static StepResult measure(String csv, String template, String output, int threads) throws IOException {
+        ExcelProperties props = new ExcelProperties();
+        props.setAggregationThreads(threads);
+        CsvToExcelService service = new CsvToExcelService(props);
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long gcCountBefore = 0, gcTimeBefore = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCountBefore += Math.max(0, gc.getCollectionCount());
+            gcTimeBefore += Math.max(0, gc.getCollectionTime());
+        }
+        // durata di ogni raccolta, per la pausa massima (per i collector concorrenti è la durata del ciclo)
+        AtomicLong maxPause = new AtomicLong();
+        NotificationListener listener = (n, handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+            maxPause.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+        };
+        List<NotificationEmitter> emitters = new ArrayList<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            service.run(csv, template, output);
+        } finally {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(listener);
+                } catch (Exception ex) {
+                    // listener già rimosso
+                }
+            }
+        }
+        long wallMs = (System.nanoTime() - start) / 1_000_000;
+
+        // somma dei picchi dei singoli pool: limite superiore del picco di heap effettivo
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            if (pool.getPeakUsage() != null) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        long gcCount = -gcCountBefore, gcTime = -gcTimeBefore;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        return new StepResult(wallMs, peakHeap, peakRss(), gcCount, gcTime, maxPause.get());
+    }
+
+    /** VmHWM del processo (solo Linux), -1 se non disponibile */
+    private static long peakRss() {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) return -1;
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            // formato inatteso
+        }
+        return -1;
+    }
+
+    private static long mb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
@@ -1,52 +1,68 @@
 package com.example.estrazione_win10_sales.tools;
 
-import com.example.estrazione_win10_sales.util.ExcelUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
+import com.example.estrazione_win10_sales.model.TemplateIndex;
+import com.example.estrazione_win10_sales.util.TemplateScanner;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+/**
+ * Controllo di un file di output già scritto, senza caricarlo come workbook: lettura SAX delle sole righe necessarie.
+ * <p>
+ * Uso: {@code OutputInspector --path=target/estrazione_output.xlsx --rows=5 --riceId=285353 --out=inspect.txt}
+ * <ul>
+ *   <li>{@code path}: file da controllare (default {@code target/estrazione_output.xlsx})</li>
+ *   <li>{@code rows}: prime righe di dati da mostrare (default 5); la lettura si ferma dopo di esse</li>
+ *   <li>{@code riceId}: facoltativo, mostra invece le righe di questo riceId (lettura completa della colonna A)</li>
+ *   <li>{@code out}: facoltativo, file in cui scrivere il risultato oltre alla stampa a video</li>
+ * </ul>
+ */
 public class OutputInspector {
     public static void main(String[] args) throws Exception {
-        Path p = Path.of("C:/Users/sartirana/Documents/workspace_intellij_estrazione_win10_sales/target/estrazione_output.xlsx");
-        Path out = Path.of("inspect_285353.txt");
+        Map<String, String> params = SyntheticDatasetGenerator.parseArgs(args);
+        Path p = Path.of(params.getOrDefault("path", "target/estrazione_output.xlsx"));
+        int rows = Integer.parseInt(params.getOrDefault("rows", "5"));
+        String target = params.get("riceId");
+
+        TemplateIndex index;
+        Set<Integer> shown = new TreeSet<>();
         StringBuilder sb = new StringBuilder();
-        try (InputStream in = new FileInputStream(p.toFile()); Workbook wb = ExcelUtils.openWorkbook(in)) {
-            Sheet s = wb.getSheetAt(0);
-            Map<String,Integer> headers = ExcelUtils.headerMap(s);
-            sb.append("Headers: ").append(headers).append(System.lineSeparator());
-            Map<String,Integer> sheetRice = new LinkedHashMap<>();
-            for (int r = 1; r <= s.getLastRowNum(); r++) {
-                Row row = s.getRow(r);
-                if (row == null) continue;
-                Cell c0 = row.getCell(0);
-                String v = ExcelUtils.getStringCellValue(c0);
-                if (v != null && !v.isBlank()) sheetRice.put(v, r);
-            }
-            String target = "285353";
-            if (!sheetRice.containsKey(target)) {
+        if (target == null) {
+            index = TemplateScanner.peek(p, rows);
+            for (int r = 1; r <= index.getLastRowNum(); r++) shown.add(r);
+        } else {
+            // prima passata: solo intestazione e colonna A, per trovare le righe del riceId
+            List<Integer> found = TemplateScanner.scan(p).getRiceIdRows().get(target);
+            if (found == null) {
                 sb.append("RiceId not found in sheet: ").append(target).append(System.lineSeparator());
-                Files.writeString(out, sb.toString());
+                write(sb, params.get("out"));
                 return;
             }
-            int rowIndex = sheetRice.get(target);
-            Row row = s.getRow(rowIndex);
-            sb.append("Row index for ").append(target).append(" = ").append(rowIndex).append(System.lineSeparator());
-            for (Map.Entry<String,Integer> e : headers.entrySet()) {
-                String h = e.getKey();
-                int ci = e.getValue();
-                Cell c = row.getCell(ci);
-                String val = ExcelUtils.getStringCellValue(c);
-                sb.append(h).append(" -> '").append(val).append("'\n");
+            shown.addAll(found);
+            index = TemplateScanner.scan(p, shown);
+        }
+
+        Map<String, Integer> headers = index.getHeaderMap();
+        sb.append("Sheet: ").append(index.getSheetName()).append(System.lineSeparator());
+        sb.append("Headers: ").append(headers).append(System.lineSeparator());
+        for (int r : shown) {
+            Map<Integer, String> row = index.getRow(r);
+            sb.append("Row ").append(r).append(System.lineSeparator());
+            for (Map.Entry<String, Integer> e : headers.entrySet()) {
+                String val = row.get(e.getValue());
+                sb.append(e.getKey()).append(" -> '").append(val).append("'\n");
             }
-            Files.writeString(out, sb.toString());
+            sb.append(System.lineSeparator());
         }
+        write(sb, params.get("out"));
+    }
+
+    private static void write(StringBuilder sb, String out) throws Exception {
+        System.out.print(sb);
+        if (out != null) Files.writeString(Path.of(out), sb.toString());
     }
 }
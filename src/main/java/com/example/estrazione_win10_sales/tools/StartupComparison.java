@@ -0,0 +1,138 @@
+package com.example.estrazione_win10_sales.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Confronta il tempo di avvio del jar normale con il pacchetto ottimizzato del profilo {@code startup}
+ * (contesto AOT + archivio AppCDS), misurando il tempo al primo record letto dell'estrazione.
+ * <p>
+ * Uso, dopo {@code mvn -P startup package}: {@code StartupComparison --runs=5 --out=target/startup-comparison}
+ * <ul>
+ *   <li>{@code runs}: esecuzioni per variante, alternate (default 5)</li>
+ *   <li>{@code plainJar}: jar normale (default il jar eseguibile in {@code target})</li>
+ *   <li>{@code startupDir}: pacchetto ottimizzato (default {@code target/startup})</li>
+ *   <li>{@code csv}, {@code template}: input della conversione (default quelli di esempio inclusi nel jar)</li>
+ * </ul>
+ * Ogni esecuzione è una JVM nuova; i tempi vengono dal report JSON della conversione ({@code timeToFirstRowMs},
+ * uptime della JVM quando inizia la lettura dell'estrazione) più il tempo totale del processo.
+ * Il risultato è stampato a video e scritto in {@code <out>/startup.csv}.
+ */
+public class StartupComparison {
+
+    private static final Pattern FIRST_ROW = Pattern.compile("\"timeToFirstRowMs\": (-?\\d+)");
+    private static final Pattern RUN_START = Pattern.compile("\"jvmUptimeAtStartMs\": (-?\\d+)");
+
+    /** Misure di un'esecuzione: uptime all'avvio della conversione, uptime al primo record, durata del processo */
+    record RunResult(long startMs, long firstRowMs, long processMs) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = SyntheticDatasetGenerator.parseArgs(args);
+        int runs = Integer.parseInt(params.getOrDefault("runs", "5"));
+        Path out = Path.of(params.getOrDefault("out", "target/startup-comparison")).toAbsolutePath();
+        Path startupDir = Path.of(params.getOrDefault("startupDir", "target/startup")).toAbsolutePath();
+        Path plainJar = params.containsKey("plainJar") ? Path.of(params.get("plainJar")).toAbsolutePath() : findJar(Path.of("target"));
+        Path startupJar = findJar(startupDir);
+        Path archive = startupDir.resolve("estrazione.jsa");
+        if (plainJar == null || startupJar == null || !Files.exists(archive)) {
+            throw new IOException("Pacchetto non trovato: eseguire prima mvn -P startup package");
+        }
+        Files.createDirectories(out);
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> plain = List.of(java, "-jar", plainJar.toString());
+        // riga di comando del launcher estrazione.sh senza -Dexcel.templateCacheDir: la cache del template è lasciata
+        // fuori di proposito, così le due varianti fanno lo stesso lavoro e si confronta solo l'avvio
+        List<String> optimized = List.of(java, "-XX:+AutoCreateSharedArchive", "-XX:SharedArchiveFile=" + archive,
+                "-Dspring.aot.enabled=true", "-jar", startupJar.toString());
+
+        System.out.println("=== STARTUP ===");
+        System.out.println("Jar normale:      " + plainJar);
+        System.out.println("Jar AOT + AppCDS: " + startupJar);
+        List<String> lines = new ArrayList<>();
+        lines.add("variant;run;startMs;firstRowMs;processMs");
+        List<RunResult> plainResults = new ArrayList<>();
+        List<RunResult> optimizedResults = new ArrayList<>();
+        for (int i = 1; i <= runs; i++) {
+            // varianti alternate, così cache del disco e carico della macchina pesano allo stesso modo
+            RunResult p = runOnce(plain, out, "plain-" + i, params);
+            RunResult o = runOnce(optimized, out, "optimized-" + i, params);
+            plainResults.add(p);
+            optimizedResults.add(o);
+            lines.add("plain;" + i + ";" + p.startMs + ";" + p.firstRowMs + ";" + p.processMs);
+            lines.add("optimized;" + i + ";" + o.startMs + ";" + o.firstRowMs + ";" + o.processMs);
+            System.out.println(String.format(Locale.ROOT, "run %d: normale %d ms, ottimizzato %d ms al primo record", i, p.firstRowMs, o.firstRowMs));
+        }
+        Files.write(out.resolve("startup.csv"), lines, StandardCharsets.UTF_8);
+
+        System.out.println(String.format(Locale.ROOT, "%-12s %16s %16s %16s", "mediana", "avvio conv. ms", "primo record ms", "processo ms"));
+        print("normale", plainResults);
+        print("ottimizzato", optimizedResults);
+        long before = median(plainResults.stream().mapToLong(RunResult::firstRowMs).toArray());
+        long after = median(optimizedResults.stream().mapToLong(RunResult::firstRowMs).toArray());
+        System.out.println(String.format(Locale.ROOT, "Tempo al primo record: %d ms -> %d ms (%.1f%%)",
+                before, after, before > 0 ? 100.0 * (after - before) / before : 0.0));
+        System.out.println("Report: " + out.resolve("startup.csv"));
+    }
+
+    private static RunResult runOnce(List<String> command, Path out, String name, Map<String, String> params)
+            throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(command);
+        Path output = out.resolve(name + ".xlsx");
+        cmd.add("--excel.outputPath=" + output);
+        if (params.containsKey("csv")) cmd.add("--excel.csvPath=" + params.get("csv"));
+        if (params.containsKey("template")) cmd.add("--excel.templatePath=" + params.get("template"));
+        Path log = out.resolve(name + ".log");
+        long start = System.nanoTime();
+        // directory di lavoro separata: l'applicazione vi scrive anche diagnostics_output.txt
+        Process p = new ProcessBuilder(cmd).directory(out.toFile())
+                .redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        int exit = p.waitFor();
+        long processMs = (System.nanoTime() - start) / 1_000_000;
+        Path report = out.resolve(name + ".report.json");
+        if (exit != 0 || !Files.exists(report)) {
+            throw new IOException("Esecuzione fallita (exit " + exit + "), vedere " + log);
+        }
+        String json = Files.readString(report, StandardCharsets.UTF_8);
+        return new RunResult(value(RUN_START, json), value(FIRST_ROW, json), processMs);
+    }
+
+    private static long value(Pattern pattern, String json) throws IOException {
+        Matcher m = pattern.matcher(json);
+        if (!m.find()) throw new IOException("Valore " + pattern.pattern() + " assente nel report");
+        return Long.parseLong(m.group(1));
+    }
+
+    /** Jar eseguibile della cartella (non il .original lasciato dal repackage) */
+    private static Path findJar(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return null;
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".jar"))
+                    .map(Path::toAbsolutePath)
+                    .findFirst().orElse(null);
+        }
+    }
+
+    private static void print(String label, List<RunResult> results) {
+        System.out.println(String.format(Locale.ROOT, "%-12s %16d %16d %16d", label,
+                median(results.stream().mapToLong(RunResult::startMs).toArray()),
+                median(results.stream().mapToLong(RunResult::firstRowMs).toArray()),
+                median(results.stream().mapToLong(RunResult::processMs).toArray())));
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+    }
+}
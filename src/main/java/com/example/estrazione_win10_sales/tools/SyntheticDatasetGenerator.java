@@ -0,0 +1,253 @@
+package com.example.estrazione_win10_sales.tools;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Genera una coppia estrazione.csv / template.xlsx sintetica, con la stessa forma dei file reali
+ * (layout della query querySQL.sql, colonne Idrice / ZonaRice / Tipo Rete nel template), a qualsiasi scala.
+ * <p>
+ * Uso: {@code SyntheticDatasetGenerator --out=target/synthetic --rows=10000000 --templateRows=500000}
+ * <ul>
+ *   <li>{@code rows}: righe di inventario nel CSV (default 100000)</li>
+ *   <li>{@code templateRows}: righe dati del template (default rows / 20)</li>
+ *   <li>{@code tidsPerRice}: numero medio di tid per riceId (default 2)</li>
+ *   <li>{@code maxTidsPerRice}: massimo di tid per riceId, cioè di colonne terminal_N (default 50)</li>
+ *   <li>{@code skew}: esponente Zipf della distribuzione dei tid sui riceId, 0 = uniforme (default 1.1)</li>
+ *   <li>{@code windowsShare}: quota di terminali WINDOWS (default 0.9)</li>
+ *   <li>{@code win11Share}: quota di WINDOWS con osVersion 10.0.2x (default 0.4)</li>
+ *   <li>{@code nullDensity}: quota di tid senza osType/osVersion, righe NULL (default 0.1)</li>
+ *   <li>{@code historyShare}: quota di tid con una coppia osType/osVersion più vecchia (default 0.2)</li>
+ *   <li>{@code duplicateShare}: quota di righe del template che ripetono un riceId (default 0.01)</li>
+ *   <li>{@code coverage}: quota di riceId del template presenti nel CSV (default 0.95)</li>
+ *   <li>{@code seed}: seme del generatore, stessi parametri = stessi file (default 42)</li>
+ * </ul>
+ */
+public class SyntheticDatasetGenerator {
+
+    static final String CSV_HEADER = "rice_id;rice_id;chiave;terminal_id;timestamp_TO_DELETE;valore;timestamp";
+    private static final String[] WIN10_VERSIONS = {"10.0.19045.6466", "10.0.19045.6332", "10.0.19044.5737"};
+    private static final String[] WIN11_VERSIONS = {"10.0.26200.7840", "10.0.26100.4946", "10.0.22631.5624"};
+    private static final String[] OTHER_TYPES = {"LINUX", "ANDROID"};
+    private static final String[] ZONES = {"NORD", "CENTRO", "SUD", "ISOLE"};
+    private static final String[] NETWORKS = {"FIBRA", "RAME", "MOBILE"};
+
+    /** Parametri della generazione */
+    public static class Options {
+        long rows = 100_000;
+        long templateRows = -1;
+        double tidsPerRice = 2;
+        int maxTidsPerRice = 50;
+        double skew = 1.1;
+        double windowsShare = 0.9;
+        double win11Share = 0.4;
+        double nullDensity = 0.1;
+        double historyShare = 0.2;
+        double duplicateShare = 0.01;
+        double coverage = 0.95;
+        long seed = 42;
+
+        /** Opzioni da argomenti {@code --nome=valore}; gli argomenti non riconosciuti sono ignorati */
+        public static Options parse(Map<String, String> args) {
+            Options o = new Options();
+            o.rows = Long.parseLong(args.getOrDefault("rows", String.valueOf(o.rows)));
+            o.templateRows = Long.parseLong(args.getOrDefault("templateRows", String.valueOf(Math.max(1, o.rows / 20))));
+            o.tidsPerRice = Double.parseDouble(args.getOrDefault("tidsPerRice", String.valueOf(o.tidsPerRice)));
+            o.maxTidsPerRice = Integer.parseInt(args.getOrDefault("maxTidsPerRice", String.valueOf(o.maxTidsPerRice)));
+            o.skew = Double.parseDouble(args.getOrDefault("skew", String.valueOf(o.skew)));
+            o.windowsShare = Double.parseDouble(args.getOrDefault("windowsShare", String.valueOf(o.windowsShare)));
+            o.win11Share = Double.parseDouble(args.getOrDefault("win11Share", String.valueOf(o.win11Share)));
+            o.nullDensity = Double.parseDouble(args.getOrDefault("nullDensity", String.valueOf(o.nullDensity)));
+            o.historyShare = Double.parseDouble(args.getOrDefault("historyShare", String.valueOf(o.historyShare)));
+            o.duplicateShare = Double.parseDouble(args.getOrDefault("duplicateShare", String.valueOf(o.duplicateShare)));
+            o.coverage = Double.parseDouble(args.getOrDefault("coverage", String.valueOf(o.coverage)));
+            o.seed = Long.parseLong(args.getOrDefault("seed", String.valueOf(o.seed)));
+            return o;
+        }
+
+        public Options rows(long rows, long templateRows) {
+            this.rows = rows;
+            this.templateRows = templateRows;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "rows=" + rows + " templateRows=" + templateRows + " tidsPerRice=" + tidsPerRice + " maxTidsPerRice=" + maxTidsPerRice + " skew=" + skew
+                    + " windowsShare=" + windowsShare + " win11Share=" + win11Share + " nullDensity=" + nullDensity
+                    + " historyShare=" + historyShare + " duplicateShare=" + duplicateShare + " coverage=" + coverage
+                    + " seed=" + seed;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArgs(args);
+        Path out = Path.of(params.getOrDefault("out", "target/synthetic"));
+        Options options = Options.parse(params);
+        System.out.println("=== GENERAZIONE DATASET SINTETICO ===");
+        System.out.println(options);
+        long start = System.nanoTime();
+        generate(out, options);
+        System.out.println("CSV: " + out.resolve("estrazione.csv") + " (" + Files.size(out.resolve("estrazione.csv")) + " byte)");
+        System.out.println("Template: " + out.resolve("template.xlsx") + " (" + Files.size(out.resolve("template.xlsx")) + " byte)");
+        System.out.println("Tempo: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /** Argomenti {@code --nome=valore} */
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) continue;
+            params.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return params;
+    }
+
+    /**
+     * Scrive estrazione.csv e template.xlsx nella cartella indicata.
+     */
+    public static void generate(Path dir, Options o) throws IOException {
+        Files.createDirectories(dir);
+        long[] riceIds = writeCsv(dir.resolve("estrazione.csv"), o);
+        writeTemplate(dir.resolve("template.xlsx"), riceIds, o, new Random(o.seed + 2));
+    }
+
+    /**
+     * Numero di tid per riceId: Zipf sul rango, limitato a maxTidsPerRice (le colonne terminal_N del
+     * risultato sono tante quante il massimo) e riportato alla media richiesta, poi mescolato.
+     */
+    private static int[] tidCounts(int riceCount, Options o, Random rnd) {
+        double[] weights = new double[riceCount];
+        double sum = 0;
+        for (int i = 0; i < riceCount; i++) {
+            weights[i] = 1.0 / Math.pow(i + 1, o.skew);
+            sum += weights[i];
+        }
+        int max = Math.max(1, o.maxTidsPerRice);
+        long totalTids = Math.min((long) riceCount * max, Math.round(riceCount * o.tidsPerRice));
+        long assigned = 0;
+        int[] counts = new int[riceCount];
+        for (int i = 0; i < riceCount; i++) {
+            counts[i] = (int) Math.min(max, Math.max(1, Math.round(totalTids * weights[i] / sum)));
+            assigned += counts[i];
+        }
+        // i tid tolti dal limite vanno, uno alla volta, ai riceId della coda ancora sotto il limite
+        for (int i = riceCount - 1; assigned < totalTids; i = i == 0 ? riceCount - 1 : i - 1) {
+            if (counts[i] < max) {
+                counts[i]++;
+                assigned++;
+            }
+        }
+        // i riceId "grandi" non devono essere tutti all'inizio del file
+        for (int i = riceCount - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = counts[i];
+            counts[i] = counts[j];
+            counts[j] = t;
+        }
+        return counts;
+    }
+
+    /** Scrive il CSV e restituisce i riceId usati, in ordine */
+    private static long[] writeCsv(Path file, Options o) throws IOException {
+        Random rnd = new Random(o.seed);
+        // righe attese per tid: una riga NULL, oppure la coppia osType/osVersion più l'eventuale coppia storica
+        double linesPerTid = o.nullDensity + (1 - o.nullDensity) * 2 * (1 + o.historyShare);
+        int riceCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, o.rows / (Math.max(o.tidsPerRice, 0.01) * linesPerTid)));
+        int[] tidCounts = tidCounts(riceCount, o, rnd);
+
+        long[] riceIds = new long[riceCount];
+        int used = 0;
+        long rice = 283_000;
+        long written = 0;
+        long tid = 80_000;
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(CSV_HEADER);
+            w.write('\n');
+            for (int i = 0; written < o.rows; i++) {
+                rice += 1 + rnd.nextInt(8);
+                if (used == riceIds.length) riceIds = Arrays.copyOf(riceIds, used * 2);
+                riceIds[used++] = rice;
+                String riceText = Long.toString(rice);
+                int tids = tidCounts[i % tidCounts.length];
+                for (int t = 0; t < tids && written < o.rows; t++) {
+                    tid += 1 + rnd.nextInt(20);
+                    if (rnd.nextDouble() < o.nullDensity) {
+                        w.write(riceText + ";" + riceText + ";NULL;" + tid + ";NULL;NULL;NULL\n");
+                        written++;
+                        continue;
+                    }
+                    if (rnd.nextDouble() < o.historyShare) {
+                        // coppia più vecchia, che l'aggregazione deve scartare
+                        written += writePair(w, riceText, tid, rnd, o, 2025);
+                    }
+                    written += writePair(w, riceText, tid, rnd, o, 2026);
+                }
+            }
+        }
+        return Arrays.copyOf(riceIds, used);
+    }
+
+    private static int writePair(BufferedWriter w, String rice, long tid, Random rnd, Options o, int year) throws IOException {
+        String ts = String.format("\"%d-%02d-%02d %02d:%02d:%02d\"", year, 1 + rnd.nextInt(12), 1 + rnd.nextInt(28),
+                rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60));
+        String osType;
+        String osVersion;
+        if (rnd.nextDouble() < o.windowsShare) {
+            osType = "WINDOWS";
+            osVersion = rnd.nextDouble() < o.win11Share
+                    ? WIN11_VERSIONS[rnd.nextInt(WIN11_VERSIONS.length)]
+                    : WIN10_VERSIONS[rnd.nextInt(WIN10_VERSIONS.length)];
+        } else {
+            osType = OTHER_TYPES[rnd.nextInt(OTHER_TYPES.length)];
+            osVersion = "5.15." + rnd.nextInt(200);
+        }
+        w.write(rice + ";" + rice + ";osType;" + tid + ";NULL;" + osType + ";" + ts + "\n");
+        w.write(rice + ";" + rice + ";osVersion;" + tid + ";NULL;" + osVersion + ";" + ts + "\n");
+        return 2;
+    }
+
+    private static void writeTemplate(Path file, long[] riceIds, Options o, Random rnd) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(100);
+        wb.setCompressTempFiles(true);
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+            Sheet sheet = wb.createSheet("Sheet1");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Idrice");
+            header.createCell(1).setCellValue("ZonaRice");
+            header.createCell(2).setCellValue("Tipo Rete");
+            long unknown = riceIds[riceIds.length - 1] + 1000;
+            long previous = -1;
+            for (int r = 1; r <= o.templateRows; r++) {
+                long rice;
+                if (previous >= 0 && rnd.nextDouble() < o.duplicateShare) {
+                    rice = previous;
+                } else if (rnd.nextDouble() < o.coverage && riceIds.length > 0) {
+                    rice = riceIds[(int) ((r - 1) % riceIds.length)];
+                } else {
+                    // riceId senza righe nell'estrazione
+                    rice = unknown++;
+                }
+                Row row = sheet.createRow(r);
+                row.createCell(0).setCellValue(rice);
+                row.createCell(1).setCellValue(ZONES[rnd.nextInt(ZONES.length)]);
+                row.createCell(2).setCellValue(NETWORKS[rnd.nextInt(NETWORKS.length)]);
+                previous = rice;
+            }
+            wb.write(os);
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
+}
@@ -1,40 +1,25 @@
 package com.example.estrazione_win10_sales.tools;
 
-import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.service.InventoryColumnStore;
+import com.example.estrazione_win10_sales.service.TerminalAccumulator;
 import com.example.estrazione_win10_sales.service.TerminalColumnService;
-import com.opencsv.CSVParserBuilder;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
 
-import java.io.FileReader;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TerminalDebug {
     public static void main(String[] args) throws Exception {
         Path csvPath = Path.of("src/main/resources/inputfile/estrazione.csv");
-        List<String[]> rows;
-        try (FileReader fr = new FileReader(csvPath.toFile());
-             CSVReader reader = new CSVReaderBuilder(fr)
-                    .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
-                    .build()) {
-            rows = reader.readAll();
-        }
-        System.out.println("CSV rows: " + rows.size());
-        List<CsvRecord> records = new ArrayList<>();
-        for (int i = 1; i < rows.size(); i++) {
-            try {
-                records.add(CsvRecord.fromCsvRow(rows.get(i)));
-            } catch (Exception ex) {
-                // ignore
-            }
-        }
-        System.out.println("Parsed CsvRecord count: " + records.size());
+        // righe in forma colonnare: nessun oggetto per riga
+        InventoryColumnStore store = InventoryColumnStore.read(csvPath);
+        System.out.println("Parsed rows: " + store.size() + " (" + store.malformedCount() + " malformed, "
+                + store.columnBytes() / Math.max(1, store.size()) + " bytes/row)");
 
         TerminalColumnService svc = new TerminalColumnService();
-        Map<String, java.util.List<String>> terminals = svc.computeTerminalsByRiceId(records);
+        Map<String, List<String>> terminals = svc.computeTerminalsByRiceId(store);
 
         Path out = Path.of("terminal_debug_out.txt");
         StringBuilder sb = new StringBuilder();
@@ -47,6 +32,20 @@ public class TerminalDebug {
                 sb.append("No entry for ").append(target).append(System.lineSeparator());
             }
         }
+        // righe del CSV dei riceId cercati, nell'ordine del file
+        Set<String> wanted = Set.of(targets);
+        store.forEachGroup(true, (riceKey, rows, from, to) -> {
+            String riceId = store.ids().decode(riceKey);
+            if (!wanted.contains(riceId)) return;
+            for (int i = from; i < to; i++) {
+                int row = rows[i];
+                long ts = store.timestamp(row);
+                sb.append("  ").append(riceId).append(" tid=").append(store.tid(row))
+                        .append(' ').append(store.chiave(row)).append('=').append(store.valore(row))
+                        .append(" ts=").append(ts == TerminalAccumulator.NO_TIMESTAMP ? "-" : Instant.ofEpochMilli(ts))
+                        .append(System.lineSeparator());
+            }
+        });
         java.nio.file.Files.writeString(out, sb.toString());
     }
 }
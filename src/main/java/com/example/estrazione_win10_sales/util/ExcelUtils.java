@@ -10,6 +10,9 @@ import java.util.*;
 
 public final class ExcelUtils {
 
+    // DecimalFormat is costly to build and not thread-safe: one instance per thread
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("0.#####"));
+
     private ExcelUtils() {}
 
     public static Workbook openWorkbook(InputStream in) throws IOException {
@@ -35,22 +38,26 @@ public final class ExcelUtils {
     public static String getStringCellValue(Cell c) {
         if (c == null) return null;
         if (c.getCellType() == CellType.STRING) return c.getStringCellValue();
-        if (c.getCellType() == CellType.NUMERIC) {
-            double d = c.getNumericCellValue();
-            if (Double.isFinite(d) && d == Math.floor(d)) {
-                // whole number, format without decimal
-                long l = (long) d;
-                return Long.toString(l);
-            }
-            // otherwise preserve decimal representation (avoid scientific notation)
-            DecimalFormat df = new DecimalFormat("0.#####");
-            return df.format(d);
-        }
+        if (c.getCellType() == CellType.NUMERIC) return formatNumeric(c.getNumericCellValue());
         if (c.getCellType() == CellType.BOOLEAN) return String.valueOf(c.getBooleanCellValue());
         if (c.getCellType() == CellType.FORMULA) return c.getCellFormula();
         return c.toString();
     }
 
+    /**
+     * Text of a numeric cell value as returned by {@link #getStringCellValue(Cell)}: whole numbers
+     * without decimals, other values without scientific notation.
+     */
+    public static String formatNumeric(double d) {
+        if (Double.isFinite(d) && d == Math.floor(d)) {
+            // whole number, format without decimal
+            long l = (long) d;
+            return Long.toString(l);
+        }
+        // otherwise preserve decimal representation (avoid scientific notation)
+        return DECIMAL_FORMAT.get().format(d);
+    }
+
     public static Cell createCellIfAbsent(Row row, int colIndex) {
         Cell cell = row.getCell(colIndex);
         if (cell == null) cell = row.createCell(colIndex);
@@ -0,0 +1,70 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes riceId/terminal_id text as primitive long keys.
+ * Ids are numeric in all our data: a canonical non-negative decimal (no sign, no leading zeros,
+ * at most 18 digits) is stored as its own value. Anything else gets a negative surrogate code from a
+ * small dictionary, so the original text can always be given back by {@link #decode(long)}.
+ * Encoding of numeric ids is lock free; the dictionary path is synchronized, so one codec can be
+ * shared by several parser threads.
+ */
+public final class IdCodec {
+
+    /** Key for a missing id; never produced by {@link #encode(String)}. */
+    public static final long NO_ID = Long.MIN_VALUE;
+
+    private static final int MAX_DIGITS = 18;
+
+    private final Map<String, Long> surrogates = new ConcurrentHashMap<>();
+    private final List<String> surrogateText = new ArrayList<>();
+
+    /**
+     * Value of a canonical non-negative decimal, or -1 if the text is not one.
+     */
+    public static long parseCanonical(CharSequence s) {
+        int len = s.length();
+        if (len == 0 || len > MAX_DIGITS) return -1;
+        if (len > 1 && s.charAt(0) == '0') return -1;
+        long v = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return -1;
+            v = v * 10 + (ch - '0');
+        }
+        return v;
+    }
+
+    /** True if the key was encoded from a canonical decimal and orders like the number. */
+    public static boolean isNumeric(long key) {
+        return key >= 0;
+    }
+
+    /** Key for the id, {@link #NO_ID} for null. */
+    public long encode(String id) {
+        if (id == null) return NO_ID;
+        long v = parseCanonical(id);
+        if (v >= 0) return v;
+        Long code = surrogates.get(id);
+        if (code != null) return code;
+        synchronized (surrogateText) {
+            return surrogates.computeIfAbsent(id, k -> {
+                surrogateText.add(k);
+                return -(long) surrogateText.size();
+            });
+        }
+    }
+
+    /** Original text of a key produced by {@link #encode(String)}, null for {@link #NO_ID}. */
+    public String decode(long key) {
+        if (key == NO_ID) return null;
+        if (key >= 0) return Long.toString(key);
+        synchronized (surrogateText) {
+            return surrogateText.get((int) (-key - 1));
+        }
+    }
+}
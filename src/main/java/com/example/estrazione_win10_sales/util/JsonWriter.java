@@ -0,0 +1,103 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Minimal JSON serializer for reports: maps (keys as strings, in iteration order), collections,
+ * strings, numbers, booleans and null, indented with two spaces. Other values are written as strings.
+ */
+public final class JsonWriter {
+
+    private JsonWriter() {
+    }
+
+    public static String toJson(Object value) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, value, 0);
+        return sb.append('\n').toString();
+    }
+
+    public static void write(Path file, Object value) throws IOException {
+        Files.writeString(file, toJson(value), StandardCharsets.UTF_8);
+    }
+
+    private static void append(StringBuilder sb, Object value, int indent) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Map<?, ?> map) {
+            if (map.isEmpty()) {
+                sb.append("{}");
+                return;
+            }
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                sb.append(first ? "\n" : ",\n");
+                first = false;
+                indent(sb, indent + 1);
+                appendString(sb, String.valueOf(e.getKey()));
+                sb.append(": ");
+                append(sb, e.getValue(), indent + 1);
+            }
+            sb.append('\n');
+            indent(sb, indent);
+            sb.append('}');
+        } else if (value instanceof Collection<?> list) {
+            if (list.isEmpty()) {
+                sb.append("[]");
+                return;
+            }
+            sb.append('[');
+            boolean first = true;
+            for (Object item : list) {
+                sb.append(first ? "\n" : ",\n");
+                first = false;
+                indent(sb, indent + 1);
+                append(sb, item, indent + 1);
+            }
+            sb.append('\n');
+            indent(sb, indent);
+            sb.append(']');
+        } else if (value instanceof Double d && (d.isNaN() || d.isInfinite())
+                || value instanceof Float f && (f.isNaN() || f.isInfinite())) {
+            // not representable in JSON
+            sb.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            appendString(sb, value.toString());
+        }
+    }
+
+    private static void indent(StringBuilder sb, int indent) {
+        sb.append("  ".repeat(indent));
+    }
+
+    /** Append {@code s} as a JSON string literal. */
+    public static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
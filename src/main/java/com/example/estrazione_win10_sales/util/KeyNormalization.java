@@ -0,0 +1,43 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.util.Locale;
+
+/**
+ * Ways of normalizing a riceId before joining template rows with CSV data.
+ * Each strategy maps both sides to the same canonical form, so a join is a single hash lookup.
+ */
+public enum KeyNormalization {
+    /** Key used as is */
+    EXACT,
+    /** Leading and trailing whitespace removed */
+    TRIMMED,
+    /** Trimmed and compared ignoring case */
+    CASE_FOLDED,
+    /** Only the digits are kept, e.g. "R-285352 " -> "285352"; keys without digits never match */
+    DIGITS_ONLY;
+
+    /**
+     * @return the normalized key, or null if the key cannot take part in a join with this strategy
+     */
+    public String normalize(String key) {
+        if (key == null) return null;
+        switch (this) {
+            case EXACT:
+                return key;
+            case TRIMMED:
+                return key.trim();
+            case CASE_FOLDED:
+                // upper then lower, the same folding String.equalsIgnoreCase relies on
+                return key.trim().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+            case DIGITS_ONLY:
+                StringBuilder sb = new StringBuilder(key.length());
+                for (int i = 0; i < key.length(); i++) {
+                    char ch = key.charAt(i);
+                    if (ch >= '0' && ch <= '9') sb.append(ch);
+                }
+                return sb.length() == 0 ? null : sb.toString();
+            default:
+                throw new IllegalStateException("Unknown normalization: " + this);
+        }
+    }
+}
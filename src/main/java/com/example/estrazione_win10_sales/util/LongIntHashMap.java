@@ -0,0 +1,85 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) hash map from primitive long keys to non-negative int values,
+ * typically an ordinal into parallel arrays. Neither keys nor values are boxed. Not thread-safe.
+ */
+public final class LongIntHashMap {
+
+    /** Returned by {@link #get(long)} for absent keys. */
+    public static final int MISSING = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != MISSING && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Value for the key, or {@link #MISSING}. */
+    public int get(long key) {
+        return values[slot(key)];
+    }
+
+    /** Associates a non-negative value with the key, returning the previous value or {@link #MISSING}. */
+    public int put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("values must be non-negative: " + value);
+        int i = slot(key);
+        int previous = values[i];
+        if (previous == MISSING) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        if (size > resizeAt) rehash();
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == MISSING) continue;
+            int j = slot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) hash map with primitive long keys.
+ * Avoids boxing the key on every lookup, which matters on the per-row hot paths where ids are numeric.
+ * Null values are not supported: a null slot marks an empty bucket. Not thread-safe.
+ */
+public final class LongObjectHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeAt;
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[slot(key)];
+    }
+
+    public boolean containsKey(long key) {
+        return values[slot(key)] != null;
+    }
+
+    /** Associates the value with the key, returning the previous value or null. */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("null values are not supported");
+        int i = slot(key);
+        V previous = (V) values[i];
+        if (previous == null) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        if (size > resizeAt) rehash();
+        return previous;
+    }
+
+    /** Associates the value with the key only if absent, returning the current value or null. */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        int i = slot(key);
+        if (values[i] != null) return (V) values[i];
+        put(key, value);
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int j = slot(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}
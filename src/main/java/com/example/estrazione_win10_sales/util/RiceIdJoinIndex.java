@@ -0,0 +1,92 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.util.*;
+
+/**
+ * Hash index used to join template riceIds with the riceIds found in the extraction data.
+ * One pre-normalized lookup table is built per {@link KeyNormalization} strategy; a lookup tries the
+ * strategies in the configured order, so every lookup costs one hash probe per strategy instead of a
+ * scan of all keys. When several source keys normalize to the same value the first one wins, like the
+ * first match of the linear scan it replaces.
+ * Numeric riceIds (the common case, template column A is numeric) go through {@link #get(double)},
+ * which probes a primitive long table without formatting the number to text.
+ */
+public class RiceIdJoinIndex<V> {
+
+    /** Strategies used by the conversion: exact match on the trimmed id, then case-insensitive. */
+    public static final List<KeyNormalization> DEFAULT_STRATEGIES = List.of(KeyNormalization.TRIMMED, KeyNormalization.CASE_FOLDED);
+
+    private final KeyNormalization[] strategies;
+    private final List<Map<String, V>> tables = new ArrayList<>();
+    private final LongObjectHashMap<V> numeric;
+    // only DIGITS_ONLY can match a whole number that is not in the numeric table
+    private final boolean numericTextFallback;
+
+    public RiceIdJoinIndex(Map<String, V> source) {
+        this(source, DEFAULT_STRATEGIES);
+    }
+
+    /**
+     * @param source     riceId -> value, iteration order decides which key wins on normalization clashes
+     * @param strategies normalizations to try, in order
+     */
+    public RiceIdJoinIndex(Map<String, V> source, List<KeyNormalization> strategies) {
+        if (strategies == null || strategies.isEmpty()) {
+            throw new IllegalArgumentException("At least one key normalization is required");
+        }
+        this.strategies = strategies.toArray(new KeyNormalization[0]);
+        this.numericTextFallback = strategies.contains(KeyNormalization.DIGITS_ONLY);
+        for (KeyNormalization strategy : this.strategies) {
+            Map<String, V> table = new HashMap<>(Math.max(16, source.size() * 2));
+            for (Map.Entry<String, V> e : source.entrySet()) {
+                String key = strategy.normalize(e.getKey());
+                if (key != null && e.getValue() != null) table.putIfAbsent(key, e.getValue());
+            }
+            tables.add(table);
+        }
+        // numeric ids: remember what the text lookup returns for their canonical decimal form
+        numeric = new LongObjectHashMap<>(source.size());
+        for (String key : source.keySet()) {
+            if (key == null) continue;
+            String trimmed = key.trim();
+            long id;
+            try {
+                id = Long.parseLong(trimmed);
+            } catch (NumberFormatException ex) {
+                continue;
+            }
+            if (numeric.containsKey(id) || !Long.toString(id).equals(trimmed)) continue;
+            V value = get(trimmed);
+            if (value != null) numeric.put(id, value);
+        }
+    }
+
+    /** Value joined to the given riceId, or null when no strategy matches. */
+    public V get(String riceId) {
+        if (riceId == null) return null;
+        for (int i = 0; i < strategies.length; i++) {
+            String key = strategies[i].normalize(riceId);
+            if (key == null) continue;
+            V value = tables.get(i).get(key);
+            if (value != null) return value;
+        }
+        return null;
+    }
+
+    /**
+     * Value joined to a numeric riceId, as read from a numeric cell.
+     * Same result as {@code get(ExcelUtils.formatNumeric(riceId))}.
+     */
+    public V get(double riceId) {
+        if (Double.isFinite(riceId) && riceId == Math.floor(riceId)) {
+            V value = numeric.get((long) riceId);
+            if (value != null || !numericTextFallback) return value;
+        }
+        return get(ExcelUtils.formatNumeric(riceId));
+    }
+
+    /** Number of distinct source keys for the first strategy. */
+    public int size() {
+        return tables.get(0).size();
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.estrazione_win10_sales.util;
+
+import com.example.estrazione_win10_sales.model.TemplateIndex;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Event based (SAX) reader for the template workbook.
+ * Instead of building the whole XSSFWorkbook DOM it streams the first sheet XML once and only keeps
+ * the header row, column A (riceId) of every row and the rows explicitly requested by the caller.
+ * Every other cell is skipped without creating any object. Shared strings are resolved afterwards in
+ * a second streaming pass over sharedStrings.xml that keeps only the entries actually referenced.
+ */
+public final class TemplateScanner {
+
+    private TemplateScanner() {}
+
+    public static TemplateIndex scan(Path template) throws IOException {
+        return scan(template, Collections.emptySet());
+    }
+
+    /**
+     * Scan a template file.
+     *
+     * @param fullRows 0-based indices of rows whose cells must all be captured (see {@link TemplateIndex#getRow(int)})
+     */
+    public static TemplateIndex scan(Path template, Set<Integer> fullRows) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(template.toFile(), PackageAccess.READ)) {
+            return scan(pkg, fullRows, Integer.MAX_VALUE);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot open template: " + template, e);
+        }
+    }
+
+    /**
+     * Read only the first rows of a workbook: the header and data rows {@code 1..rows}, all their cells captured.
+     * Parsing stops at the first row past them, and the shared strings pass at the last entry they reference,
+     * so the cost does not depend on the size of the file. {@link TemplateIndex#getLastRowNum()} is the last
+     * row read, not the last row of the sheet.
+     */
+    public static TemplateIndex peek(Path workbook, int rows) throws IOException {
+        Set<Integer> fullRows = new HashSet<>();
+        for (int r = 0; r <= rows; r++) fullRows.add(r);
+        try (OPCPackage pkg = OPCPackage.open(workbook.toFile(), PackageAccess.READ)) {
+            return scan(pkg, fullRows, rows);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot open workbook: " + workbook, e);
+        }
+    }
+
+    public static TemplateIndex scan(InputStream template) throws IOException {
+        return scan(template, Collections.emptySet());
+    }
+
+    /**
+     * Scan a template read from a stream. The zip container is buffered by POI, prefer
+     * {@link #scan(Path, Set)} when the template is a file.
+     */
+    public static TemplateIndex scan(InputStream template, Set<Integer> fullRows) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(template)) {
+            return scan(pkg, fullRows, Integer.MAX_VALUE);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot open template", e);
+        }
+    }
+
+    /** @param rowLimit last row to read, the sheet is not parsed past it */
+    private static TemplateIndex scan(OPCPackage pkg, Set<Integer> fullRows, int rowLimit) throws IOException, OpenXML4JException {
+        XSSFReader reader = new XSSFReader(pkg);
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        if (!sheets.hasNext()) {
+            throw new IOException("Template has no sheets");
+        }
+        SheetHandler handler = new SheetHandler(fullRows, rowLimit);
+        String sheetName;
+        try (InputStream sheet = sheets.next()) {
+            sheetName = sheets.getSheetName();
+            parse(sheet, handler);
+        }
+
+        if (!handler.sharedStringRefs.isEmpty()) {
+            SharedStringsHandler sst = new SharedStringsHandler(handler.sharedStringRefs);
+            try (InputStream in = reader.getSharedStringsData()) {
+                parse(in, sst);
+            }
+            for (CapturedCell c : handler.captured) {
+                if (c.sst >= 0) c.value = sst.values.get(c.sst);
+            }
+        }
+
+        Map<String, Integer> headerMap = new LinkedHashMap<>();
+        Map<String, List<Integer>> riceIdRows = new LinkedHashMap<>();
+        Map<Integer, Map<Integer, String>> rows = new HashMap<>();
+        for (CapturedCell c : handler.captured) {
+            String v = c.value;
+            if (c.row == 0 && v != null && !v.isBlank()) {
+                headerMap.put(v, c.col);
+            }
+            if (c.row > 0 && c.col == 0 && v != null && !v.isBlank()) {
+                riceIdRows.computeIfAbsent(v.trim(), k -> new ArrayList<>()).add(c.row);
+            }
+            if (fullRows.contains(c.row) && v != null) {
+                rows.computeIfAbsent(c.row, k -> new TreeMap<>()).put(c.col, v);
+            }
+        }
+        return new TemplateIndex(sheetName, headerMap, handler.lastRow, riceIdRows, rows);
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler) throws IOException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (StopParsing e) {
+            // the handler has everything it needs
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Template parsing error", e);
+        }
+    }
+
+    /** 0-based column index of a cell reference such as "AB12" */
+    static int columnIndex(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') break;
+            col = col * 26 + (ch - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    /** Thrown by a handler to end the parse early; not an error. Stackless, so one shared instance will do. */
+    private static final class StopParsing extends SAXException {
+        private static final long serialVersionUID = 1L;
+        static final StopParsing INSTANCE = new StopParsing();
+
+        private StopParsing() {
+            super(null, null);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final class CapturedCell {
+        final int row;
+        final int col;
+        String value;
+        int sst = -1;
+
+        CapturedCell(int row, int col) {
+            this.row = row;
+            this.col = col;
+        }
+    }
+
+    /** Handler for sheetN.xml: tracks row/column positions and captures only the wanted cells. */
+    private static final class SheetHandler extends DefaultHandler {
+        private final Set<Integer> fullRows;
+        private final int rowLimit;
+        final List<CapturedCell> captured = new ArrayList<>();
+        final BitSet sharedStringRefs = new BitSet();
+        int lastRow = -1;
+
+        private int row = -1;
+        private int col = -1;
+        private boolean capture;
+        private String type;
+        private boolean inValue;
+        private boolean inFormula;
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+
+        SheetHandler(Set<Integer> fullRows, int rowLimit) {
+            this.fullRows = fullRows;
+            this.rowLimit = rowLimit;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            switch (localName) {
+                case "row" -> {
+                    String r = atts.getValue("r");
+                    row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                    if (row > rowLimit) throw StopParsing.INSTANCE;
+                    lastRow = Math.max(lastRow, row);
+                    col = -1;
+                }
+                case "c" -> {
+                    String ref = atts.getValue("r");
+                    col = ref != null ? columnIndex(ref) : col + 1;
+                    capture = row == 0 || col == 0 || fullRows.contains(row);
+                    type = atts.getValue("t");
+                    value.setLength(0);
+                    formula.setLength(0);
+                }
+                case "v", "t" -> inValue = capture;
+                case "f" -> inFormula = capture;
+                default -> { }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) value.append(ch, start, length);
+            else if (inFormula) formula.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> inValue = false;
+                case "f" -> inFormula = false;
+                case "c" -> {
+                    if (capture) endCell();
+                    capture = false;
+                }
+                default -> { }
+            }
+        }
+
+        /** Converts the raw cell content to the text ExcelUtils.getStringCellValue would return. */
+        private void endCell() {
+            CapturedCell cell = new CapturedCell(row, col);
+            if (formula.length() > 0) {
+                cell.value = formula.toString();
+            } else if ("s".equals(type)) {
+                if (value.length() == 0) return;
+                cell.sst = Integer.parseInt(value.toString().trim());
+                sharedStringRefs.set(cell.sst);
+            } else if ("b".equals(type)) {
+                cell.value = String.valueOf("1".contentEquals(value));
+            } else if (value.length() == 0) {
+                return;
+            } else if (type == null || "n".equals(type)) {
+                cell.value = ExcelUtils.formatNumeric(Double.parseDouble(value.toString()));
+            } else {
+                // inlineStr, str, e
+                cell.value = value.toString();
+            }
+            captured.add(cell);
+        }
+    }
+
+    /** Handler for sharedStrings.xml: keeps only the entries referenced by captured cells. */
+    private static final class SharedStringsHandler extends DefaultHandler {
+        private final BitSet wanted;
+        final Map<Integer, String> values = new HashMap<>();
+        private int index = -1;
+        private boolean inText;
+        private int phoneticDepth;
+        private final StringBuilder text = new StringBuilder();
+
+        SharedStringsHandler(BitSet wanted) {
+            this.wanted = wanted;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            switch (localName) {
+                case "si" -> {
+                    index++;
+                    // past the last referenced entry
+                    if (index >= wanted.length()) throw StopParsing.INSTANCE;
+                    text.setLength(0);
+                }
+                case "rPh" -> phoneticDepth++;
+                case "t" -> inText = phoneticDepth == 0 && wanted.get(index);
+                default -> { }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inText) text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "t" -> inText = false;
+                case "rPh" -> phoneticDepth--;
+                case "si" -> {
+                    if (wanted.get(index)) values.put(index, text.toString());
+                }
+                default -> { }
+            }
+        }
+    }
+}
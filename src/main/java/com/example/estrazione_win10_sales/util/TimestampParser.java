@@ -0,0 +1,173 @@
+package com.example.estrazione_win10_sales.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.zone.ZoneRules;
+import java.util.List;
+
+/**
+ * Parser for the extract timestamps, giving epoch millis.
+ * <p>
+ * The extract writes {@code "yyyy-MM-dd HH:mm:ss"} local times: those are decoded by a fixed-width parser
+ * that does not allocate, with the zone offset cached per local hour. Anything else (ISO-8601 instants,
+ * wider years, out of range fields, hours with a DST transition) goes through {@link Instant#parse} and
+ * {@link LocalDateTime#parse} exactly like before, so the result never depends on the path taken.
+ * Thread-safe.
+ */
+public final class TimestampParser {
+
+    /** Value for a missing or unparsable timestamp. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter LOCAL_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int FIXED_LENGTH = 19;
+    private static final int DAYS_0000_TO_1970 = 719528;
+    private static final int[] MONTH_DAYS = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private final ZoneId zone;
+    private final ZoneRules rules;
+    // direct-mapped cache local epoch hour -> offset; entries are immutable, so racing writers are harmless
+    private final HourOffset[] offsets = new HourOffset[256];
+
+    private record HourOffset(long hour, int offsetSeconds) {
+    }
+
+    public TimestampParser(ZoneId zone) {
+        this.zone = zone;
+        this.rules = zone.getRules();
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Epoch millis of a timestamp column value, optionally quoted and padded;
+     * {@link #NO_TIMESTAMP} if absent or not parsable.
+     */
+    public long parse(String raw) {
+        if (raw == null || raw.isBlank()) return NO_TIMESTAMP;
+        String cleaned = raw.trim();
+        // remove surrounding quotes if any
+        if (cleaned.length() >= 2 && cleaned.startsWith("\"") && cleaned.endsWith("\"")) {
+            cleaned = cleaned.substring(1, cleaned.length() - 1);
+        }
+        if (cleaned.length() == FIXED_LENGTH) {
+            long millis = parseFixed(cleaned, null, 0);
+            if (millis != NO_TIMESTAMP) return millis;
+        }
+        return parseGeneral(cleaned);
+    }
+
+    /**
+     * Same as {@link #parse(String)} for ASCII text in a buffer; the usual fixed-width values are read in place.
+     */
+    public long parse(ByteBuffer buf, int start, int end) {
+        if (end - start == FIXED_LENGTH) {
+            long millis = parseFixed(null, buf, start);
+            if (millis != NO_TIMESTAMP) return millis;
+        }
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        return parse(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private long parseGeneral(String cleaned) {
+        // Try ISO first
+        try {
+            return Instant.parse(cleaned).toEpochMilli();
+        } catch (DateTimeParseException ex1) {
+            // Try 'yyyy-MM-dd HH:mm:ss'
+            try {
+                return LocalDateTime.parse(cleaned, LOCAL_FORMAT).atZone(zone).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ex2) {
+                // give up
+                return NO_TIMESTAMP;
+            }
+        }
+    }
+
+    /**
+     * Fixed-width "yyyy-MM-dd HH:mm:ss" from either a String or a byte buffer.
+     * Returns NO_TIMESTAMP whenever the value is not the plain case, the caller then uses the general path.
+     */
+    private long parseFixed(String s, ByteBuffer b, int off) {
+        if (ch(s, b, off + 4) != '-' || ch(s, b, off + 7) != '-' || ch(s, b, off + 10) != ' '
+                || ch(s, b, off + 13) != ':' || ch(s, b, off + 16) != ':') {
+            return NO_TIMESTAMP;
+        }
+        int year = digits(s, b, off, 4);
+        int month = digits(s, b, off + 5, 2);
+        int day = digits(s, b, off + 8, 2);
+        int hour = digits(s, b, off + 11, 2);
+        int minute = digits(s, b, off + 14, 2);
+        int second = digits(s, b, off + 17, 2);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NO_TIMESTAMP;
+        }
+        // invalid days (e.g. 02-30) are adjusted by the formatter's smart resolver: leave them to it
+        if (day > monthLength(year, month)) return NO_TIMESTAMP;
+
+        long localHour = epochDay(year, month, day) * 24 + hour;
+        HourOffset cached = offsets[(int) localHour & (offsets.length - 1)];
+        int offset;
+        if (cached != null && cached.hour == localHour) {
+            offset = cached.offsetSeconds;
+        } else {
+            Integer fixed = fixedOffset(year, month, day, hour);
+            if (fixed == null) return NO_TIMESTAMP;
+            offset = fixed;
+            offsets[(int) localHour & (offsets.length - 1)] = new HourOffset(localHour, offset);
+        }
+        return ((localHour * 60 + minute) * 60 + second - offset) * 1000;
+    }
+
+    /** Offset valid for the whole local hour, null if the hour contains a gap or an overlap */
+    private Integer fixedOffset(int year, int month, int day, int hour) {
+        List<ZoneOffset> first = rules.getValidOffsets(LocalDateTime.of(year, month, day, hour, 0, 0));
+        List<ZoneOffset> last = rules.getValidOffsets(LocalDateTime.of(year, month, day, hour, 59, 59));
+        if (first.size() != 1 || !first.equals(last)) return null;
+        return first.get(0).getTotalSeconds();
+    }
+
+    private static int ch(String s, ByteBuffer b, int i) {
+        return s != null ? s.charAt(i) : b.get(i);
+    }
+
+    /** Value of n ASCII digits, -1 if any is not a digit */
+    private static int digits(String s, ByteBuffer b, int off, int n) {
+        int v = 0;
+        for (int i = off; i < off + n; i++) {
+            int d = ch(s, b, i) - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int monthLength(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) return 29;
+        return MONTH_DAYS[month - 1];
+    }
+
+    /** Same computation as LocalDate.toEpochDay */
+    private static long epochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (monthLength(year, 2) == 28) total--;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
@@ -1926,5 +1926,7 @@ where tt.rice_id in
 290638 ,
 289100
 )
+ -- incremental mode (excel.snapshotPath): only rows changed since the watermark of the last run report
+ -- and (ii.timestamp is null or ii.timestamp >= '<nextWatermark>')
  -- and rice_id= 285381
 order by rice_id,tid
@@ -0,0 +1,8 @@
+@echo off
+rem Avvio ottimizzato (mvn -P startup package): contesto Spring pre-elaborato da AOT e archivio AppCDS
+rem registrato dal training run. Gli argomenti passano all'applicazione, es. --excel.csvPath=C:\dati\estrazione.csv
+rem L'archivio vale per il percorso del jar con cui e' stato registrato: se la cartella viene spostata o la JVM
+rem cambia, AutoCreateSharedArchive lo rigenera alla fine della prima esecuzione.
+rem I template preelaborati vanno in template-cache accanto al jar (--excel.templateCacheDir= lo disattiva).
+set DIR=%~dp0
+java -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="%DIR%estrazione.jsa" -Dspring.aot.enabled=true -Dexcel.templateCacheDir="%DIR%template-cache" %JAVA_OPTS% -jar "%DIR%@project.build.finalName@.jar" %*
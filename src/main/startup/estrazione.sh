@@ -0,0 +1,10 @@
+#!/bin/sh
+# Avvio ottimizzato (mvn -P startup package): contesto Spring pre-elaborato da AOT e archivio AppCDS
+# registrato dal training run. Gli argomenti passano all'applicazione, es. --excel.csvPath=/dati/estrazione.csv
+# L'archivio vale per il percorso del jar con cui è stato registrato: se la cartella viene spostata o la JVM
+# cambia, AutoCreateSharedArchive lo rigenera alla fine della prima esecuzione.
+# I template preelaborati vanno in template-cache accanto al jar (--excel.templateCacheDir= lo disattiva).
+DIR=$(cd "$(dirname "$0")" && pwd)
+exec java -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="$DIR/estrazione.jsa" -Dspring.aot.enabled=true \
+    -Dexcel.templateCacheDir="$DIR/template-cache" $JAVA_OPTS \
+    -jar "$DIR/@project.build.finalName@.jar" "$@"
@@ -0,0 +1,141 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every aggregation against {@link BaselineTerminalColumnService}: the same terminals, in the same order unless a riceId
+ * has tids that are not canonical numbers (see {@link TerminalAggregator#result()}).
+ */
+class BaselineDifferentialTest {
+
+    // tids Long.parseLong reads too, or reads as an other tid's number: the batch sort is not transitive on them
+    private static final String[] ODD_TIDS = {"+7", "-0", "1e3", "007", " 12", "abc", "0"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mixedTidsComeAfterTheNumbersInTextOrder() {
+        List<CsvRecord> records = new ArrayList<>();
+        for (String tid : new String[]{"abc", "9", "007", "+7", "12", "-5", " 12"}) {
+            records.add(new CsvRecord("1", "osType", tid, "WINDOWS", CsvRecord.NO_TIMESTAMP));
+        }
+        List<String> expected = List.of("9_WIN10", "12_WIN10", " 12_WIN10", "+7_WIN10", "-5_WIN10", "007_WIN10", "abc_WIN10");
+        for (int pass = 0; pass < 2; pass++) {
+            TerminalAggregator aggregator = new TerminalAggregator();
+            records.forEach(aggregator::accept);
+            assertEquals(Map.of("1", expected), aggregator.result());
+            // the order does not depend on the order of the records
+            Collections.reverse(records);
+        }
+    }
+
+    @Test
+    void randomExtractsGiveTheBaselineResult() throws Exception {
+        Random rnd = new Random(23);
+        for (int iteration = 0; iteration < 40; iteration++) {
+            List<List<CsvRecord>> groups = randomGroups(rnd, 1 + rnd.nextInt(40));
+            List<CsvRecord> grouped = new ArrayList<>();
+            groups.forEach(grouped::addAll);
+            assertSameAsBaseline(grouped, true);
+
+            // same records with the riceIds interleaved, the order within each riceId unchanged
+            List<CsvRecord> interleaved = new ArrayList<>();
+            List<Iterator<CsvRecord>> open = new ArrayList<>();
+            for (List<CsvRecord> g : groups) open.add(g.iterator());
+            while (!open.isEmpty()) {
+                int i = rnd.nextInt(open.size());
+                interleaved.add(open.get(i).next());
+                if (!open.get(i).hasNext()) open.remove(i);
+            }
+            assertSameAsBaseline(interleaved, false);
+        }
+    }
+
+    private void assertSameAsBaseline(List<CsvRecord> records, boolean grouped) throws Exception {
+        TerminalAggregator aggregator = new TerminalAggregator();
+        records.forEach(aggregator::accept);
+        List<Map.Entry<String, List<String>>> expected = new ArrayList<>(aggregator.result().entrySet());
+        assertBaselineTerminals(records, expected);
+
+        Path snapshot = dir.resolve("state.snap");
+        TerminalSnapshot.save(snapshot, aggregator, aggregator.maxTimestamp());
+        assertEquals(expected, new ArrayList<>(TerminalSnapshot.load(snapshot).aggregator().result().entrySet()), "TerminalSnapshot");
+
+        ConcurrentTerminalAggregator concurrent = new ConcurrentTerminalAggregator(3);
+        for (int i = 0; i < records.size(); i++) concurrent.accept(records.get(i), i);
+        assertEquals(expected, new ArrayList<>(concurrent.result().entrySet()), "ConcurrentTerminalAggregator");
+
+        InventoryColumnStore store = new InventoryColumnStore();
+        for (int i = 0; i < records.size(); i++) store.accept(records.get(i), i);
+        assertEquals(expected, new ArrayList<>(store.result().entrySet()), "InventoryColumnStore");
+
+        try (SpillingTerminalAggregator spilling = new SpillingTerminalAggregator(40, 4, dir)) {
+            for (CsvRecord r : records) spilling.accept(r, spilling.recordCount());
+            assertEquals(expected, new ArrayList<>(spilling.result().entrySet()), "SpillingTerminalAggregator");
+        }
+
+        if (grouped) {
+            SortedGroupAggregator sorted = new SortedGroupAggregator();
+            for (CsvRecord r : records) sorted.accept(r, sorted.recordCount());
+            assertEquals(expected, new ArrayList<>(sorted.result().entrySet()), "SortedGroupAggregator");
+        }
+    }
+
+    /**
+     * Same riceIds and terminals as the baseline. The terminal order is the same too, except for the riceIds
+     * with tids that are not canonical numbers, whose order in the baseline is not well defined.
+     */
+    private static void assertBaselineTerminals(List<CsvRecord> records, List<Map.Entry<String, List<String>>> actual) {
+        IdCodec codec = new IdCodec();
+        Set<String> mixed = new HashSet<>();
+        for (CsvRecord r : records) {
+            if (r.getTid() != null && !IdCodec.isNumeric(codec.encode(r.getTid()))) mixed.add(r.getRiceId());
+        }
+        List<Map.Entry<String, List<String>>> baseline =
+                new ArrayList<>(new BaselineTerminalColumnService().computeTerminalsByRiceId(records).entrySet());
+        assertEquals(baseline.size(), actual.size());
+        Comparator<String> byText = Comparator.nullsFirst(Comparator.naturalOrder());
+        for (int i = 0; i < baseline.size(); i++) {
+            String riceId = baseline.get(i).getKey();
+            assertEquals(riceId, actual.get(i).getKey());
+            List<String> expected = new ArrayList<>(baseline.get(i).getValue());
+            List<String> terminals = new ArrayList<>(actual.get(i).getValue());
+            if (mixed.contains(riceId)) {
+                expected.sort(byText);
+                terminals.sort(byText);
+            }
+            assertEquals(expected, terminals, riceId);
+        }
+    }
+
+    /** riceIds of 1 to 60 tids, numeric and odd, each repeated a few times in random order. */
+    private static List<List<CsvRecord>> randomGroups(Random rnd, int count) {
+        List<List<CsvRecord>> groups = new ArrayList<>();
+        for (int g = 0; g < count; g++) {
+            String riceId = g % 9 == 4 ? "R" + g : String.valueOf(1000 + g);
+            List<String> tids = new ArrayList<>();
+            for (int t = rnd.nextInt(60); t >= 0; t--) {
+                tids.add(rnd.nextInt(6) == 0 ? ODD_TIDS[rnd.nextInt(ODD_TIDS.length)] : String.valueOf(rnd.nextInt(90)));
+            }
+            List<CsvRecord> records = new ArrayList<>();
+            for (int i = tids.size() + rnd.nextInt(2 * tids.size() + 1); i > 0; i--) {
+                String tid = rnd.nextInt(25) == 0 ? null : tids.get(rnd.nextInt(tids.size()));
+                long ts = rnd.nextInt(4) == 0 ? CsvRecord.NO_TIMESTAMP : 1_704_067_200_000L + rnd.nextInt(5) * 60_000L;
+                String chiave = TerminalRecordsFixture.KEYS[rnd.nextInt(TerminalRecordsFixture.KEYS.length)];
+                String valore = TerminalRecordsFixture.VALUES[rnd.nextInt(TerminalRecordsFixture.VALUES.length)];
+                records.add(new CsvRecord(riceId, chiave, tid, valore, ts));
+            }
+            groups.add(records);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentTerminalAggregatorTest {
+
+    @Test
+    void concurrentResultMatchesSequential() throws Exception {
+        Random rnd = new Random(42);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int iteration = 0; iteration < 50; iteration++) {
+                List<CsvRecord> records = TerminalRecordsFixture.randomRecords(rnd, rnd.nextInt(3000));
+                Map<String, List<String>> expected = new TerminalColumnService().computeTerminalsByRiceId(records);
+
+                // feed the records in shuffled chunks from several threads
+                ConcurrentTerminalAggregator aggregator = new ConcurrentTerminalAggregator(4);
+                List<Integer> chunks = new ArrayList<>();
+                for (int start = 0; start < records.size(); start += 97) chunks.add(start);
+                Collections.shuffle(chunks, rnd);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int start : chunks) {
+                    futures.add(pool.submit(() -> {
+                        for (int i = start; i < Math.min(start + 97, records.size()); i++) {
+                            aggregator.accept(records.get(i), i);
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) f.get();
+
+                Map<String, List<String>> actual = aggregator.result();
+                assertEquals(expected, actual);
+                assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+                assertEquals(records.size(), aggregator.recordCount());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
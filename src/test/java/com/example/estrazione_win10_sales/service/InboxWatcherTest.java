@@ -0,0 +1,74 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.config.ExcelProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboxWatcherTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void convertsDropsOnceTheyAreComplete() throws Exception {
+        byte[] extract = Files.readAllBytes(Path.of("src/main/resources/inputfile/estrazione.csv"));
+        Path inbox = dir.resolve("inbox");
+        Path outputs = dir.resolve("out");
+        Files.createDirectories(inbox);
+        // dropped while the daemon was down
+        Files.write(inbox.resolve("early.csv"), extract);
+        Files.writeString(inbox.resolve("notes.txt"), "not an extract");
+
+        ExcelProperties props = new ExcelProperties();
+        props.setInboxDir(inbox.toString());
+        props.setInboxOutputDir(outputs.toString());
+        props.setInboxSettleMs(500);
+        props.setTemplateCacheDir(dir.resolve("cache").toString());
+        InboxWatcher watcher = new InboxWatcher(new CsvToExcelService(props), props);
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<?> daemon = executor.submit(() -> {
+                watcher.run();
+                return null;
+            });
+
+            // written in two parts: the first one alone must not be converted
+            Path late = inbox.resolve("late.csv");
+            Files.write(late, Arrays.copyOf(extract, extract.length / 2));
+            Thread.sleep(200);
+            Files.write(late, Arrays.copyOfRange(extract, extract.length / 2, extract.length), StandardOpenOption.APPEND);
+
+            waitFor(inbox.resolve("processed").resolve("early.csv"));
+            waitFor(inbox.resolve("processed").resolve("late.csv"));
+            watcher.close();
+            daemon.get();
+        }
+
+        for (String name : new String[]{"early", "late"}) {
+            assertTrue(Files.exists(outputs.resolve(name + ".xlsx")), name);
+            assertTrue(Files.readString(outputs.resolve(name + ".report.json")).contains("\"rowsRead\": 4641"), name);
+        }
+        assertTrue(Files.exists(inbox.resolve("notes.txt")));
+        assertFalse(Files.exists(inbox.resolve("late.csv")));
+        try (var failed = Files.list(inbox.resolve("failed"))) {
+            assertEquals(0, failed.count());
+        }
+    }
+
+    private static void waitFor(Path file) throws InterruptedException {
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (!Files.exists(file)) {
+            if (System.nanoTime() > deadline) fail("Not converted: " + file.getFileName());
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryColumnStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void storeGivesBackRowsAndSameTerminals() {
+        Random rnd = new Random(11);
+        for (int iteration = 0; iteration < 30; iteration++) {
+            List<CsvRecord> records = TerminalRecordsFixture.randomRecords(rnd, rnd.nextInt(3000));
+            InventoryColumnStore store = new InventoryColumnStore(new IdCodec(), 16);
+            for (int i = 0; i < records.size(); i++) store.accept(records.get(i), i);
+
+            assertEquals(records.size(), store.size());
+            for (int i = 0; i < records.size(); i++) {
+                CsvRecord r = records.get(i);
+                assertEquals(r.getRiceId(), store.riceId(i));
+                assertEquals(r.getTid(), store.tid(i));
+                assertEquals(Chiave.of(r.getChiave()), store.chiave(i));
+                assertEquals(r.getValore(), store.valore(i));
+                assertEquals(r.getTimestampMillis(), store.timestamp(i));
+            }
+
+            Map<String, List<String>> expected = new TerminalColumnService().computeTerminalsByRiceId(records);
+            Map<String, List<String>> actual = new TerminalColumnService().computeTerminalsByRiceId(store);
+            assertEquals(expected, actual);
+            assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+            // replay into an aggregator with its own codec
+            TerminalAggregator other = new TerminalAggregator();
+            store.replay(other);
+            assertEquals(expected, other.result());
+        }
+    }
+
+    @Test
+    void groupsInFirstSeenAndSortedOrder() {
+        Random rnd = new Random(5);
+        List<CsvRecord> records = TerminalRecordsFixture.randomRecords(rnd, 2000);
+        InventoryColumnStore store = new InventoryColumnStore();
+        for (int i = 0; i < records.size(); i++) store.accept(records.get(i), i);
+
+        List<String> firstSeen = new ArrayList<>(new LinkedHashSet<>(records.stream()
+                .map(CsvRecord::getRiceId).filter(Objects::nonNull).toList()));
+        assertEquals(firstSeen, groups(store, false));
+        assertEquals(firstSeen.size(), store.riceIdCount());
+
+        List<String> sorted = new ArrayList<>(firstSeen);
+        sorted.sort(Comparator.comparing((String id) -> IdCodec.parseCanonical(id) < 0)
+                .thenComparing(id -> IdCodec.parseCanonical(id) >= 0 ? String.format("%019d", IdCodec.parseCanonical(id)) : id));
+        assertEquals(sorted, groups(store, true));
+    }
+
+    @Test
+    void unknownHeaderFallsBackToTheRowLayoutDetection() throws Exception {
+        List<String> lines = List.of(
+                "id;k;t;v;ts",
+                "100;osType;7;WINDOWS;2025-01-04 17:49:37",
+                "100;osVersion;7;10.0.22631;2025-01-04 17:49:37",
+                "200;osType;8;LINUX;NULL",
+                "short;row");
+        Path csv = dir.resolve("unknown-header.csv");
+        Files.write(csv, lines);
+
+        InventoryColumnStore store = InventoryColumnStore.read(csv);
+        List<CsvRecord> expected = new ArrayList<>();
+        for (String line : lines.subList(1, 4)) expected.add(CsvRecord.fromCsvRow(line.split(";")));
+        assertEquals(3, store.size());
+        assertEquals(1, store.malformedCount());
+        assertEquals(new TerminalColumnService().computeTerminalsByRiceId(expected), store.result());
+        assertEquals(List.of("7_WIN11"), store.result().get("100"));
+    }
+
+    /** riceIds of the groups, checking that every group holds exactly its rows in arrival order */
+    private static List<String> groups(InventoryColumnStore store, boolean sorted) {
+        List<String> riceIds = new ArrayList<>();
+        int[] seen = {0};
+        store.forEachGroup(sorted, (riceKey, rows, from, to) -> {
+            riceIds.add(store.ids().decode(riceKey));
+            for (int i = from; i < to; i++) {
+                assertEquals(riceKey, store.riceKey(rows[i]));
+                if (i > from) assertTrue(rows[i] > rows[i - 1]);
+            }
+            seen[0] += to - from;
+        });
+        int withRiceId = 0;
+        for (int i = 0; i < store.size(); i++) if (store.riceKey(i) != IdCodec.NO_ID) withRiceId++;
+        assertEquals(withRiceId, seen[0]);
+        return riceIds;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.estrazione_win10_sales.service;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JdbcExtractReaderTest {
+
+    private static JdbcDataSource dataSource;
+    private static Path csv;
+    private static final List<String> riceIds = new ArrayList<>();
+
+    /** Load the sample extract into the two schemas of the extraction query. */
+    @BeforeAll
+    static void loadDatabase() throws Exception {
+        csv = new ClassPathResource("inputfile/estrazione.csv").getFile().toPath();
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:extract;DB_CLOSE_DELAY=-1;NON_KEYWORDS=TIMESTAMP");
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE SCHEMA sisalpay_ts_ms_terminal_shop");
+            st.execute("CREATE SCHEMA nts_inventario");
+            st.execute("CREATE TABLE sisalpay_ts_ms_terminal_shop.terminal (rice_id BIGINT, terminal_id BIGINT)");
+            st.execute("CREATE TABLE nts_inventario.inventory (tid BIGINT, chiave VARCHAR(64), timestamp_TO_DELETE VARCHAR(64),"
+                    + " valore VARCHAR(255), timestamp TIMESTAMP)");
+            Set<String> terminals = new HashSet<>();
+            try (PreparedStatement terminal = c.prepareStatement("INSERT INTO sisalpay_ts_ms_terminal_shop.terminal VALUES (?, ?)");
+                 PreparedStatement inventory = c.prepareStatement("INSERT INTO nts_inventario.inventory VALUES (?, ?, NULL, ?, ?)")) {
+                List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+                for (String line : lines.subList(1, lines.size())) {
+                    String[] f = line.split(";", -1);
+                    if (!riceIds.contains(f[0])) riceIds.add(f[0]);
+                    if (terminals.add(f[0] + ";" + f[3])) {
+                        terminal.setLong(1, Long.parseLong(f[0]));
+                        terminal.setLong(2, Long.parseLong(f[3]));
+                        terminal.executeUpdate();
+                    }
+                    if (f[2].equals("NULL")) continue;
+                    inventory.setLong(1, Long.parseLong(f[3]));
+                    inventory.setString(2, f[2]);
+                    inventory.setString(3, f[5]);
+                    inventory.setString(4, f[6].replace("\"", ""));
+                    inventory.executeUpdate();
+                }
+            }
+        }
+    }
+
+    @Test
+    void databaseExtractMatchesCsvExport() throws Exception {
+        TerminalAggregator fromCsv = new TerminalAggregator();
+        MappedExtractReader.read(csv, fromCsv);
+        Map<String, List<String>> expected = new HashMap<>(fromCsv.result());
+
+        ConcurrentTerminalAggregator concurrent = new ConcurrentTerminalAggregator(3);
+        int chunks = new JdbcExtractReader(dataSource, 100, 3, 50).read(riceIds, concurrent);
+        assertEquals((riceIds.size() + 99) / 100, chunks);
+        assertEquals(expected, new HashMap<>(concurrent.result()));
+        assertEquals(fromCsv.recordCount(), concurrent.recordCount());
+
+        // sequential aggregator fed from several chunk threads
+        TerminalAggregator sequential = new TerminalAggregator();
+        new JdbcExtractReader(dataSource, 250, 2, 1000).read(riceIds, sequential);
+        assertEquals(expected, new HashMap<>(sequential.result()));
+
+        // text in template column A cannot match the numeric rice_id: left out of the query, not an error
+        List<String> withText = new ArrayList<>(riceIds);
+        withText.addAll(50, List.of("R-285001", "abc", "0285001"));
+        TerminalAggregator skipping = new TerminalAggregator();
+        new JdbcExtractReader(dataSource, 100, 1, 1000).read(withText, skipping);
+        assertEquals(expected, new HashMap<>(skipping.result()));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.Chiave;
+import com.example.estrazione_win10_sales.model.CsvRowSchema;
+import com.example.estrazione_win10_sales.util.IdCodec;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedExtractReaderTest {
+
+    private static final String HEADER = String.join(";", MappedExtractReader.LAYOUT);
+
+    @TempDir
+    Path dir;
+
+    /** Every record as the fast path passes it on: valore only for osType/osVersion rows. */
+    private static final class RecordingAccumulator implements TerminalAccumulator {
+        final IdCodec ids = new IdCodec();
+        final List<String> records = new ArrayList<>();
+        long malformed;
+
+        @Override
+        public IdCodec ids() {
+            return ids;
+        }
+
+        @Override
+        public void accept(long seq, long riceKey, long tidKey, Chiave chiave, String valore, long tsMillis) {
+            boolean os = chiave == Chiave.OS_TYPE || chiave == Chiave.OS_VERSION;
+            records.add(seq + "|" + ids.decode(riceKey) + "|" + ids.decode(tidKey) + "|" + chiave + "|"
+                    + (os ? valore : null) + "|" + tsMillis);
+        }
+
+        @Override
+        public long recordCount() {
+            return records.size();
+        }
+
+        @Override
+        public void skipMalformed() {
+            malformed++;
+        }
+
+        @Override
+        public long malformedCount() {
+            return malformed;
+        }
+
+        @Override
+        public int riceIdCount() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<String>> result() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    void linesOffTheFastPathGiveTheOpenCsvResult() throws Exception {
+        List<String> lines = new ArrayList<>(List.of(
+                "285001;285001;osType;11;2024-01-01 00:00:00;WINDOWS;2024-01-02 10:00:00",
+                // quoted fields, with the separator inside
+                "\"285001\";285001;\"osVersion\";\"12\";x;\"10.0;22631\";2024-01-02 10:00:00",
+                // escape and embedded quotes
+                "285002;285002;osType;13;x;WIN\\\"DOWS;NULL",
+                "285002;285002;osType;\"1\"\"4\";x;\"WIN\"\"DOWS\";2024-01-03 10:00:00",
+                "285002;285002;osVersion;14;\\x;10.0.19045\\;2024-01-03 10:00:00",
+                // lone CR between two records, CRLF after
+                "285003;285003;osType;15;x;WINDOWS;2024-01-03 10:00:00\r285003;285003;osVersion;15;x;10.0.19045;NULL\r",
+                // quoted field over three lines, one ending with CR
+                "285004;285004;osType;16;\"a\nb\r\nc\";WINDOWS;2024-01-04 10:00:00",
+                "285004;285004;osVersion;\"16\";x;\"10.0.\n22631\";2024-01-04 10:00:00",
+                // column counts other than 7
+                "285005;osType;17;x;WINDOWS;2024-01-05 10:00:00",
+                "285005;285005;osType;17;x;WINDOWS;2024-01-05 10:00:00;extra",
+                "285005",
+                "",
+                // non-ASCII, blanks and NULL markers, padded ids
+                "285006;285006;osType;18;è;WINDOWS;2024-01-06 10:00:00",
+                " 285006 ;285006; osType ; 0018 ;x; windows ;  ",
+                "NULL;285006;osType;19;x;WINDOWS;2024-01-06 10:00:00",
+                "R-7;R-7;osVersion;null;x;10.0.22631;2024-01-06 10:00:00",
+                "285007;285007;other;20;x;ignored;2024-01-07 10:00:00"));
+        // plain lines around them, so that the small windows below cut every kind of line somewhere
+        Random rnd = new Random(8);
+        for (int i = 0; i < 300; i++) {
+            lines.add(rnd.nextInt(lines.size()), (285100 + rnd.nextInt(40)) + ";x;" + (rnd.nextBoolean() ? "osType" : "osVersion")
+                    + ";" + rnd.nextInt(99) + ";;" + (rnd.nextBoolean() ? "WINDOWS" : "10.0.2263" + rnd.nextInt(9))
+                    + ";2024-02-" + (10 + rnd.nextInt(18)) + " 0" + rnd.nextInt(9) + ":00:00");
+        }
+        Path csv = dir.resolve("estrazione.csv");
+        Files.writeString(csv, HEADER + "\r\n" + String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+
+        RecordingAccumulator expected = parsed(csv);
+        assertTrue(expected.malformed > 0);
+        for (long window : new long[]{1L << 30, 512, 131, 117}) {
+            RecordingAccumulator actual = new RecordingAccumulator();
+            assertArrayEquals(MappedExtractReader.LAYOUT.toArray(), MappedExtractReader.read(csv, actual, window));
+            assertEquals(expected.records, actual.records, "window " + window);
+            assertEquals(expected.malformed, actual.malformed, "window " + window);
+        }
+    }
+
+    @Test
+    void unterminatedQuoteFailsAsWithOpenCsv() throws Exception {
+        Path csv = dir.resolve("unterminated.csv");
+        Files.writeString(csv, HEADER + "\n285001;285001;osType;11;x;WINDOWS;NULL\n285001;285001;osType;\"12;x;WINDOWS;NULL\n");
+        assertThrows(IOException.class, () -> parsed(csv));
+        assertThrows(IOException.class, () -> MappedExtractReader.read(csv, new RecordingAccumulator()));
+    }
+
+    @Test
+    void otherHeadersAreLeftToTheRegularReader() throws Exception {
+        Path csv = dir.resolve("other.csv");
+        Files.writeString(csv, "id;k;t;v;ts\n100;osType;7;WINDOWS;NULL\n");
+        RecordingAccumulator accumulator = new RecordingAccumulator();
+        assertNull(MappedExtractReader.read(csv, accumulator));
+        assertTrue(accumulator.records.isEmpty());
+    }
+
+    /** The regular reader: OpenCSV rows decoded with the schema compiled from the header. */
+    private static RecordingAccumulator parsed(Path csv) throws Exception {
+        RecordingAccumulator accumulator = new RecordingAccumulator();
+        try (CSVReader reader = new CSVReaderBuilder(Files.newBufferedReader(csv))
+                .withCSVParser(new CSVParserBuilder().withSeparator(';').build())
+                .build()) {
+            CsvRowSchema schema = CsvRowSchema.compile(reader.readNext());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                try {
+                    accumulator.accept(schema.decode(row), accumulator.recordCount());
+                } catch (IllegalArgumentException ex) {
+                    accumulator.skipMalformed();
+                }
+            }
+        }
+        return accumulator;
+    }
+}
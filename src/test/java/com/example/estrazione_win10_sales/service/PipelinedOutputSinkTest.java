@@ -0,0 +1,84 @@
+package com.example.estrazione_win10_sales.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedOutputSinkTest {
+
+    /** Keeps a copy of every row it gets, with the thread it got it on. */
+    private static class RecordingSink implements OutputSink {
+        final List<String> rows = new ArrayList<>();
+        final List<String> threads = new ArrayList<>();
+        int failAt = -1;
+
+        @Override
+        public void header(Object[] cells) {
+            rows.add("header " + Arrays.toString(cells));
+        }
+
+        @Override
+        public void row(int rowIndex, Object[] cells) throws IOException {
+            if (rowIndex == failAt) throw new IOException("disk full");
+            rows.add(rowIndex + " " + Arrays.toString(cells));
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void rowsReachTheSinksInOrderOnTheWriterThread() throws Exception {
+        RecordingSink direct = new RecordingSink();
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        int rows = PipelinedOutputSink.BATCH_ROWS * (PipelinedOutputSink.QUEUE_BATCHES + 3) + 17;
+        try (PipelinedOutputSink stage = new PipelinedOutputSink(List.of(first, second))) {
+            feed(List.of(direct, stage), rows);
+            stage.finish();
+        }
+        assertEquals(rows + 1, direct.rows.size());
+        assertEquals(direct.rows, first.rows);
+        assertEquals(direct.rows, second.rows);
+        assertTrue(first.threads.stream().allMatch("output-writer"::equals));
+    }
+
+    @Test
+    void writerFailureReachesTheFillingThread() throws Exception {
+        RecordingSink failing = new RecordingSink();
+        failing.failAt = 3;
+        try (PipelinedOutputSink stage = new PipelinedOutputSink(List.of(failing))) {
+            // more rows than the queue holds: the filling side must not block on a dead writer
+            IOException e = assertThrows(IOException.class, () -> {
+                feed(List.of(stage), PipelinedOutputSink.BATCH_ROWS * (PipelinedOutputSink.QUEUE_BATCHES + 3));
+                stage.finish();
+            });
+            assertTrue(e.getMessage().contains("disk full"));
+        }
+    }
+
+    /** Header and data rows through one reused array, as {@link TemplateFill} does. */
+    private static void feed(List<? extends OutputSink> sinks, int rows) throws IOException {
+        Object[] cells = new Object[3];
+        cells[0] = "Idrice";
+        cells[1] = "terminal_1";
+        for (OutputSink sink : sinks) sink.header(cells);
+        for (int r = 1; r <= rows; r++) {
+            cells[0] = (double) r;
+            cells[1] = r % 3 == 0 ? null : "T" + r;
+            cells[2] = r % 5 == 0 ? OutputSink.BLANK : Boolean.TRUE;
+            for (OutputSink sink : sinks) sink.row(r, cells);
+        }
+    }
+}
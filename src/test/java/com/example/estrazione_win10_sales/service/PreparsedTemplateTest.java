@@ -0,0 +1,178 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.util.TemplateScanner;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreparsedTemplateTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void mappedCopyMatchesTheSheet() throws Exception {
+        byte[] xlsx;
+        List<List<Object>> expected;
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Foglio1");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Idrice");
+            header.createCell(2).setCellValue("Zona è");
+            header.createCell(3).setCellValue("rice_id");
+            Random rnd = new Random(3);
+            for (int r = 1; r < 400; r++) {
+                // some rows missing, as in templates edited by hand
+                if (rnd.nextInt(10) == 0) continue;
+                Row row = sheet.createRow(r);
+                switch (rnd.nextInt(4)) {
+                    case 0 -> row.createCell(0).setCellValue(285000 + rnd.nextInt(50));
+                    case 1 -> row.createCell(0).setCellValue(" R" + rnd.nextInt(50) + " ");
+                    case 2 -> row.createCell(0).setBlank();
+                    default -> { }
+                }
+                row.createCell(1).setCellValue(rnd.nextBoolean());
+                row.createCell(2).setCellValue("ZONA " + rnd.nextInt(5));
+                if (rnd.nextInt(5) == 0) row.createCell(4).setCellFormula("B" + (r + 1) + "&C" + (r + 1));
+                if (rnd.nextInt(9) == 0) row.createCell(5).setCellErrorValue(FormulaError.NA.getCode());
+                if (rnd.nextInt(7) == 0) row.createCell(6).setCellValue(rnd.nextDouble() * 100);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            xlsx = out.toByteArray();
+        }
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(xlsx))) {
+            expected = rows(wb.getSheetAt(0));
+        }
+
+        TemplateCache cache = new TemplateCache(dir);
+        TemplateCache.Loaded first = cache.load("template.xlsx", new ByteArrayInputStream(xlsx));
+        assertFalse(first.cacheHit());
+        // the same service keeps it in memory, the next run maps the file
+        TemplateCache.Loaded again = cache.load("template.xlsx", new ByteArrayInputStream(xlsx));
+        assertTrue(again.cacheHit());
+        assertSame(first.template(), again.template());
+        TemplateCache.Loaded second = new TemplateCache(dir).load("template.xlsx", new ByteArrayInputStream(xlsx));
+        assertTrue(second.cacheHit());
+
+        PreparsedTemplate mapped = second.template();
+        assertEquals("Foglio1", mapped.sheetName());
+        assertEquals(399, mapped.lastRowNum());
+        assertEquals(Arrays.asList("Idrice", null, "Zona è", "rice_id"), mapped.headers());
+        assertEquals(Map.of("Idrice", 0, "Zona è", 2, "rice_id", 3), mapped.headerMap());
+        assertEquals(expected, rows(mapped));
+        assertEquals(first.template().riceIdRows(), mapped.riceIdRows());
+        assertTrue(mapped.riceIdRows().keySet().stream().allMatch(k -> !k.isBlank() && k.equals(k.trim())));
+        // the streaming scanner of the tools keys the riceIds the same way
+        assertEquals(mapped.riceIdRows(), TemplateScanner.scan(new ByteArrayInputStream(xlsx)).getRiceIdRows());
+
+        // a damaged cache file is parsed again and replaced; a directory of its own, the file above stays mapped
+        new TemplateCache(dir.resolve("damaged")).load("template.xlsx", new ByteArrayInputStream(xlsx));
+        Path file;
+        try (var files = Files.list(dir.resolve("damaged"))) {
+            file = files.filter(f -> f.toString().endsWith(".tpl")).findFirst().orElseThrow();
+        }
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 100));
+        TemplateCache.Loaded repaired = new TemplateCache(dir.resolve("damaged")).load("template.xlsx", new ByteArrayInputStream(xlsx));
+        assertFalse(repaired.cacheHit());
+        assertEquals(expected, rows(repaired.template()));
+        assertTrue(new TemplateCache(dir.resolve("damaged")).load("template.xlsx", new ByteArrayInputStream(xlsx)).cacheHit());
+    }
+
+    @Test
+    void changedTemplateReplacesOnlyItsOwnEntry() throws Exception {
+        byte[] v1 = workbook("R1");
+        byte[] v2 = workbook("R2");
+        Path cache = dir.resolve("versions");
+        TemplateCache templates = new TemplateCache(cache);
+        templates.load("a/template.xlsx", new ByteArrayInputStream(v1));
+        templates.load("b/template.xlsx", new ByteArrayInputStream(v1));
+        assertEquals(2, entries(cache).size());
+
+        // a new content of a/template.xlsx: its old entry goes, the one of b/template.xlsx stays
+        List<Path> before = entries(cache);
+        assertFalse(templates.load("a/template.xlsx", new ByteArrayInputStream(v2)).cacheHit());
+        List<Path> after = entries(cache);
+        assertEquals(2, after.size());
+        assertTrue(after.contains(before.stream().filter(f -> f.getFileName().toString()
+                .startsWith(TemplateCache.sourceKey("b/template.xlsx"))).findFirst().orElseThrow()));
+        assertTrue(templates.load("a/template.xlsx", new ByteArrayInputStream(v2)).cacheHit());
+        assertTrue(templates.load("b/template.xlsx", new ByteArrayInputStream(v1)).cacheHit());
+        assertFalse(templates.load("a/template.xlsx", new ByteArrayInputStream(v1)).cacheHit());
+
+        // without a directory the last content of each location is still kept in memory
+        TemplateCache memory = new TemplateCache(null);
+        assertFalse(memory.load("a/template.xlsx", new ByteArrayInputStream(v1)).cacheHit());
+        assertTrue(memory.load("a/template.xlsx", new ByteArrayInputStream(v1)).cacheHit());
+        assertFalse(memory.load("b/template.xlsx", new ByteArrayInputStream(v1)).cacheHit());
+        assertFalse(memory.load("a/template.xlsx", new ByteArrayInputStream(v2)).cacheHit());
+        assertEquals(List.of("R2"), List.copyOf(memory.load("a/template.xlsx", new ByteArrayInputStream(v2)).template().riceIdRows().keySet()));
+    }
+
+    private static byte[] workbook(String riceId) throws Exception {
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet sheet = wb.createSheet("Foglio1");
+            sheet.createRow(0).createCell(0).setCellValue("Idrice");
+            sheet.createRow(1).createCell(0).setCellValue(riceId);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static List<Path> entries(Path cache) throws Exception {
+        try (var files = Files.list(cache)) {
+            return files.sorted().toList();
+        }
+    }
+
+    /** Same as {@link #rows(PreparsedTemplate)}, read through POI. */
+    private static List<List<Object>> rows(Sheet sheet) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (Row r : sheet) {
+            List<Object> row = new ArrayList<>();
+            row.add(r.getRowNum());
+            for (Cell c : r) {
+                row.add(c.getColumnIndex());
+                row.add(switch (c.getCellType()) {
+                    case STRING -> c.getStringCellValue();
+                    case NUMERIC -> c.getNumericCellValue();
+                    case BOOLEAN -> c.getBooleanCellValue();
+                    case FORMULA -> new OutputSink.Formula(c.getCellFormula());
+                    case ERROR -> new OutputSink.ErrorValue(c.getErrorCellValue());
+                    default -> OutputSink.BLANK;
+                });
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /** Row index followed by column/value pairs, for every stored row. */
+    private static List<List<Object>> rows(PreparsedTemplate template) {
+        List<List<Object>> rows = new ArrayList<>();
+        PreparsedTemplate.RowCursor cursor = template.rows();
+        while (cursor.next()) {
+            List<Object> row = new ArrayList<>();
+            row.add(cursor.rowIndex());
+            for (int i = 0; i < cursor.size(); i++) {
+                row.add(cursor.column(i));
+                row.add(cursor.value(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.config.ExcelProperties;
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import com.example.estrazione_win10_sales.model.OutputFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedGroupAggregatorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void groupedExtractGivesTheHashResult() {
+        // riceIds in no particular order, but each one in a single block
+        Random rnd = new Random(11);
+        List<CsvRecord> records = new ArrayList<>();
+        for (int g = 0; g < 500; g++) {
+            String riceId = g % 41 == 0 ? "R" + g : String.valueOf(900_000 - g * 7);
+            for (int i = rnd.nextInt(30); i >= 0; i--) records.add(TerminalRecordsFixture.randomRecord(rnd, riceId));
+            // rows without riceId do not break a group
+            if (rnd.nextInt(20) == 0) records.add(new CsvRecord(null, "osType", "1", "WINDOWS", CsvRecord.NO_TIMESTAMP));
+        }
+        TerminalAggregator hash = new TerminalAggregator();
+        SortedGroupAggregator sorted = new SortedGroupAggregator();
+        records.forEach(hash::accept);
+        for (CsvRecord r : records) sorted.accept(r, sorted.recordCount());
+
+        assertEquals(new ArrayList<>(hash.result().entrySet()), new ArrayList<>(sorted.result().entrySet()));
+        assertEquals(records.size(), sorted.recordCount());
+        assertEquals(500, sorted.riceIdCount());
+    }
+
+    @Test
+    void riceIdComingBackIsRejected() {
+        SortedGroupAggregator sorted = new SortedGroupAggregator();
+        sorted.accept(new CsvRecord("1", "osType", "10", "WINDOWS", 1L), 0);
+        sorted.accept(new CsvRecord("2", "osType", "20", "WINDOWS", 1L), 1);
+        SortedGroupAggregator.UnsortedInputException e = assertThrows(SortedGroupAggregator.UnsortedInputException.class,
+                () -> sorted.accept(new CsvRecord("1", "osVersion", "10", "10.0.19045", 1L), 2));
+        assertTrue(e.getMessage().contains("record 2"), e.getMessage());
+    }
+
+    @Test
+    void ungroupedCsvIsReadAgainWithTheHashAggregation() throws Exception {
+        List<String> lines = Files.readAllLines(Path.of("src/main/resources/inputfile/estrazione.csv"));
+        // last line moved to the top: its riceId now also appears at the end of the file
+        List<String> ungrouped = new ArrayList<>(lines);
+        ungrouped.add(1, ungrouped.remove(ungrouped.size() - 1));
+        Path csv = dir.resolve("ungrouped.csv");
+        Files.write(csv, ungrouped);
+
+        Map<String, Object> sortedRun = convert(csv, "sorted", true);
+        Map<String, Object> hashRun = convert(csv, "hash", false);
+        assertEquals(Boolean.TRUE, sortedRun.get("sortedInputFallback"));
+        assertEquals(hashRun.get("rowsRead"), sortedRun.get("rowsRead"));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("hash.csv")), Files.readAllBytes(dir.resolve("sorted.csv")));
+
+        Map<String, Object> groupedRun = convert(Path.of("src/main/resources/inputfile/estrazione.csv"), "grouped", true);
+        assertEquals(Boolean.TRUE, groupedRun.get("sortedInput"));
+        assertNull(groupedRun.get("sortedInputFallback"));
+    }
+
+    /** Counters and details of the report of a conversion to CSV. */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> convert(Path csv, String name, boolean sortedInput) throws Exception {
+        ExcelProperties props = new ExcelProperties();
+        props.setSortedInput(sortedInput);
+        props.setOutputFormats(List.of(OutputFormat.CSV));
+        props.setTemplateCacheDir(dir.resolve("cache").toString());
+        Path output = dir.resolve(name + ".xlsx");
+        ConversionMetrics.Run run = new CsvToExcelService(props).run(csv.toString(), "classpath:inputfile/template.xlsx", output.toString());
+        return (Map<String, Object>) run.report(output).get("counters");
+    }
+}
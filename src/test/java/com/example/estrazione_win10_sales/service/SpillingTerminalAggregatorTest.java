@@ -0,0 +1,48 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillingTerminalAggregatorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void spilledRunsGiveTheInMemoryResult() throws Exception {
+        List<CsvRecord> records = TerminalRecordsFixture.randomRecords(new Random(7), 20_000, 900);
+        TerminalAggregator inMemory = new TerminalAggregator();
+        records.forEach(inMemory::accept);
+        Map<String, List<String>> expected = inMemory.result();
+
+        // 20000 records in runs of 150, more than twice the fan-in: two intermediate merge passes at least
+        try (SpillingTerminalAggregator spilling = new SpillingTerminalAggregator(150, 60, dir)) {
+            for (CsvRecord r : records) spilling.accept(r, spilling.recordCount());
+            Map<String, List<String>> actual = spilling.result();
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(actual.entrySet()));
+            assertEquals(expected.size(), spilling.riceIdCount());
+            assertTrue(spilling.mergePasses() >= 2);
+            assertTrue(spilling.spilledBytes() > 0);
+        }
+        try (var left = Files.list(dir)) {
+            assertEquals(0, left.count(), "run files must be removed");
+        }
+
+        // small enough for the budget: no run file at all
+        try (SpillingTerminalAggregator unspilled = new SpillingTerminalAggregator(1L << 20, dir)) {
+            for (CsvRecord r : records) unspilled.accept(r, unspilled.recordCount());
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(unspilled.result().entrySet()));
+            assertEquals(0, unspilled.spilledRuns());
+        }
+    }
+}
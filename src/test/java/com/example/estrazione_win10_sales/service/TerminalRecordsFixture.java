@@ -0,0 +1,56 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Random extract records for the aggregation tests. */
+final class TerminalRecordsFixture {
+
+    static final String[] KEYS = {"osType", "osVersion", "other", null};
+    static final String[] VALUES = {"WINDOWS", "windows", "LINUX", "10.0.19045", "10.0.22631", null};
+    /** Ids that are not canonical numbers: leading zeros, text, sign, padding */
+    static final String[] ODD_IDS = {"007", "abc", "x1", "-5", " 12"};
+
+    private TerminalRecordsFixture() {
+    }
+
+    /** Records over 60 riceIds, see {@link #randomRecords(Random, int, int)}. */
+    static List<CsvRecord> randomRecords(Random rnd, int n) {
+        return randomRecords(rnd, n, 60);
+    }
+
+    /** Records over {@code riceIds} numeric riceIds plus the odd ones, some without riceId. */
+    static List<CsvRecord> randomRecords(Random rnd, int n, int riceIds) {
+        return randomRecords(rnd, n, riceIds, true);
+    }
+
+    /** Same as {@link #randomRecords(Random, int, int)}, with plain numbers only as ids if not {@code oddIds}. */
+    static List<CsvRecord> randomRecords(Random rnd, int n, int riceIds, boolean oddIds) {
+        List<CsvRecord> records = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String riceId = oddIds && rnd.nextInt(20) == 0 ? ODD_IDS[rnd.nextInt(ODD_IDS.length)] : String.valueOf(rnd.nextInt(riceIds));
+            if (rnd.nextInt(30) == 0) riceId = null;
+            records.add(randomRecord(rnd, riceId, oddIds));
+        }
+        return records;
+    }
+
+    /**
+     * One record of the riceId: numeric or odd tid, sometimes none, any chiave and value, and few distinct
+     * timestamps so that ties are frequent.
+     */
+    static CsvRecord randomRecord(Random rnd, String riceId) {
+        return randomRecord(rnd, riceId, true);
+    }
+
+    private static CsvRecord randomRecord(Random rnd, String riceId, boolean oddIds) {
+        String tid = oddIds && rnd.nextInt(15) == 0 ? ODD_IDS[rnd.nextInt(ODD_IDS.length)] : String.valueOf(rnd.nextInt(400));
+        if (rnd.nextInt(20) == 0) tid = null;
+        Instant ts = rnd.nextInt(5) == 0 ? null : Instant.ofEpochSecond(1700000000L + rnd.nextInt(20));
+        return new CsvRecord(riceId, KEYS[rnd.nextInt(KEYS.length)], tid, VALUES[rnd.nextInt(VALUES.length)], ts);
+    }
+}
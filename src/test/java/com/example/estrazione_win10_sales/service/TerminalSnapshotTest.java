@@ -0,0 +1,80 @@
+package com.example.estrazione_win10_sales.service;
+
+import com.example.estrazione_win10_sales.model.CsvRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TerminalSnapshotTest {
+
+    private static final long CUTOFF = 1700000010L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotPlusDeltaMatchesFullAggregation() throws Exception {
+        Random rnd = new Random(7);
+        for (int iteration = 0; iteration < 30; iteration++) {
+            List<CsvRecord> records = TerminalRecordsFixture.randomRecords(rnd, rnd.nextInt(3000));
+            TerminalAggregator full = new TerminalAggregator();
+            records.forEach(full::accept);
+
+            // first run: rows older than the cutoff; second run: the newer ones, rows without timestamp in both
+            Path snapshot = dir.resolve("state-" + iteration + ".snap");
+            TerminalAggregator first = new TerminalAggregator();
+            for (CsvRecord r : records) {
+                if (r.getTimestamp() == null || r.getTimestamp().getEpochSecond() < CUTOFF) first.accept(r);
+            }
+            TerminalSnapshot.save(snapshot, first, first.maxTimestamp());
+
+            TerminalSnapshot.Loaded loaded = TerminalSnapshot.load(snapshot);
+            assertEquals(first.result(), loaded.aggregator().result());
+            TerminalAggregator second = loaded.aggregator();
+            second.setWatermark(loaded.watermark());
+            for (CsvRecord r : records) {
+                if (r.getTimestamp() == null || r.getTimestamp().getEpochSecond() >= CUTOFF) second.accept(r);
+            }
+            assertEquals(full.result(), second.result());
+            assertEquals(full.maxTimestamp(), second.maxTimestamp());
+        }
+    }
+
+    @Test
+    void olderRowsOfNewRiceIdsAndTidsAreMergedFromTheWholeExtract() throws Exception {
+        Random rnd = new Random(11);
+        for (int iteration = 0; iteration < 30; iteration++) {
+            List<CsvRecord> records = TerminalRecordsFixture.randomRecords(rnd, rnd.nextInt(3000));
+            TerminalAggregator full = new TerminalAggregator();
+            records.forEach(full::accept);
+
+            // first run: the rows older than the cutoff, without the riceIds added to the template later and the
+            // tids assigned to their riceId later
+            Set<String> laterRiceIds = new HashSet<>();
+            Set<String> laterPairs = new HashSet<>();
+            for (CsvRecord r : records) {
+                if (rnd.nextInt(15) == 0) laterRiceIds.add(r.getRiceId());
+                if (rnd.nextInt(15) == 0) laterPairs.add(r.getRiceId() + "/" + r.getTid());
+            }
+            Path snapshot = dir.resolve("later-" + iteration + ".snap");
+            TerminalAggregator first = new TerminalAggregator();
+            for (CsvRecord r : records) {
+                if (laterRiceIds.contains(r.getRiceId()) || laterPairs.contains(r.getRiceId() + "/" + r.getTid())) continue;
+                if (r.getTimestamp() == null || r.getTimestamp().getEpochSecond() < CUTOFF) first.accept(r);
+            }
+            TerminalSnapshot.save(snapshot, first, first.maxTimestamp());
+
+            // second run: the whole extract again
+            TerminalSnapshot.Loaded loaded = TerminalSnapshot.load(snapshot);
+            TerminalAggregator second = loaded.aggregator();
+            second.setWatermark(loaded.watermark());
+            records.forEach(second::accept);
+            assertEquals(full.result(), second.result());
+            assertEquals(full.maxTimestamp(), second.maxTimestamp());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.estrazione_win10_sales.service;
+
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextOutputSinkTest {
+
+    private static final Object[] HEADER = {"Idrice", null, "a", " ", "a_3", "a", "Zona; \"nord\""};
+    private static final Object[][] ROWS = {
+            {285001.0, "plain", "x;y", "say \"hi\"", "two\nlines", "cr\rlf", "tab\tè\u0001"},
+            {null, null, null, null, null, null, null},
+            {0.1, Boolean.TRUE, OutputSink.BLANK, new OutputSink.ErrorValue(FormulaError.NA.getCode()), Double.NaN, 123456789.25, null},
+            {"R-1", null, "", null, Boolean.FALSE, -7.0, "back\\slash", "beyond the header"},
+    };
+
+    @Test
+    void csvQuotesOnlyWhatNeedsIt() throws IOException {
+        assertEquals("""
+                Idrice;;a; ;a_3;a;"Zona; ""nord\"""
+                285001;plain;"x;y";"say ""hi\""";"two
+                lines";"cr\rlf";tab\tè\u0001
+                0.1;TRUE;;#N/A;NaN;123456789.25;
+                R-1;;;;FALSE;-7;back\\slash;beyond the header
+                """, write(CsvOutputSink::new));
+    }
+
+    @Test
+    void jsonLinesKeepTypesAndDistinctKeys() throws IOException {
+        assertEquals("""
+                {"Idrice":285001,"column_2":"plain","a":"x;y","column_4":"say \\"hi\\"","a_3":"two\\nlines","a_6":"cr\\rlf","Zona; \\"nord\\"":"tab\\tè\\u0001"}
+                {"Idrice":0.1,"column_2":true,"a":"","column_4":"#N/A","a_3":null,"a_6":123456789.25,"Zona; \\"nord\\"":null}
+                {"Idrice":"R-1","column_2":null,"a":"","column_4":null,"a_3":false,"a_6":-7,"Zona; \\"nord\\"":"back\\\\slash","column_8":"beyond the header"}
+                """, write(JsonLinesOutputSink::new));
+
+        // the suffix of a repeated header skips names other headers already have
+        String keys = write(JsonLinesOutputSink::new, new Object[]{"a", "a_3", "a", "a_3", "column_5", null}, new Object[]{1.0, 2.0, 3.0, 4.0, 5.0, 6.0});
+        assertEquals("{\"a\":1,\"a_3\":2,\"a_4\":3,\"a_3_4\":4,\"column_5\":5,\"column_6\":6}\n", keys);
+        assertEquals("{\"column_1\":1,\"column_1_2\":2}\n",
+                write(JsonLinesOutputSink::new, new Object[]{null, "column_1"}, new Object[]{1.0, 2.0}));
+    }
+
+    private static String write(Function<WritableByteChannel, TextOutputSink> sink) throws IOException {
+        return write(sink, HEADER, ROWS);
+    }
+
+    private static String write(Function<WritableByteChannel, TextOutputSink> factory, Object[] header, Object[]... rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TextOutputSink sink = factory.apply(Channels.newChannel(out))) {
+            sink.header(header);
+            for (int r = 0; r < rows.length; r++) sink.row(r + 1, rows[r]);
+            sink.finish();
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.estrazione_win10_sales.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimestampParserTest {
+
+    private static final String[] ZONES = {"Europe/Rome", "America/New_York", "Australia/Lord_Howe", "UTC"};
+
+    private static final List<String> ODD_VALUES = List.of(
+            "", "   ", "NULL", "null", "\"\"",
+            "\"2024-06-01 12:00:00\"", " 2024-06-01 12:00:00 ", "\" 2024-06-01 12:00:00\"",
+            // ISO instants, fractional seconds
+            "2024-03-31T02:30:00Z", "2024-01-01T10:00:00.123Z", "2024-01-01T10:00:00.123456789Z",
+            "2024-01-01 10:00:00.123", "2024-01-01T10:00:00", "+10000-01-01T00:00:00Z",
+            // out of range fields, left to the formatter's smart resolver
+            "2024-02-30 10:00:00", "2023-02-29 10:00:00", "2024-02-29 10:00:00", "2024-04-31 23:59:59",
+            "2024-13-01 10:00:00", "2024-00-10 10:00:00", "2024-01-00 10:00:00", "2024-01-01 24:00:00",
+            "2024-01-01 23:60:00", "2024-01-01 23:59:60", "0000-01-01 00:00:00", "0001-01-01 00:00:00",
+            // malformed
+            "24-01-01 10:00:00", "2024/01/01 10:00:00", "2024-01-01  10:00:0", "2024-01-01 1:00:00",
+            "2024-06-01 12:00:0x", "abcd-ef-gh ij:kl:mn", "2024-06-01_12:00:00", "-024-06-01 12:00:00",
+            "2024-06-01 12:00", "x");
+
+    @Test
+    void sameMillisAsTheFormatterPath() {
+        for (String id : ZONES) {
+            ZoneId zone = ZoneId.of(id);
+            TimestampParser parser = new TimestampParser(zone);
+            List<String> values = new ArrayList<>(ODD_VALUES);
+            // every 7m13s over the 2024 DST transitions (spring-forward gap, autumn overlap) and the days around
+            for (String day : new String[]{"2024-03-09", "2024-03-10", "2024-03-30", "2024-03-31", "2024-04-06",
+                    "2024-04-07", "2024-10-05", "2024-10-06", "2024-10-26", "2024-10-27", "2024-11-02", "2024-11-03"}) {
+                for (int s = 0; s < 86_400; s += 433) {
+                    values.add(String.format("%s %02d:%02d:%02d", day, s / 3600, s / 60 % 60, s % 60));
+                }
+            }
+            Random rnd = new Random(id.hashCode());
+            for (int i = 0; i < 5000; i++) {
+                values.add(String.format("%04d-%02d-%02d %02d:%02d:%02d", 1900 + rnd.nextInt(200), 1 + rnd.nextInt(12),
+                        1 + rnd.nextInt(31), rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60)));
+            }
+            // twice: the second pass reads the offsets from the per-hour cache
+            for (int pass = 0; pass < 2; pass++) {
+                for (String value : values) {
+                    long expected = formatterMillis(value, zone);
+                    assertEquals(expected, parser.parse(value), id + " '" + value + "'");
+                    String trimmed = value.trim();
+                    if (!trimmed.startsWith("\"")) {
+                        assertEquals(expected, parseBuffer(parser, trimmed), id + " buffer '" + value + "'");
+                    }
+                }
+            }
+        }
+    }
+
+    /** The value read in place, somewhere in the middle of a bigger buffer as in the mapped extract. */
+    private static long parseBuffer(TimestampParser parser, String value) {
+        byte[] bytes = ("12;" + value + ";34").getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(ByteBuffer.wrap(bytes), 3, 3 + value.length());
+    }
+
+    /** The timestamp parsing of the original CsvRecord.fromCsvRow, with the zone as a parameter. */
+    private static long formatterMillis(String tsRaw, ZoneId zone) {
+        Instant ts = null;
+        if (tsRaw != null && !tsRaw.isBlank()) {
+            String cleaned = tsRaw.trim();
+            if (cleaned.startsWith("\"") && cleaned.endsWith("\"")) {
+                cleaned = cleaned.substring(1, cleaned.length() - 1);
+            }
+            try {
+                ts = Instant.parse(cleaned);
+            } catch (DateTimeParseException ex1) {
+                try {
+                    DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+                    LocalDateTime ldt = LocalDateTime.parse(cleaned, f);
+                    ts = ldt.atZone(zone).toInstant();
+                } catch (DateTimeParseException ex2) {
+                    // give up, leave null
+                }
+            }
+        }
+        return ts != null ? ts.toEpochMilli() : TimestampParser.NO_TIMESTAMP;
+    }
+}